@@ -105,6 +105,12 @@ public class LegalSettings extends SettingsPreferenceFragment implements Indexab
                 return keys;
             }
 
+            @Override
+            public boolean isNonIndexableKeysThreadSafe() {
+                // Only queries PackageManager, and the legal page has no controllers.
+                return true;
+            }
+
             private boolean checkIntentAction(Context context, String action) {
                 final Intent intent = new Intent(action);
 
@@ -46,6 +46,7 @@ import androidx.preference.Preference;
 import androidx.preference.PreferenceManager;
 import android.text.TextUtils;
 import android.transition.TransitionManager;
+import android.util.ArrayMap;
 import android.util.FeatureFlagUtils;
 import android.util.Log;
 import android.view.View;
@@ -54,13 +55,12 @@ import android.view.ViewGroup;
 import android.widget.Button;
 import android.widget.Toolbar;
 
-import com.android.internal.util.ArrayUtils;
 import com.android.settings.Settings.WifiSettingsActivity;
-import com.android.settings.applications.manageapplications.ManageApplications;
 import com.android.settings.backup.BackupSettingsActivity;
 import com.android.settings.core.FeatureFlags;
+import com.android.settings.core.StartupScheduler;
 import com.android.settings.core.SubSettingLauncher;
-import com.android.settings.core.gateway.SettingsGateway;
+import com.android.settings.core.gateway.SettingsGatewayIndex;
 import com.android.settings.dashboard.DashboardFeatureProvider;
 import com.android.settings.dashboard.DashboardSummary;
 import com.android.settings.overlay.FeatureFactory;
@@ -76,6 +76,7 @@ import com.android.settingslib.utils.ThreadUtils;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 public class SettingsActivity extends SettingsDrawerActivity
         implements PreferenceManager.OnPreferenceTreeClickListener,
@@ -83,6 +84,7 @@ public class SettingsActivity extends SettingsDrawerActivity
         ButtonBarHandler, FragmentManager.OnBackStackChangedListener {
 
     private static final String LOG_TAG = "SettingsActivity";
+    private static final boolean DEBUG = false;
 
     // Constants for state save/restore
     private static final String SAVE_KEY_CATEGORIES = ":settings:categories";
@@ -152,6 +154,9 @@ public class SettingsActivity extends SettingsDrawerActivity
 
     private static final String EXTRA_UI_OPTIONS = "settings:ui_options";
 
+    private static final String TILE_STATE_PREFS = "tile_states";
+    private static final String KEY_TILE_STATE_SNAPSHOT = "snapshot";
+
     private String mFragmentClass;
 
     private CharSequence mInitialTitle;
@@ -160,6 +165,7 @@ public class SettingsActivity extends SettingsDrawerActivity
     private BroadcastReceiver mDevelopmentSettingsListener;
 
     private boolean mBatteryPresent = true;
+    private boolean mBatteryReceiverRegistered;
     private BroadcastReceiver mBatteryInfoReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
@@ -188,6 +194,13 @@ public class SettingsActivity extends SettingsDrawerActivity
 
     private DashboardFeatureProvider mDashboardFeatureProvider;
 
+    private StartupScheduler mStartupScheduler;
+    private boolean mIsResumed;
+
+    // The task description icon is the same for every Settings activity, so rasterize it once.
+    private static Bitmap sTaskDescriptionIcon;
+    private static int sTaskDescriptionIconDensity;
+
     public SwitchBar getSwitchBar() {
         return mSwitchBar;
     }
@@ -235,13 +248,15 @@ public class SettingsActivity extends SettingsDrawerActivity
         super.onCreate(savedState);
         Log.d(LOG_TAG, "Starting onCreate");
         long startTime = System.currentTimeMillis();
+        mStartupScheduler = new StartupScheduler(getClass().getSimpleName());
 
         final FeatureFactory factory = FeatureFactory.getFactory(this);
 
         mDashboardFeatureProvider = factory.getDashboardFeatureProvider(this);
 
         // Should happen before any call to getIntent()
-        getMetaData();
+        mStartupScheduler.schedule(StartupScheduler.PHASE_CRITICAL, "getMetaData",
+                this::getMetaData);
 
         final Intent intent = getIntent();
         if (intent.hasExtra(EXTRA_UI_OPTIONS)) {
@@ -268,8 +283,10 @@ public class SettingsActivity extends SettingsDrawerActivity
             setTheme(R.style.Theme_SubSettings);
         }
 
-        setContentView(mIsShowingDashboard ?
-                R.layout.settings_main_dashboard : R.layout.settings_main_prefs);
+        mStartupScheduler.schedule(StartupScheduler.PHASE_CRITICAL, "setContentView",
+                () -> setContentView(mIsShowingDashboard
+                        ? R.layout.settings_main_dashboard : R.layout.settings_main_prefs));
+        mStartupScheduler.attach(getWindow().getDecorView());
 
         mContent = findViewById(R.id.main_content);
 
@@ -288,7 +305,8 @@ public class SettingsActivity extends SettingsDrawerActivity
                 setTitleFromBackStack();
             }
         } else {
-            launchSettingFragment(initialFragmentName, isSubSettings, intent);
+            mStartupScheduler.schedule(StartupScheduler.PHASE_CRITICAL, "launchSettingFragment",
+                    () -> launchSettingFragment(initialFragmentName, isSubSettings, intent));
         }
 
         final boolean deviceProvisioned = Utils.isDeviceProvisioned(this);
@@ -481,6 +499,7 @@ public class SettingsActivity extends SettingsDrawerActivity
     @Override
     protected void onResume() {
         super.onResume();
+        mIsResumed = true;
 
         mDevelopmentSettingsListener = new BroadcastReceiver() {
             @Override
@@ -491,34 +510,68 @@ public class SettingsActivity extends SettingsDrawerActivity
         LocalBroadcastManager.getInstance(this).registerReceiver(mDevelopmentSettingsListener,
                 new IntentFilter(DevelopmentSettingsEnabler.DEVELOPMENT_SETTINGS_CHANGED_ACTION));
 
-        registerReceiver(mBatteryInfoReceiver, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
-
-        updateTilesList();
-        updateDeviceIndex();
+        // None of this changes what the first frame shows, so keep it off the startup path.
+        mStartupScheduler.schedule(StartupScheduler.PHASE_POST_FIRST_FRAME,
+                "registerBatteryReceiver", this::registerBatteryReceiver);
+        mStartupScheduler.schedule(StartupScheduler.PHASE_POST_FIRST_FRAME, "updateTilesList",
+                this::updateTilesList);
+        mStartupScheduler.schedule(StartupScheduler.PHASE_IDLE, "updateDeviceIndex",
+                this::updateDeviceIndex);
     }
 
     @Override
     protected void onPause() {
         super.onPause();
+        mIsResumed = false;
         LocalBroadcastManager.getInstance(this).unregisterReceiver(mDevelopmentSettingsListener);
         mDevelopmentSettingsListener = null;
-        unregisterReceiver(mBatteryInfoReceiver);
+        if (mBatteryReceiverRegistered) {
+            unregisterReceiver(mBatteryInfoReceiver);
+            mBatteryReceiverRegistered = false;
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (mStartupScheduler != null) {
+            mStartupScheduler.cancel();
+        }
+    }
+
+    private void registerBatteryReceiver() {
+        // The activity may have been paused before the first frame was drawn.
+        if (!mIsResumed || mBatteryReceiverRegistered) {
+            return;
+        }
+        registerReceiver(mBatteryInfoReceiver, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        mBatteryReceiverRegistered = true;
     }
 
     @Override
     public void setTaskDescription(ActivityManager.TaskDescription taskDescription) {
-        final Bitmap icon = getBitmapFromXmlResource(R.drawable.ic_launcher_settings);
-        taskDescription.setIcon(icon);
+        taskDescription.setIcon(getTaskDescriptionIcon());
         super.setTaskDescription(taskDescription);
     }
 
+    private Bitmap getTaskDescriptionIcon() {
+        final int density = getResources().getConfiguration().densityDpi;
+        if (sTaskDescriptionIcon == null || sTaskDescriptionIconDensity != density) {
+            sTaskDescriptionIcon = getBitmapFromXmlResource(R.drawable.ic_launcher_settings);
+            sTaskDescriptionIconDensity = density;
+        }
+        return sTaskDescriptionIcon;
+    }
+
+    @VisibleForTesting
+    static void clearTaskDescriptionIcon() {
+        sTaskDescriptionIcon = null;
+    }
+
     protected boolean isValidFragment(String fragmentName) {
         // Almost all fragments are wrapped in this,
         // except for a few that have their own activities.
-        for (int i = 0; i < SettingsGateway.ENTRY_FRAGMENTS.length; i++) {
-            if (SettingsGateway.ENTRY_FRAGMENTS[i].equals(fragmentName)) return true;
-        }
-        return false;
+        return SettingsGatewayIndex.isEntryFragment(fragmentName);
     }
 
     @Override
@@ -553,13 +606,8 @@ public class SettingsActivity extends SettingsDrawerActivity
         String intentClass = intent.getComponent().getClassName();
         if (intentClass.equals(getClass().getName())) return null;
 
-        if ("com.android.settings.RunningServices".equals(intentClass)
-                || "com.android.settings.applications.StorageUse".equals(intentClass)) {
-            // Old names of manage apps.
-            intentClass = ManageApplications.class.getName();
-        }
-
-        return intentClass;
+        // Old names of manage apps are resolved to ManageApplications.
+        return SettingsGatewayIndex.resolveDestination(intentClass);
     }
 
     /**
@@ -625,105 +673,111 @@ public class SettingsActivity extends SettingsDrawerActivity
                 () -> indexProvider.updateIndex(SettingsActivity.this, false /* force */));
     }
 
-    private void doUpdateTilesList() {
+    @VisibleForTesting
+    void doUpdateTilesList() {
         PackageManager pm = getPackageManager();
         final UserManager um = UserManager.get(this);
         final boolean isAdmin = um.isAdminUser();
         final FeatureFactory featureFactory = FeatureFactory.getFactory(this);
-        boolean somethingChanged = false;
         final String packageName = getPackageName();
-        final StringBuilder changedList = new StringBuilder();
-        somethingChanged = setTileEnabled(changedList,
+        final Map<ComponentName, Boolean> tileStates = new ArrayMap<>();
+        putTileState(tileStates,
                 new ComponentName(packageName, WifiSettingsActivity.class.getName()),
-                pm.hasSystemFeature(PackageManager.FEATURE_WIFI), isAdmin) || somethingChanged;
+                pm.hasSystemFeature(PackageManager.FEATURE_WIFI), isAdmin);
 
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+        putTileState(tileStates, new ComponentName(packageName,
                         Settings.BluetoothSettingsActivity.class.getName()),
-                pm.hasSystemFeature(PackageManager.FEATURE_BLUETOOTH), isAdmin)
-                || somethingChanged;
-
+                pm.hasSystemFeature(PackageManager.FEATURE_BLUETOOTH), isAdmin);
 
-        // Enable DataUsageSummaryActivity if the data plan feature flag is turned on otherwise
-        // enable DataPlanUsageSummaryActivity.
-        somethingChanged = setTileEnabled(changedList,
-                new ComponentName(packageName, Settings.DataUsageSummaryActivity.class.getName()),
-                Utils.isBandwidthControlEnabled() /* enabled */,
-                isAdmin) || somethingChanged;
-
-        somethingChanged = setTileEnabled(changedList,
+        putTileState(tileStates,
                 new ComponentName(packageName,
                         Settings.ConnectedDeviceDashboardActivity.class.getName()),
                 !UserManager.isDeviceInDemoMode(this) /* enabled */,
-                isAdmin) || somethingChanged;
+                isAdmin);
 
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+        putTileState(tileStates, new ComponentName(packageName,
                         Settings.SimSettingsActivity.class.getName()),
-                Utils.showSimCardTile(this), isAdmin)
-                || somethingChanged;
+                Utils.showSimCardTile(this), isAdmin);
 
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+        putTileState(tileStates, new ComponentName(packageName,
                         Settings.PowerUsageSummaryActivity.class.getName()),
-                mBatteryPresent, isAdmin) || somethingChanged;
+                mBatteryPresent, isAdmin);
 
         final boolean isDataUsageSettingsV2Enabled =
                 FeatureFlagUtils.isEnabled(this, FeatureFlags.DATA_USAGE_SETTINGS_V2);
         // Enable new data usage page if v2 enabled
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+        putTileState(tileStates, new ComponentName(packageName,
                         Settings.DataUsageSummaryActivity.class.getName()),
-                Utils.isBandwidthControlEnabled() && isDataUsageSettingsV2Enabled, isAdmin)
-                || somethingChanged;
+                Utils.isBandwidthControlEnabled() && isDataUsageSettingsV2Enabled, isAdmin);
         // Enable legacy data usage page if v2 disabled
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+        putTileState(tileStates, new ComponentName(packageName,
                         Settings.DataUsageSummaryLegacyActivity.class.getName()),
-                Utils.isBandwidthControlEnabled() && !isDataUsageSettingsV2Enabled, isAdmin)
-                || somethingChanged;
+                Utils.isBandwidthControlEnabled() && !isDataUsageSettingsV2Enabled, isAdmin);
 
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+        putTileState(tileStates, new ComponentName(packageName,
                         Settings.UserSettingsActivity.class.getName()),
                 UserHandle.MU_ENABLED && UserManager.supportsMultipleUsers()
-                        && !Utils.isMonkeyRunning(), isAdmin)
-                || somethingChanged;
+                        && !Utils.isMonkeyRunning(), isAdmin);
 
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+        putTileState(tileStates, new ComponentName(packageName,
                         Settings.NetworkDashboardActivity.class.getName()),
-                !UserManager.isDeviceInDemoMode(this), isAdmin)
-                || somethingChanged;
+                !UserManager.isDeviceInDemoMode(this), isAdmin);
 
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+        putTileState(tileStates, new ComponentName(packageName,
                         Settings.DateTimeSettingsActivity.class.getName()),
-                !UserManager.isDeviceInDemoMode(this), isAdmin)
-                || somethingChanged;
+                !UserManager.isDeviceInDemoMode(this), isAdmin);
 
         final boolean showDev = DevelopmentSettingsEnabler.isDevelopmentSettingsEnabled(this)
                 && !Utils.isMonkeyRunning();
         final boolean isAdminOrDemo = um.isAdminUser() || um.isDemoUser();
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+        putTileState(tileStates, new ComponentName(packageName,
                         Settings.DevelopmentSettingsDashboardActivity.class.getName()),
-                showDev, isAdminOrDemo)
-                || somethingChanged;
+                showDev, isAdminOrDemo);
 
         // Enable/disable backup settings depending on whether the user is admin.
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
-                BackupSettingsActivity.class.getName()), true, isAdmin)
-                || somethingChanged;
+        putTileState(tileStates, new ComponentName(packageName,
+                BackupSettingsActivity.class.getName()), true, isAdmin);
 
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+        putTileState(tileStates, new ComponentName(packageName,
                         Settings.WifiDisplaySettingsActivity.class.getName()),
-                WifiDisplaySettings.isAvailable(this), isAdmin)
-                || somethingChanged;
+                WifiDisplaySettings.isAvailable(this), isAdmin);
 
         // Enable/disable the Me Card page.
         final boolean aboutPhoneV2Enabled = featureFactory
                 .getAccountFeatureProvider()
                 .isAboutPhoneV2Enabled(this);
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+        putTileState(tileStates, new ComponentName(packageName,
                         Settings.MyDeviceInfoActivity.class.getName()),
-                aboutPhoneV2Enabled, isAdmin)
-                || somethingChanged;
-        somethingChanged = setTileEnabled(changedList, new ComponentName(packageName,
+                aboutPhoneV2Enabled, isAdmin);
+        putTileState(tileStates, new ComponentName(packageName,
                         Settings.DeviceInfoSettingsActivity.class.getName()),
-                !aboutPhoneV2Enabled, isAdmin)
-                || somethingChanged;
+                !aboutPhoneV2Enabled, isAdmin);
+
+        // Component enabled states are persisted by PackageManager, so when nothing they depend
+        // on changed since the last pass there is nothing to do.
+        final SharedPreferences prefs = getSharedPreferences(TILE_STATE_PREFS, MODE_PRIVATE);
+        final String snapshot = getTileStateSnapshot(tileStates, isAdmin, isAdminOrDemo);
+        if (snapshot.equals(prefs.getString(KEY_TILE_STATE_SNAPSHOT, null))) {
+            if (DEBUG) {
+                Log.d(LOG_TAG, "Tile state inputs unchanged, skipping tile update");
+            }
+            return;
+        }
+
+        boolean somethingChanged = false;
+        final StringBuilder changedList = new StringBuilder();
+        final SharedPreferences.Editor editor = prefs.edit();
+        for (Map.Entry<ComponentName, Boolean> tileState : tileStates.entrySet()) {
+            final String key = tileState.getKey().flattenToShortString();
+            final boolean enabled = tileState.getValue();
+            // Only touch the components whose state differs from the one last applied.
+            if (prefs.contains(key) && prefs.getBoolean(key, enabled) == enabled) {
+                continue;
+            }
+            somethingChanged = setTileEnabled(changedList, tileState.getKey(), enabled)
+                    || somethingChanged;
+            editor.putBoolean(key, enabled);
+        }
 
         if (UserHandle.MU_ENABLED && !isAdmin) {
 
@@ -735,20 +789,21 @@ public class SettingsActivity extends SettingsDrawerActivity
                     for (int i = 0; i < tileCount; i++) {
                         final ComponentName component = category.getTile(i).intent.getComponent();
                         final String name = component.getClassName();
-                        final boolean isEnabledForRestricted = ArrayUtils.contains(
-                                SettingsGateway.SETTINGS_FOR_RESTRICTED, name) || (isAdminOrDemo
+                        final boolean isEnabledForRestricted =
+                                SettingsGatewayIndex.isAllowedForRestricted(name) || (isAdminOrDemo
                                 && Settings.DevelopmentSettingsDashboardActivity.class.getName()
                                 .equals(name));
                         if (packageName.equals(component.getPackageName())
                                 && !isEnabledForRestricted) {
                             somethingChanged =
-                                    setTileEnabled(changedList, component, false, isAdmin)
+                                    setTileEnabled(changedList, component, false)
                                             || somethingChanged;
                         }
                     }
                 }
             }
         }
+        editor.putString(KEY_TILE_STATE_SNAPSHOT, snapshot).apply();
 
         // Final step, refresh categories.
         if (somethingChanged) {
@@ -761,15 +816,47 @@ public class SettingsActivity extends SettingsDrawerActivity
     }
 
     /**
-     * @return whether or not the enabled state actually changed.
+     * Records the state {@param component} should have, which is always disabled for restricted
+     * users unless it is allowed for them.
      */
-    private boolean setTileEnabled(StringBuilder changedList, ComponentName component,
+    private void putTileState(Map<ComponentName, Boolean> tileStates, ComponentName component,
             boolean enabled, boolean isAdmin) {
         if (UserHandle.MU_ENABLED && !isAdmin && getPackageName().equals(component.getPackageName())
-                && !ArrayUtils.contains(SettingsGateway.SETTINGS_FOR_RESTRICTED,
-                component.getClassName())) {
+                && !SettingsGatewayIndex.isAllowedForRestricted(component.getClassName())) {
             enabled = false;
         }
+        tileStates.put(component, enabled);
+    }
+
+    /**
+     * @return a description of everything the tile pass depends on. The version of Settings is
+     * part of it, since an update can add tiles which restricted users must not see.
+     */
+    private String getTileStateSnapshot(Map<ComponentName, Boolean> tileStates, boolean isAdmin,
+            boolean isAdminOrDemo) {
+        long lastUpdateTime = 0;
+        try {
+            lastUpdateTime = getPackageManager().getPackageInfo(getPackageName(), 0)
+                    .lastUpdateTime;
+        } catch (NameNotFoundException e) {
+            Log.w(LOG_TAG, "Cannot find own package", e);
+        }
+        final StringBuilder snapshot = new StringBuilder()
+                .append(lastUpdateTime).append('|')
+                .append(isAdmin).append('|')
+                .append(isAdminOrDemo);
+        for (Map.Entry<ComponentName, Boolean> tileState : tileStates.entrySet()) {
+            snapshot.append('|').append(tileState.getKey().flattenToShortString())
+                    .append('=').append(tileState.getValue());
+        }
+        return snapshot.toString();
+    }
+
+    /**
+     * @return whether or not the enabled state actually changed.
+     */
+    private boolean setTileEnabled(StringBuilder changedList, ComponentName component,
+            boolean enabled) {
         boolean changed = setTileEnabled(component, enabled);
         if (changed) {
             changedList.append(component.toShortString()).append(",");
@@ -32,7 +32,9 @@ import android.telephony.TelephonyManager;
 
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.settings.applications.ProcStatsData;
+import com.android.settings.core.StartupScheduler;
 import com.android.settings.fuelgauge.batterytip.AnomalyConfigJobService;
+import com.android.settings.location.SettingsInjector;
 import com.android.settingslib.net.DataUsageController;
 
 import org.json.JSONArray;
@@ -42,6 +44,7 @@ import org.json.JSONObject;
 import java.io.File;
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
+import java.util.Map;
 
 public class SettingsDumpService extends Service {
     @VisibleForTesting
@@ -57,6 +60,10 @@ public class SettingsDumpService extends Service {
     @VisibleForTesting
     static final String KEY_ANOMALY_DETECTION = "anomaly_detection";
     @VisibleForTesting
+    static final String KEY_STARTUP = "startup";
+    @VisibleForTesting
+    static final String KEY_LOCATION_INJECTED_SETTINGS = "location_injected_settings";
+    @VisibleForTesting
     static final Intent BROWSER_INTENT =
             new Intent("android.intent.action.VIEW", Uri.parse("http://"));
 
@@ -76,6 +83,8 @@ public class SettingsDumpService extends Service {
             dump.put(KEY_MEMORY, dumpMemory());
             dump.put(KEY_DEFAULT_BROWSER_APP, dumpDefaultBrowser());
             dump.put(KEY_ANOMALY_DETECTION, dumpAnomalyDetection());
+            dump.put(KEY_STARTUP, dumpStartup());
+            dump.put(KEY_LOCATION_INJECTED_SETTINGS, dumpLocationInjectedSettings());
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -179,4 +188,48 @@ public class SettingsDumpService extends Service {
 
         return obj;
     }
+
+    @VisibleForTesting
+    JSONObject dumpStartup() throws JSONException {
+        final JSONObject obj = new JSONObject();
+        final StartupScheduler.Trace trace = StartupScheduler.getLastTrace();
+        if (trace == null) {
+            return obj;
+        }
+        obj.put("activity", trace.tag);
+        obj.put("first_frame_ms", trace.firstFrameMillis);
+        final JSONArray tasks = new JSONArray();
+        for (StartupScheduler.TraceEntry entry : trace.entries) {
+            final JSONObject task = new JSONObject();
+            task.put("phase", entry.getPhaseName());
+            task.put("name", entry.name);
+            task.put("start_ms", entry.startMillis);
+            task.put("duration_ms", entry.durationMillis);
+            tasks.put(task);
+        }
+        obj.put("tasks", tasks);
+
+        return obj;
+    }
+
+    @VisibleForTesting
+    JSONObject dumpLocationInjectedSettings() throws JSONException {
+        final JSONObject obj = new JSONObject();
+        final JSONArray buckets = new JSONArray();
+        for (long bucket : SettingsInjector.getLatencyBucketsMillis()) {
+            buckets.put(bucket);
+        }
+        obj.put("latency_buckets_ms", buckets);
+        final JSONObject histograms = new JSONObject();
+        for (Map.Entry<String, int[]> entry : SettingsInjector.getLatencyHistograms().entrySet()) {
+            final JSONArray counts = new JSONArray();
+            for (int count : entry.getValue()) {
+                counts.put(count);
+            }
+            histograms.put(entry.getKey(), counts);
+        }
+        obj.put("latency_histograms", histograms);
+
+        return obj;
+    }
 }
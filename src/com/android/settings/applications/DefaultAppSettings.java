@@ -113,6 +113,13 @@ public class DefaultAppSettings extends DashboardFragment {
                         Context context) {
                     return buildPreferenceControllers(context);
                 }
+
+                @Override
+                public boolean isNonIndexableKeysThreadSafe() {
+                    // Each default app controller only holds its own system service handles and
+                    // resolves the current default through PackageManager.
+                    return true;
+                }
             };
 
     static class SummaryProvider implements SummaryLoader.SummaryProvider {
@@ -24,6 +24,7 @@ import android.os.RemoteException;
 import android.os.ServiceManager;
 import android.os.SystemClock;
 import android.text.format.Formatter;
+import androidx.annotation.VisibleForTesting;
 import android.util.ArrayMap;
 import android.util.Log;
 import android.util.LongSparseArray;
@@ -44,8 +45,11 @@ import com.android.settings.Utils;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 public class ProcStatsData {
 
@@ -53,8 +57,26 @@ public class ProcStatsData {
 
     private static final boolean DEBUG = ProcessStatsUi.DEBUG;
 
+    /**
+     * How long stats read from the service are shared before they are read again. The memory
+     * screens, their summaries and dumpsys all ask for the same durations in quick succession.
+     */
+    @VisibleForTesting
+    static final long STATS_MAX_AGE_MS = 30 * 1000;
+
     private static ProcessStats sStatsXfer;
 
+    /**
+     * The last stats read from the service, by duration.
+     */
+    private static final LongSparseArray<StatsSnapshot> sSnapshots = new LongSparseArray<>();
+
+    /**
+     * Aggregations computed from each stats snapshot, by mem states and process states.
+     */
+    private static final Map<ProcessStats, ArrayMap<String, Aggregation>> sAggregations =
+            new WeakHashMap<>();
+
     private PackageManager mPm;
     private Context mContext;
     private long memTotalTime;
@@ -139,9 +161,45 @@ public class ProcStatsData {
 
     public void refreshStats(boolean forceLoad) {
         if (mStats == null || forceLoad) {
-            load();
+            final ProcessStats stats = getStats(mProcessStats, mDuration);
+            if (stats != null) {
+                mStats = stats;
+            }
         }
 
+        final String key = getAggregationKey();
+        Aggregation aggregation;
+        synchronized (ProcStatsData.class) {
+            final ArrayMap<String, Aggregation> aggregations = sAggregations.get(mStats);
+            aggregation = aggregations != null ? aggregations.get(key) : null;
+        }
+        if (aggregation == null) {
+            aggregation = aggregate();
+            synchronized (ProcStatsData.class) {
+                ArrayMap<String, Aggregation> aggregations = sAggregations.get(mStats);
+                if (aggregations == null) {
+                    aggregations = new ArrayMap<>();
+                    sAggregations.put(mStats, aggregations);
+                }
+                aggregations.put(key, aggregation);
+            }
+        }
+
+        memTotalTime = aggregation.memTotalTime;
+        mMemInfo = aggregation.memInfo;
+        // Callers sort the list and update the entries they get, on the main thread or in the
+        // background, so each gets its own copy of the shared entries.
+        pkgEntries = new ArrayList<>(aggregation.entries.size());
+        for (ProcStatsPackageEntry entry : aggregation.entries) {
+            pkgEntries.add(new ProcStatsPackageEntry(entry));
+        }
+    }
+
+    /**
+     * Computes the memory use and package entries of {@link #mStats} for the current mem states
+     * and process states.
+     */
+    private Aggregation aggregate() {
         pkgEntries = new ArrayList<>();
 
         long now = SystemClock.uptimeMillis();
@@ -168,6 +226,11 @@ public class ProcStatsData {
         ProcStatsPackageEntry osPkg = createOsEntry(bgTotals, runTotals, totalMem,
                 mMemInfo.baseCacheRam);
         pkgEntries.add(osPkg);
+        return new Aggregation(memTotalTime, mMemInfo, pkgEntries);
+    }
+
+    private String getAggregationKey() {
+        return Arrays.toString(mMemStates) + "/" + Arrays.toString(mStates) + "/" + mUseUss;
     }
 
     private void createPkgMap(ArrayList<ProcStatsEntry> procEntries, ProcessDataCollection bgTotals,
@@ -341,21 +404,108 @@ public class ProcStatsData {
         return procEntries;
     }
 
-    private void load() {
+    /**
+     * @return the process stats over {@param duration}, shared with every other caller asking for
+     * the same duration within {@link #STATS_MAX_AGE_MS}, or {@code null} if they can't be read.
+     */
+    private static ProcessStats getStats(IProcessStats processStats, long duration) {
+        final long now = SystemClock.elapsedRealtime();
+        final ProcessStats cachedStats = getCachedStats(duration, now);
+        if (cachedStats != null) {
+            return cachedStats;
+        }
+
+        final ProcessStats stats = load(processStats, duration);
+        if (stats != null) {
+            putCachedStats(duration, stats, now);
+        }
+        return stats;
+    }
+
+    /**
+     * @return the stats over {@param duration} read less than {@link #STATS_MAX_AGE_MS} before
+     * {@param now}, or {@code null}. Drops every snapshot which is older, so expired stats
+     * aren't kept alive.
+     */
+    @VisibleForTesting
+    static ProcessStats getCachedStats(long duration, long now) {
+        synchronized (ProcStatsData.class) {
+            for (int i = sSnapshots.size() - 1; i >= 0; i--) {
+                if (now - sSnapshots.valueAt(i).loadTime >= STATS_MAX_AGE_MS) {
+                    sSnapshots.removeAt(i);
+                }
+            }
+            final StatsSnapshot snapshot = sSnapshots.get(duration);
+            return snapshot != null ? snapshot.stats : null;
+        }
+    }
+
+    @VisibleForTesting
+    static void putCachedStats(long duration, ProcessStats stats, long now) {
+        synchronized (ProcStatsData.class) {
+            sSnapshots.put(duration, new StatsSnapshot(stats, now));
+        }
+    }
+
+    @VisibleForTesting
+    static int getCachedStatsCount() {
+        synchronized (ProcStatsData.class) {
+            return sSnapshots.size();
+        }
+    }
+
+    @VisibleForTesting
+    static void clearCachedStats() {
+        synchronized (ProcStatsData.class) {
+            sSnapshots.clear();
+        }
+    }
+
+    private static ProcessStats load(IProcessStats processStats, long duration) {
         try {
-            ParcelFileDescriptor pfd = mProcessStats.getStatsOverTime(mDuration);
-            mStats = new ProcessStats(false);
+            ParcelFileDescriptor pfd = processStats.getStatsOverTime(duration);
+            ProcessStats stats = new ProcessStats(false);
             InputStream is = new ParcelFileDescriptor.AutoCloseInputStream(pfd);
-            mStats.read(is);
+            stats.read(is);
             try {
                 is.close();
             } catch (IOException e) {
             }
-            if (mStats.mReadError != null) {
-                Log.w(TAG, "Failure reading process stats: " + mStats.mReadError);
+            if (stats.mReadError != null) {
+                Log.w(TAG, "Failure reading process stats: " + stats.mReadError);
             }
+            return stats;
         } catch (RemoteException e) {
             Log.e(TAG, "RemoteException:", e);
+            return null;
+        }
+    }
+
+    /**
+     * Process stats read from the service, and when.
+     */
+    private static class StatsSnapshot {
+        final ProcessStats stats;
+        final long loadTime;
+
+        StatsSnapshot(ProcessStats stats, long loadTime) {
+            this.stats = stats;
+            this.loadTime = loadTime;
+        }
+    }
+
+    /**
+     * Memory use and package entries computed from one {@link ProcessStats}.
+     */
+    private static class Aggregation {
+        final long memTotalTime;
+        final MemInfo memInfo;
+        final List<ProcStatsPackageEntry> entries;
+
+        Aggregation(long memTotalTime, MemInfo memInfo, List<ProcStatsPackageEntry> entries) {
+            this.memTotalTime = memTotalTime;
+            this.memInfo = memInfo;
+            this.entries = entries;
         }
     }
 
@@ -44,6 +44,12 @@ public class BackupSettingsActivityPreferenceController extends BasePreferenceCo
                 : UNSUPPORTED_ON_DEVICE;
     }
 
+    @Override
+    protected boolean isAvailabilityCacheable() {
+        // Backup settings are shown to the admin user only.
+        return true;
+    }
+
     @Override
     public CharSequence getSummary() {
         final boolean backupEnabled = mBackupManager.isBackupEnabled();
@@ -59,6 +59,12 @@ public class BluetoothFilesPreferenceController extends BasePreferenceController
                 : UNSUPPORTED_ON_DEVICE;
     }
 
+    @Override
+    protected boolean isAvailabilityCacheable() {
+        // hasSystemFeature() is an IPC, and never changes.
+        return true;
+    }
+
     @Override
     public String getPreferenceKey() {
         return KEY_RECEIVED_FILES;
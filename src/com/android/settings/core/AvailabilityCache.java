@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.android.settings.core;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.UserManager;
+import androidx.annotation.VisibleForTesting;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+import android.util.Log;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Process-wide memo of {@link BasePreferenceController#getAvailabilityStatus()} for controllers
+ * which opt in through {@link BasePreferenceController#isAvailabilityCacheable()}.
+ *
+ * <p>The same controller is asked for its availability by dashboard screens, the search
+ * non-indexable key pass and slices, and the answer usually involves IPC. Cached statuses are
+ * dropped when the user switches, user restrictions change or a package is added, removed or
+ * changed. A controller can also list the settings {@link Uri uris} its availability depends
+ * on, and its status is dropped when any of them change.
+ */
+public class AvailabilityCache {
+
+    private static final String TAG = "AvailabilityCache";
+
+    private static AvailabilityCache sInstance;
+
+    private final Context mContext;
+    private final Map<String, Integer> mStatuses = new ArrayMap<>();
+    private final Map<Uri, Set<String>> mUriDependents = new ArrayMap<>();
+
+    private int mGeneration;
+    private boolean mReceiverRegistered;
+
+    @VisibleForTesting
+    final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            Log.d(TAG, "Invalidating availability on " + intent.getAction());
+            invalidate();
+        }
+    };
+
+    private final ContentObserver mSettingsObserver = new ContentObserver(null /* handler */) {
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            invalidate(uri);
+        }
+    };
+
+    /**
+     * @return the cache for the application of {@param context}, or {@code null} if the context
+     * has no application context.
+     */
+    public static synchronized AvailabilityCache getInstance(Context context) {
+        final Context appContext = context.getApplicationContext();
+        if (appContext == null) {
+            return null;
+        }
+        if (sInstance == null || sInstance.mContext != appContext) {
+            if (sInstance != null) {
+                sInstance.release();
+            }
+            sInstance = new AvailabilityCache(appContext);
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    AvailabilityCache(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * @return the availability status of {@param controller}, computing and caching it on a miss.
+     */
+    public int getAvailabilityStatus(BasePreferenceController controller) {
+        final String key = getCacheKey(controller);
+        final int generation;
+        synchronized (this) {
+            final Integer status = mStatuses.get(key);
+            if (status != null) {
+                return status;
+            }
+            generation = mGeneration;
+        }
+
+        final int status = controller.getAvailabilityStatus();
+        final List<Uri> uris = controller.getAvailabilityUris();
+
+        synchronized (this) {
+            registerReceiverIfNeeded();
+            for (Uri uri : uris) {
+                Set<String> dependents = mUriDependents.get(uri);
+                if (dependents == null) {
+                    dependents = new ArraySet<>();
+                    mUriDependents.put(uri, dependents);
+                    mContext.getContentResolver().registerContentObserver(uri,
+                            false /* notifyForDescendants */, mSettingsObserver);
+                }
+                dependents.add(key);
+            }
+            // Don't keep a status computed across an invalidation, it may already be stale.
+            if (generation == mGeneration) {
+                mStatuses.put(key, status);
+            }
+        }
+        return status;
+    }
+
+    /**
+     * Drops every cached status.
+     */
+    public synchronized void invalidate() {
+        mGeneration++;
+        mStatuses.clear();
+    }
+
+    /**
+     * Drops the cached statuses which depend on {@param uri}.
+     */
+    public synchronized void invalidate(Uri uri) {
+        mGeneration++;
+        final Set<String> dependents = mUriDependents.get(uri);
+        if (dependents != null) {
+            for (String key : dependents) {
+                mStatuses.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Stops listening for invalidations and drops every cached status.
+     */
+    @VisibleForTesting
+    synchronized void release() {
+        if (mReceiverRegistered) {
+            mContext.unregisterReceiver(mReceiver);
+            mReceiverRegistered = false;
+        }
+        if (!mUriDependents.isEmpty()) {
+            mContext.getContentResolver().unregisterContentObserver(mSettingsObserver);
+            mUriDependents.clear();
+        }
+        invalidate();
+    }
+
+    @VisibleForTesting
+    synchronized int size() {
+        return mStatuses.size();
+    }
+
+    private void registerReceiverIfNeeded() {
+        if (mReceiverRegistered) {
+            return;
+        }
+        final IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_USER_SWITCHED);
+        filter.addAction(UserManager.ACTION_USER_RESTRICTIONS_CHANGED);
+        mContext.registerReceiver(mReceiver, filter);
+
+        final IntentFilter packageFilter = new IntentFilter();
+        packageFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packageFilter.addDataScheme("package");
+        mContext.registerReceiver(mReceiver, packageFilter);
+        mReceiverRegistered = true;
+    }
+
+    private static String getCacheKey(BasePreferenceController controller) {
+        return controller.getClass().getName() + "/" + controller.getPreferenceKey();
+    }
+}
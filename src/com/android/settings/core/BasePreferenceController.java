@@ -16,6 +16,7 @@ package com.android.settings.core;
 import android.annotation.IntDef;
 import android.content.Context;
 import android.content.IntentFilter;
+import android.net.Uri;
 import android.text.TextUtils;
 import android.util.Log;
 
@@ -28,6 +29,7 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
 import java.util.List;
 
 import androidx.preference.Preference;
@@ -108,6 +110,7 @@ public abstract class BasePreferenceController extends AbstractPreferenceControl
      * Instantiate a controller as specified controller type and user-defined key.
      * <p/>
      * This is done through reflection. Do not use this method unless you know what you are doing.
+     * Controllers declared in xml should be created with {@link PreferenceControllerFactory}.
      */
     public static BasePreferenceController createInstance(Context context,
             String controllerName, String key) {
@@ -128,6 +131,7 @@ public abstract class BasePreferenceController extends AbstractPreferenceControl
      * Instantiate a controller as specified controller type.
      * <p/>
      * This is done through reflection. Do not use this method unless you know what you are doing.
+     * Controllers declared in xml should be created with {@link PreferenceControllerFactory}.
      */
     public static BasePreferenceController createInstance(Context context, String controllerName) {
         try {
@@ -182,7 +186,7 @@ public abstract class BasePreferenceController extends AbstractPreferenceControl
      */
     @Override
     public final boolean isAvailable() {
-        final int availabilityStatus = getAvailabilityStatus();
+        final int availabilityStatus = getCachedAvailabilityStatus();
         return (availabilityStatus == AVAILABLE
                 || availabilityStatus == DISABLED_DEPENDENT_SETTING);
     }
@@ -195,7 +199,37 @@ public abstract class BasePreferenceController extends AbstractPreferenceControl
      * Note that a return value of {@code true} does not mean that the setting is available.
      */
     public final boolean isSupported() {
-        return getAvailabilityStatus() != UNSUPPORTED_ON_DEVICE;
+        return getCachedAvailabilityStatus() != UNSUPPORTED_ON_DEVICE;
+    }
+
+    /**
+     * @return {@code true} if the result of {@link #getAvailabilityStatus()} only changes when
+     * the user switches, user restrictions change, a package changes, or one of
+     * {@link #getAvailabilityUris()} changes. Such controllers have their availability memoized
+     * by {@link AvailabilityCache} across screens, search and slices.
+     *
+     * <p>Settings runs in a separate process for each user, so checks such as
+     * {@link android.os.UserManager#isAdminUser()} never change for the lifetime of the cache.
+     */
+    protected boolean isAvailabilityCacheable() {
+        return false;
+    }
+
+    /**
+     * @return the settings {@link Uri uris} which the result of {@link #getAvailabilityStatus()}
+     * depends on. Only used when {@link #isAvailabilityCacheable()} is {@code true}.
+     */
+    protected List<Uri> getAvailabilityUris() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return {@code true} if {@link #getAvailabilityStatus()} may be called on a background
+     * thread, concurrently with the other methods of this controller. Dashboards check such
+     * controllers off the main thread, which is worth it when the check makes binder calls.
+     */
+    public boolean isAvailabilityThreadSafe() {
+        return false;
     }
 
     /**
@@ -204,7 +238,7 @@ public abstract class BasePreferenceController extends AbstractPreferenceControl
     @Override
     public void displayPreference(PreferenceScreen screen) {
         super.displayPreference(screen);
-        if (getAvailabilityStatus() == DISABLED_DEPENDENT_SETTING) {
+        if (getCachedAvailabilityStatus() == DISABLED_DEPENDENT_SETTING) {
             // Disable preference if it depends on another setting.
             final Preference preference = screen.findPreference(getPreferenceKey());
             if (preference != null) {
@@ -213,6 +247,14 @@ public abstract class BasePreferenceController extends AbstractPreferenceControl
         }
     }
 
+    private int getCachedAvailabilityStatus() {
+        if (!isAvailabilityCacheable()) {
+            return getAvailabilityStatus();
+        }
+        final AvailabilityCache cache = AvailabilityCache.getInstance(mContext);
+        return cache == null ? getAvailabilityStatus() : cache.getAvailabilityStatus(this);
+    }
+
     /**
      * @return the UI type supported by the controller.
      */
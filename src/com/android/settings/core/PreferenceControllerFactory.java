@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core;
+
+import android.content.Context;
+import androidx.annotation.VisibleForTesting;
+import android.text.TextUtils;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+import android.util.Log;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Creates the {@link BasePreferenceController BasePreferenceControllers} declared in preference
+ * xml by class name.
+ *
+ * <p>Controllers listed in {@link PreferenceControllerFactoryTable} are created by calling their
+ * constructor directly. Any other controller has its constructor looked up through reflection
+ * once, preferring {@code (Context)} over {@code (Context, String)}, and the result is reused for
+ * later instances. Neither path relies on a failed constructor lookup to pick the other one.
+ */
+public class PreferenceControllerFactory {
+
+    private static final String TAG = "PrefCtrlFactory";
+
+    /**
+     * Creates a controller for a preference key. Controllers with a {@code (Context)} constructor
+     * ignore the key.
+     */
+    public interface Creator {
+        BasePreferenceController create(Context context, String key);
+    }
+
+    /**
+     * Placeholder cached for class names without a usable constructor.
+     */
+    private static final Creator INVALID_CREATOR = (context, key) -> null;
+
+    private static final Map<String, Creator> sCreators = new ArrayMap<>();
+    private static final Set<String> sGeneratedNames;
+
+    static {
+        PreferenceControllerFactoryTable.populate(sCreators);
+        sGeneratedNames = new ArraySet<>(sCreators.keySet());
+    }
+
+    /**
+     * Instantiates {@param controllerName} for the preference {@param key}.
+     *
+     * @throws IllegalStateException if the controller can't be created, or it requires a key and
+     *                               {@param key} is empty.
+     */
+    public static BasePreferenceController createController(Context context,
+            String controllerName, String key) {
+        final Creator creator = getCreator(controllerName);
+        if (creator == INVALID_CREATOR) {
+            throw new IllegalStateException("Invalid preference controller: " + controllerName);
+        }
+        try {
+            return creator.create(context, key);
+        } catch (RuntimeException e) {
+            throw new IllegalStateException(
+                    "Cannot instantiate preference controller: " + controllerName, e);
+        }
+    }
+
+    @VisibleForTesting
+    static Creator getCreator(String controllerName) {
+        synchronized (sCreators) {
+            Creator creator = sCreators.get(controllerName);
+            if (creator == null) {
+                creator = resolveCreator(controllerName);
+                sCreators.put(controllerName, creator);
+            }
+            return creator;
+        }
+    }
+
+    @VisibleForTesting
+    static boolean hasGeneratedCreator(String controllerName) {
+        return sGeneratedNames.contains(controllerName);
+    }
+
+    private static Creator resolveCreator(String controllerName) {
+        final Class<?> clazz;
+        try {
+            clazz = Class.forName(controllerName);
+        } catch (ClassNotFoundException e) {
+            Log.w(TAG, "Cannot find controller class: " + controllerName);
+            return INVALID_CREATOR;
+        }
+        if (!BasePreferenceController.class.isAssignableFrom(clazz)) {
+            Log.w(TAG, "Not a BasePreferenceController: " + controllerName);
+            return INVALID_CREATOR;
+        }
+
+        Constructor<?> contextConstructor = null;
+        Constructor<?> keyConstructor = null;
+        for (Constructor<?> constructor : clazz.getConstructors()) {
+            final Class<?>[] params = constructor.getParameterTypes();
+            if (params.length == 1 && params[0] == Context.class) {
+                contextConstructor = constructor;
+            } else if (params.length == 2 && params[0] == Context.class
+                    && params[1] == String.class) {
+                keyConstructor = constructor;
+            }
+        }
+
+        if (contextConstructor != null) {
+            final Constructor<?> constructor = contextConstructor;
+            return (context, key) -> newInstance(constructor, context);
+        }
+        if (keyConstructor != null) {
+            final Constructor<?> constructor = keyConstructor;
+            return (context, key) -> {
+                requireKey(controllerName, key);
+                return newInstance(constructor, context, key);
+            };
+        }
+        Log.w(TAG, "No (Context) or (Context, String) constructor: " + controllerName);
+        return INVALID_CREATOR;
+    }
+
+    private static void requireKey(String controllerName, String key) {
+        if (TextUtils.isEmpty(key)) {
+            throw new IllegalStateException(
+                    "Controller requires key but it's not defined: " + controllerName);
+        }
+    }
+
+    private static BasePreferenceController newInstance(Constructor<?> constructor,
+            Object... params) {
+        try {
+            return (BasePreferenceController) constructor.newInstance(params);
+        } catch (InstantiationException | InvocationTargetException | IllegalAccessException e) {
+            throw new IllegalStateException(
+                    "Invalid preference controller: " + constructor.getName(), e);
+        }
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core;
+
+import android.content.Context;
+import android.text.TextUtils;
+
+import com.android.settings.accessibility.MagnificationGesturesPreferenceController;
+import com.android.settings.accessibility.MagnificationNavbarPreferenceController;
+import com.android.settings.applications.AppPermissionsPreferenceController;
+import com.android.settings.applications.appinfo.AdvancedAppInfoPreferenceCategoryController;
+import com.android.settings.applications.appinfo.AppDataUsagePreferenceController;
+import com.android.settings.applications.appinfo.AppInstallerInfoPreferenceController;
+import com.android.settings.applications.appinfo.AppInstallerPreferenceCategoryController;
+import com.android.settings.applications.appinfo.AppNotificationPreferenceController;
+import com.android.settings.applications.appinfo.AppOpenByDefaultPreferenceController;
+import com.android.settings.applications.appinfo.AppPermissionPreferenceController;
+import com.android.settings.applications.appinfo.AppSettingPreferenceController;
+import com.android.settings.applications.appinfo.AppStoragePreferenceController;
+import com.android.settings.applications.appinfo.AppVersionPreferenceController;
+import com.android.settings.applications.appinfo.DrawOverlayDetailPreferenceController;
+import com.android.settings.applications.appinfo.ExternalSourceDetailPreferenceController;
+import com.android.settings.applications.appinfo.InstantAppDomainsPreferenceController;
+import com.android.settings.applications.appinfo.PictureInPictureDetailPreferenceController;
+import com.android.settings.applications.appinfo.TimeSpentInAppPreferenceController;
+import com.android.settings.applications.appinfo.WriteSystemSettingsPreferenceController;
+import com.android.settings.backup.BackupSettingsActivityPreferenceController;
+import com.android.settings.bluetooth.BluetoothDeviceRenamePreferenceController;
+import com.android.settings.connecteddevice.AddDevicePreferenceController;
+import com.android.settings.connecteddevice.AdvancedConnectedDeviceController;
+import com.android.settings.connecteddevice.AvailableMediaDeviceGroupController;
+import com.android.settings.connecteddevice.BluetoothOnWhileDrivingPreferenceController;
+import com.android.settings.connecteddevice.ConnectedDeviceGroupController;
+import com.android.settings.connecteddevice.PreviouslyConnectedDevicePreferenceController;
+import com.android.settings.connecteddevice.SavedDeviceGroupController;
+import com.android.settings.datetime.timezone.TimeZoneInfoPreferenceController;
+import com.android.settings.display.AmbientDisplayAlwaysOnPreferenceController;
+import com.android.settings.display.AmbientDisplayNotificationsPreferenceController;
+import com.android.settings.display.AutoBrightnessPreferenceController;
+import com.android.settings.display.AutoRotatePreferenceController;
+import com.android.settings.display.FontSizePreferenceController;
+import com.android.settings.display.NightDisplayActivationPreferenceController;
+import com.android.settings.display.NightDisplayAutoModePreferenceController;
+import com.android.settings.display.NightDisplayCustomEndTimePreferenceController;
+import com.android.settings.display.NightDisplayCustomStartTimePreferenceController;
+import com.android.settings.display.NightDisplayIntensityPreferenceController;
+import com.android.settings.display.SystemUiThemePreferenceController;
+import com.android.settings.fuelgauge.AutoRestrictionPreferenceController;
+import com.android.settings.fuelgauge.BatterySaverController;
+import com.android.settings.fuelgauge.SmartBatteryPreferenceController;
+import com.android.settings.fuelgauge.batterysaver.AutoBatterySaverPreferenceController;
+import com.android.settings.fuelgauge.batterysaver.BatterySaverButtonPreferenceController;
+import com.android.settings.fuelgauge.batterytip.BatteryManagerPreferenceController;
+import com.android.settings.gestures.AssistGestureSettingsPreferenceController;
+import com.android.settings.gestures.DoubleTapPowerPreferenceController;
+import com.android.settings.gestures.DoubleTapScreenPreferenceController;
+import com.android.settings.gestures.DoubleTwistPreferenceController;
+import com.android.settings.gestures.GesturesSettingPreferenceController;
+import com.android.settings.gestures.PickupGesturePreferenceController;
+import com.android.settings.gestures.PreventRingingPreferenceController;
+import com.android.settings.gestures.SwipeToNotificationPreferenceController;
+import com.android.settings.gestures.SwipeUpPreferenceController;
+import com.android.settings.inputmethod.GameControllerPreferenceController;
+import com.android.settings.network.AirplaneModePreferenceController;
+import com.android.settings.network.NetworkScorerPickerPreferenceController;
+import com.android.settings.nfc.AndroidBeamPreferenceController;
+import com.android.settings.nfc.NfcPreferenceController;
+import com.android.settings.notification.AlarmVolumePreferenceController;
+import com.android.settings.notification.BadgingNotificationPreferenceController;
+import com.android.settings.notification.CallVolumePreferenceController;
+import com.android.settings.notification.MediaVolumePreferenceController;
+import com.android.settings.notification.NotificationVolumePreferenceController;
+import com.android.settings.notification.RingVolumePreferenceController;
+import com.android.settings.notification.VibrateWhenRingPreferenceController;
+import com.android.settings.security.LockdownButtonPreferenceController;
+import com.android.settings.security.ShowPasswordPreferenceController;
+import com.android.settings.security.VisiblePatternProfilePreferenceController;
+import com.android.settings.sound.HandsFreeProfileOutputPreferenceController;
+import com.android.settings.sound.MediaOutputPreferenceController;
+import com.android.settings.system.AdditionalSystemUpdatePreferenceController;
+import com.android.settings.system.ResetPreferenceController;
+import com.android.settings.system.SystemUpdatePreferenceController;
+
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Direct constructor calls for every controller declared through {@code settings:controller} in
+ * res/xml, used by {@link PreferenceControllerFactory} instead of reflection.
+ *
+ * <p>Controllers with a {@code (Context)} constructor are created with it, the others with
+ * {@code (Context, String)}. XmlControllerAttributeTest fails when a controller declared in xml
+ * is missing from this table.
+ */
+final class PreferenceControllerFactoryTable {
+
+    private PreferenceControllerFactoryTable() {
+    }
+
+    static void populate(Map<String, PreferenceControllerFactory.Creator> creators) {
+        creators.put(MagnificationGesturesPreferenceController.class.getName(),
+                withKey(MagnificationGesturesPreferenceController::new));
+        creators.put(MagnificationNavbarPreferenceController.class.getName(),
+                withKey(MagnificationNavbarPreferenceController::new));
+        creators.put(AppPermissionsPreferenceController.class.getName(),
+                withContext(AppPermissionsPreferenceController::new));
+        creators.put(AdvancedAppInfoPreferenceCategoryController.class.getName(),
+                withKey(AdvancedAppInfoPreferenceCategoryController::new));
+        creators.put(AppDataUsagePreferenceController.class.getName(),
+                withKey(AppDataUsagePreferenceController::new));
+        creators.put(AppInstallerInfoPreferenceController.class.getName(),
+                withKey(AppInstallerInfoPreferenceController::new));
+        creators.put(AppInstallerPreferenceCategoryController.class.getName(),
+                withKey(AppInstallerPreferenceCategoryController::new));
+        creators.put(AppNotificationPreferenceController.class.getName(),
+                withKey(AppNotificationPreferenceController::new));
+        creators.put(AppOpenByDefaultPreferenceController.class.getName(),
+                withKey(AppOpenByDefaultPreferenceController::new));
+        creators.put(AppPermissionPreferenceController.class.getName(),
+                withKey(AppPermissionPreferenceController::new));
+        creators.put(AppSettingPreferenceController.class.getName(),
+                withKey(AppSettingPreferenceController::new));
+        creators.put(AppStoragePreferenceController.class.getName(),
+                withKey(AppStoragePreferenceController::new));
+        creators.put(AppVersionPreferenceController.class.getName(),
+                withKey(AppVersionPreferenceController::new));
+        creators.put(DrawOverlayDetailPreferenceController.class.getName(),
+                withKey(DrawOverlayDetailPreferenceController::new));
+        creators.put(ExternalSourceDetailPreferenceController.class.getName(),
+                withKey(ExternalSourceDetailPreferenceController::new));
+        creators.put(InstantAppDomainsPreferenceController.class.getName(),
+                withKey(InstantAppDomainsPreferenceController::new));
+        creators.put(PictureInPictureDetailPreferenceController.class.getName(),
+                withKey(PictureInPictureDetailPreferenceController::new));
+        creators.put(TimeSpentInAppPreferenceController.class.getName(),
+                withKey(TimeSpentInAppPreferenceController::new));
+        creators.put(WriteSystemSettingsPreferenceController.class.getName(),
+                withKey(WriteSystemSettingsPreferenceController::new));
+        creators.put(BackupSettingsActivityPreferenceController.class.getName(),
+                withContext(BackupSettingsActivityPreferenceController::new));
+        creators.put(BluetoothDeviceRenamePreferenceController.class.getName(),
+                withKey(BluetoothDeviceRenamePreferenceController::new));
+        creators.put(AddDevicePreferenceController.class.getName(),
+                withKey(AddDevicePreferenceController::new));
+        creators.put(AdvancedConnectedDeviceController.class.getName(),
+                withKey(AdvancedConnectedDeviceController::new));
+        creators.put(AvailableMediaDeviceGroupController.class.getName(),
+                withContext(AvailableMediaDeviceGroupController::new));
+        creators.put(BluetoothOnWhileDrivingPreferenceController.class.getName(),
+                withContext(BluetoothOnWhileDrivingPreferenceController::new));
+        creators.put(ConnectedDeviceGroupController.class.getName(),
+                withContext(ConnectedDeviceGroupController::new));
+        creators.put(PreviouslyConnectedDevicePreferenceController.class.getName(),
+                withKey(PreviouslyConnectedDevicePreferenceController::new));
+        creators.put(SavedDeviceGroupController.class.getName(),
+                withContext(SavedDeviceGroupController::new));
+        creators.put(TimeZoneInfoPreferenceController.class.getName(),
+                withContext(TimeZoneInfoPreferenceController::new));
+        creators.put(AmbientDisplayAlwaysOnPreferenceController.class.getName(),
+                withKey(AmbientDisplayAlwaysOnPreferenceController::new));
+        creators.put(AmbientDisplayNotificationsPreferenceController.class.getName(),
+                withKey(AmbientDisplayNotificationsPreferenceController::new));
+        creators.put(AutoBrightnessPreferenceController.class.getName(),
+                withKey(AutoBrightnessPreferenceController::new));
+        creators.put(AutoRotatePreferenceController.class.getName(),
+                withKey(AutoRotatePreferenceController::new));
+        creators.put(FontSizePreferenceController.class.getName(),
+                withKey(FontSizePreferenceController::new));
+        creators.put(NightDisplayActivationPreferenceController.class.getName(),
+                withKey(NightDisplayActivationPreferenceController::new));
+        creators.put(NightDisplayAutoModePreferenceController.class.getName(),
+                withKey(NightDisplayAutoModePreferenceController::new));
+        creators.put(NightDisplayCustomEndTimePreferenceController.class.getName(),
+                withKey(NightDisplayCustomEndTimePreferenceController::new));
+        creators.put(NightDisplayCustomStartTimePreferenceController.class.getName(),
+                withKey(NightDisplayCustomStartTimePreferenceController::new));
+        creators.put(NightDisplayIntensityPreferenceController.class.getName(),
+                withKey(NightDisplayIntensityPreferenceController::new));
+        creators.put(SystemUiThemePreferenceController.class.getName(),
+                withKey(SystemUiThemePreferenceController::new));
+        creators.put(AutoRestrictionPreferenceController.class.getName(),
+                withContext(AutoRestrictionPreferenceController::new));
+        creators.put(BatterySaverController.class.getName(),
+                withContext(BatterySaverController::new));
+        creators.put(SmartBatteryPreferenceController.class.getName(),
+                withContext(SmartBatteryPreferenceController::new));
+        creators.put(AutoBatterySaverPreferenceController.class.getName(),
+                withContext(AutoBatterySaverPreferenceController::new));
+        creators.put(BatterySaverButtonPreferenceController.class.getName(),
+                withKey(BatterySaverButtonPreferenceController::new));
+        creators.put(BatteryManagerPreferenceController.class.getName(),
+                withContext(BatteryManagerPreferenceController::new));
+        creators.put(AssistGestureSettingsPreferenceController.class.getName(),
+                withKey(AssistGestureSettingsPreferenceController::new));
+        creators.put(DoubleTapPowerPreferenceController.class.getName(),
+                withKey(DoubleTapPowerPreferenceController::new));
+        creators.put(DoubleTapScreenPreferenceController.class.getName(),
+                withKey(DoubleTapScreenPreferenceController::new));
+        creators.put(DoubleTwistPreferenceController.class.getName(),
+                withKey(DoubleTwistPreferenceController::new));
+        creators.put(GesturesSettingPreferenceController.class.getName(),
+                withContext(GesturesSettingPreferenceController::new));
+        creators.put(PickupGesturePreferenceController.class.getName(),
+                withKey(PickupGesturePreferenceController::new));
+        creators.put(PreventRingingPreferenceController.class.getName(),
+                withKey(PreventRingingPreferenceController::new));
+        creators.put(SwipeToNotificationPreferenceController.class.getName(),
+                withKey(SwipeToNotificationPreferenceController::new));
+        creators.put(SwipeUpPreferenceController.class.getName(),
+                withKey(SwipeUpPreferenceController::new));
+        creators.put(GameControllerPreferenceController.class.getName(),
+                withKey(GameControllerPreferenceController::new));
+        creators.put(AirplaneModePreferenceController.class.getName(),
+                withKey(AirplaneModePreferenceController::new));
+        creators.put(NetworkScorerPickerPreferenceController.class.getName(),
+                withKey(NetworkScorerPickerPreferenceController::new));
+        creators.put(AndroidBeamPreferenceController.class.getName(),
+                withKey(AndroidBeamPreferenceController::new));
+        creators.put(NfcPreferenceController.class.getName(),
+                withKey(NfcPreferenceController::new));
+        creators.put(AlarmVolumePreferenceController.class.getName(),
+                withContext(AlarmVolumePreferenceController::new));
+        creators.put(BadgingNotificationPreferenceController.class.getName(),
+                withKey(BadgingNotificationPreferenceController::new));
+        creators.put(CallVolumePreferenceController.class.getName(),
+                withKey(CallVolumePreferenceController::new));
+        creators.put(MediaVolumePreferenceController.class.getName(),
+                withContext(MediaVolumePreferenceController::new));
+        creators.put(NotificationVolumePreferenceController.class.getName(),
+                withContext(NotificationVolumePreferenceController::new));
+        creators.put(RingVolumePreferenceController.class.getName(),
+                withContext(RingVolumePreferenceController::new));
+        creators.put(VibrateWhenRingPreferenceController.class.getName(),
+                withKey(VibrateWhenRingPreferenceController::new));
+        creators.put(LockdownButtonPreferenceController.class.getName(),
+                withContext(LockdownButtonPreferenceController::new));
+        creators.put(ShowPasswordPreferenceController.class.getName(),
+                withContext(ShowPasswordPreferenceController::new));
+        creators.put(VisiblePatternProfilePreferenceController.class.getName(),
+                withContext(VisiblePatternProfilePreferenceController::new));
+        creators.put(HandsFreeProfileOutputPreferenceController.class.getName(),
+                withKey(HandsFreeProfileOutputPreferenceController::new));
+        creators.put(MediaOutputPreferenceController.class.getName(),
+                withKey(MediaOutputPreferenceController::new));
+        creators.put(AdditionalSystemUpdatePreferenceController.class.getName(),
+                withContext(AdditionalSystemUpdatePreferenceController::new));
+        creators.put(ResetPreferenceController.class.getName(),
+                withKey(ResetPreferenceController::new));
+        creators.put(SystemUpdatePreferenceController.class.getName(),
+                withContext(SystemUpdatePreferenceController::new));
+    }
+
+    private static PreferenceControllerFactory.Creator withContext(
+            Function<Context, BasePreferenceController> constructor) {
+        return (context, key) -> constructor.apply(context);
+    }
+
+    private static PreferenceControllerFactory.Creator withKey(
+            PreferenceControllerFactory.Creator constructor) {
+        return (context, key) -> {
+            if (TextUtils.isEmpty(key)) {
+                throw new IllegalStateException("Controller requires key but it's not defined");
+            }
+            return constructor.create(context, key);
+        };
+    }
+}
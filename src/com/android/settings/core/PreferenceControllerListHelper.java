@@ -51,7 +51,9 @@ public class PreferenceControllerListHelper {
     public static List<BasePreferenceController> getPreferenceControllersFromXml(Context context,
             @XmlRes int xmlResId) {
         final List<BasePreferenceController> controllers = new ArrayList<>();
-        List<Bundle> preferenceMetadata;
+        // The parsed metadata is cached by PreferenceXmlParserUtils, so reopening a screen
+        // doesn't parse its xml again.
+        final List<Bundle> preferenceMetadata;
         try {
             preferenceMetadata = PreferenceXmlParserUtils.extractMetadata(context, xmlResId,
                     MetadataFlag.FLAG_NEED_KEY | MetadataFlag.FLAG_NEED_PREF_CONTROLLER);
@@ -65,26 +67,12 @@ public class PreferenceControllerListHelper {
             if (TextUtils.isEmpty(controllerName)) {
                 continue;
             }
-            BasePreferenceController controller;
             try {
-                controller = BasePreferenceController.createInstance(context, controllerName);
+                controllers.add(PreferenceControllerFactory.createController(context,
+                        controllerName, metadata.getString(METADATA_KEY)));
             } catch (IllegalStateException e) {
-                Log.d(TAG, "Could not find Context-only controller for pref: " + controllerName);
-                final String key = metadata.getString(METADATA_KEY);
-                if (TextUtils.isEmpty(key)) {
-                    Log.w(TAG, "Controller requires key but it's not defined in xml: "
-                            + controllerName);
-                    continue;
-                }
-                try {
-                    controller = BasePreferenceController.createInstance(context, controllerName,
-                            key);
-                } catch (IllegalStateException e2) {
-                    Log.w(TAG, "Cannot instantiate controller from reflection: " + controllerName);
-                    continue;
-                }
+                Log.w(TAG, "Cannot instantiate controller: " + controllerName, e);
             }
-            controllers.add(controller);
         }
         return controllers;
     }
@@ -20,6 +20,7 @@ import android.annotation.NonNull;
 import android.annotation.Nullable;
 import android.annotation.XmlRes;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.content.res.TypedArray;
 import android.content.res.XmlResourceParser;
 import android.os.Bundle;
@@ -28,6 +29,7 @@ import androidx.annotation.VisibleForTesting;
 import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.util.LruCache;
 import android.util.TypedValue;
 import android.util.Xml;
 
@@ -91,6 +93,15 @@ public class PreferenceXmlParserUtils {
 
     private static final String ENTRIES_SEPARATOR = "|";
 
+    private static final int METADATA_CACHE_SIZE = 256;
+
+    /**
+     * Parsed metadata keyed by package, xml res id, flags and the parts of the configuration
+     * which select resources, see {@link #getConfigurationKey(Configuration)}.
+     */
+    private static final LruCache<String, List<Bundle>> sMetadataCache =
+            new LruCache<>(METADATA_CACHE_SIZE);
+
     /**
      * Call {@link #extractMetadata(Context, int, int)} with {@link #METADATA_KEY} instead.
      */
@@ -174,11 +185,70 @@ public class PreferenceXmlParserUtils {
     @NonNull
     public static List<Bundle> extractMetadata(Context context, @XmlRes int xmlResId, int flags)
             throws IOException, XmlPullParserException {
-        final List<Bundle> metadata = new ArrayList<>();
         if (xmlResId <= 0) {
             Log.d(TAG, xmlResId + " is invalid.");
-            return metadata;
+            return new ArrayList<>();
+        }
+        final Configuration configuration = context.getResources().getConfiguration();
+        if (configuration == null) {
+            return parseMetadata(context, xmlResId, flags);
+        }
+        final String cacheKey = context.getPackageName() + "/" + xmlResId + "/" + flags + "/"
+                + getConfigurationKey(configuration);
+
+        List<Bundle> metadata;
+        synchronized (sMetadataCache) {
+            metadata = sMetadataCache.get(cacheKey);
+        }
+        if (metadata == null) {
+            metadata = parseMetadata(context, xmlResId, flags);
+            synchronized (sMetadataCache) {
+                sMetadataCache.put(cacheKey, metadata);
+            }
+        }
+        return copyMetadata(metadata);
+    }
+
+    /**
+     * @return a key over the parts of {@param configuration} which decide the xml variant and
+     * the titles and summaries read from it. Contexts which only differ in window size or other
+     * fields share their cached metadata.
+     */
+    @VisibleForTesting
+    static String getConfigurationKey(Configuration configuration) {
+        return configuration.getLocales().toLanguageTags()
+                + "/" + configuration.densityDpi
+                + "/" + configuration.uiMode
+                + "/" + configuration.orientation
+                + "/" + configuration.mcc
+                + "/" + configuration.mnc;
+    }
+
+    /**
+     * Clears the metadata cached by {@link #extractMetadata(Context, int, int)}.
+     */
+    @VisibleForTesting
+    public static void clearMetadataCache() {
+        synchronized (sMetadataCache) {
+            sMetadataCache.evictAll();
         }
+    }
+
+    /**
+     * Cached bundles are shared, so callers always receive their own copies. The copies are
+     * shallow, which is enough because the bundles only hold strings, ints and booleans.
+     */
+    private static List<Bundle> copyMetadata(List<Bundle> metadata) {
+        final List<Bundle> copy = new ArrayList<>(metadata.size());
+        for (Bundle bundle : metadata) {
+            copy.add(new Bundle(bundle));
+        }
+        return copy;
+    }
+
+    private static List<Bundle> parseMetadata(Context context, @XmlRes int xmlResId, int flags)
+            throws IOException, XmlPullParserException {
+        final List<Bundle> metadata = new ArrayList<>();
         final XmlResourceParser parser = context.getResources().getXml(xmlResId);
 
         int type;
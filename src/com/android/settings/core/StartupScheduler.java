@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.settings.core;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
+import androidx.annotation.VisibleForTesting;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs the startup work of an activity in phases, and traces how long each piece of work took.
+ *
+ * <p>{@link #PHASE_CRITICAL} work runs right away, since the first frame depends on it.
+ * {@link #PHASE_POST_FIRST_FRAME} work is held until the first frame of the attached window has
+ * been drawn, and {@link #PHASE_IDLE} work until the main thread goes idle after that, one task
+ * per idle pass. Work scheduled once its phase has been reached runs as soon as possible.
+ *
+ * <p>The trace is published once, when the first frame has been drawn and the idle work
+ * scheduled until then has run. The trace of the last activity to finish starting is kept in
+ * {@link #getLastTrace()} for dumpsys. Work scheduled after that, such as on resume, still runs
+ * in its phase but isn't traced. Only use from the main thread.
+ */
+public class StartupScheduler {
+
+    private static final String TAG = "StartupScheduler";
+
+    public static final int PHASE_CRITICAL = 0;
+    public static final int PHASE_POST_FIRST_FRAME = 1;
+    public static final int PHASE_IDLE = 2;
+
+    private static final String[] PHASE_NAMES = {"critical", "post_first_frame", "idle"};
+
+    private static Trace sLastTrace;
+
+    private final String mTag;
+    private final long mStartTime;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final List<NamedTask> mPostFirstFrameTasks = new ArrayList<>();
+    private final ArrayDeque<NamedTask> mIdleTasks = new ArrayDeque<>();
+    private final List<TraceEntry> mEntries = new ArrayList<>();
+
+    private long mFirstFrameMillis = -1;
+    private boolean mIdleHandlerAdded;
+    private boolean mTracePublished;
+
+    private final MessageQueue.IdleHandler mIdleHandler = () -> {
+        final NamedTask task = mIdleTasks.poll();
+        if (task != null) {
+            run(PHASE_IDLE, task);
+        }
+        if (mIdleTasks.isEmpty()) {
+            mIdleHandlerAdded = false;
+            publishTraceIfNeeded();
+            return false;
+        }
+        return true;
+    };
+
+    public StartupScheduler(String tag) {
+        mTag = tag;
+        mStartTime = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Holds back {@link #PHASE_POST_FIRST_FRAME} work until the first frame of the window of
+     * {@param decorView} is drawn.
+     */
+    public void attach(View decorView) {
+        final ViewTreeObserver observer = decorView.getViewTreeObserver();
+        observer.addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                // The frame is drawn right after this returns, so anything posted now runs
+                // after it.
+                mHandler.post(StartupScheduler.this::onFirstFrameDrawn);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Runs {@param task} in {@param phase}, recording its time as {@param name}.
+     */
+    public void schedule(int phase, String name, Runnable task) {
+        final NamedTask namedTask = new NamedTask(name, task);
+        if (phase == PHASE_CRITICAL) {
+            run(PHASE_CRITICAL, namedTask);
+        } else if (phase == PHASE_POST_FIRST_FRAME) {
+            if (isFirstFrameDrawn()) {
+                run(PHASE_POST_FIRST_FRAME, namedTask);
+            } else {
+                mPostFirstFrameTasks.add(namedTask);
+            }
+        } else {
+            mIdleTasks.add(namedTask);
+            if (isFirstFrameDrawn()) {
+                addIdleHandlerIfNeeded();
+            }
+        }
+    }
+
+    /**
+     * Drops the work which hasn't run yet, for example when the activity is destroyed.
+     */
+    public void cancel() {
+        mHandler.removeCallbacksAndMessages(null);
+        mPostFirstFrameTasks.clear();
+        mIdleTasks.clear();
+        if (mIdleHandlerAdded) {
+            Looper.getMainLooper().getQueue().removeIdleHandler(mIdleHandler);
+            mIdleHandlerAdded = false;
+        }
+    }
+
+    /**
+     * @return whether the first frame has been drawn, so all but idle work runs immediately.
+     */
+    public boolean isFirstFrameDrawn() {
+        return mFirstFrameMillis >= 0;
+    }
+
+    /**
+     * @return the trace of the last activity which finished starting, or {@code null}.
+     */
+    public static synchronized Trace getLastTrace() {
+        return sLastTrace;
+    }
+
+    @VisibleForTesting
+    void onFirstFrameDrawn() {
+        if (isFirstFrameDrawn()) {
+            return;
+        }
+        mFirstFrameMillis = SystemClock.elapsedRealtime() - mStartTime;
+        for (NamedTask task : mPostFirstFrameTasks) {
+            run(PHASE_POST_FIRST_FRAME, task);
+        }
+        mPostFirstFrameTasks.clear();
+        if (mIdleTasks.isEmpty()) {
+            publishTraceIfNeeded();
+        } else {
+            addIdleHandlerIfNeeded();
+        }
+    }
+
+    @VisibleForTesting
+    List<TraceEntry> getEntries() {
+        return Collections.unmodifiableList(mEntries);
+    }
+
+    private void addIdleHandlerIfNeeded() {
+        if (!mIdleHandlerAdded) {
+            Looper.getMainLooper().getQueue().addIdleHandler(mIdleHandler);
+            mIdleHandlerAdded = true;
+        }
+    }
+
+    private void run(int phase, NamedTask task) {
+        if (mTracePublished) {
+            // Startup is over, so this work isn't timed from the creation of the scheduler.
+            task.mTask.run();
+            return;
+        }
+        final long startTime = SystemClock.elapsedRealtime();
+        task.mTask.run();
+        final long endTime = SystemClock.elapsedRealtime();
+        mEntries.add(new TraceEntry(phase, task.mName, startTime - mStartTime,
+                endTime - startTime));
+    }
+
+    private void publishTraceIfNeeded() {
+        if (mTracePublished) {
+            return;
+        }
+        mTracePublished = true;
+        final Trace trace = new Trace(mTag, mFirstFrameMillis, new ArrayList<>(mEntries));
+        synchronized (StartupScheduler.class) {
+            sLastTrace = trace;
+        }
+        Log.d(TAG, mTag + " first frame after " + mFirstFrameMillis + "ms, ran "
+                + mEntries.size() + " startup tasks");
+        mEntries.clear();
+    }
+
+    private static class NamedTask {
+        private final String mName;
+        private final Runnable mTask;
+
+        NamedTask(String name, Runnable task) {
+            mName = name;
+            mTask = task;
+        }
+    }
+
+    /**
+     * Startup trace of one activity.
+     */
+    public static class Trace {
+        public final String tag;
+        /**
+         * Time from the creation of the scheduler to the first frame, in milliseconds.
+         */
+        public final long firstFrameMillis;
+        public final List<TraceEntry> entries;
+
+        Trace(String tag, long firstFrameMillis, List<TraceEntry> entries) {
+            this.tag = tag;
+            this.firstFrameMillis = firstFrameMillis;
+            this.entries = Collections.unmodifiableList(entries);
+        }
+    }
+
+    /**
+     * One piece of startup work, with times in milliseconds relative to the creation of the
+     * scheduler.
+     */
+    public static class TraceEntry {
+        public final int phase;
+        public final String name;
+        public final long startMillis;
+        public final long durationMillis;
+
+        TraceEntry(int phase, String name, long startMillis, long durationMillis) {
+            this.phase = phase;
+            this.name = name;
+            this.startMillis = startMillis;
+            this.durationMillis = durationMillis;
+        }
+
+        public String getPhaseName() {
+            return PHASE_NAMES[phase];
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.settings.core.gateway;
+
+import com.android.settings.applications.manageapplications.ManageApplications;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hash index over {@link SettingsGateway}, so fragment and activity routing checks don't scan
+ * its arrays.
+ *
+ * <p>The index is built once per process, the first time it is used.
+ */
+public final class SettingsGatewayIndex {
+
+    /**
+     * Old activity names which now open another fragment.
+     */
+    private static final String[][] LEGACY_DESTINATIONS = {
+            {"com.android.settings.RunningServices", ManageApplications.class.getName()},
+            {"com.android.settings.applications.StorageUse", ManageApplications.class.getName()},
+    };
+
+    private SettingsGatewayIndex() {
+    }
+
+    /**
+     * @return whether {@param fragmentName} can be hosted by SettingsActivity.
+     */
+    public static boolean isEntryFragment(String fragmentName) {
+        final Entry entry = get(fragmentName);
+        return entry != null && entry.mIsEntryFragment;
+    }
+
+    /**
+     * @return whether the Settings component {@param className} stays enabled for restricted
+     * users.
+     */
+    public static boolean isAllowedForRestricted(String className) {
+        final Entry entry = get(className);
+        return entry != null && entry.mIsAllowedForRestricted;
+    }
+
+    /**
+     * @return the fragment to show for {@param className}, which differs from it only for
+     * legacy activity names.
+     */
+    public static String resolveDestination(String className) {
+        final Entry entry = get(className);
+        return entry != null && entry.mLegacyDestination != null
+                ? entry.mLegacyDestination : className;
+    }
+
+    /**
+     * @return what is known about {@param name}, or {@code null} if it isn't in the gateway.
+     */
+    public static Entry get(String name) {
+        if (name == null) {
+            return null;
+        }
+        return Holder.ENTRIES.get(name);
+    }
+
+    private static Map<String, Entry> buildIndex() {
+        final Map<String, Entry> entries = new HashMap<>();
+        for (String name : SettingsGateway.ENTRY_FRAGMENTS) {
+            getOrCreate(entries, name).mIsEntryFragment = true;
+        }
+        for (String name : SettingsGateway.SETTINGS_FOR_RESTRICTED) {
+            getOrCreate(entries, name).mIsAllowedForRestricted = true;
+        }
+        for (String[] legacy : LEGACY_DESTINATIONS) {
+            getOrCreate(entries, legacy[0]).mLegacyDestination = legacy[1];
+        }
+        return Collections.unmodifiableMap(entries);
+    }
+
+    private static Entry getOrCreate(Map<String, Entry> entries, String name) {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(name, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * What {@link SettingsGateway} says about a fragment or activity name. Not modified once the
+     * index is built.
+     */
+    public static class Entry {
+        private boolean mIsEntryFragment;
+        private boolean mIsAllowedForRestricted;
+        private String mLegacyDestination;
+
+        private Entry() {
+        }
+
+        public boolean isEntryFragment() {
+            return mIsEntryFragment;
+        }
+
+        public boolean isAllowedForRestricted() {
+            return mIsAllowedForRestricted;
+        }
+
+        public String getLegacyDestination() {
+            return mLegacyDestination;
+        }
+    }
+
+    private static class Holder {
+        private static final Map<String, Entry> ENTRIES = buildIndex();
+    }
+}
@@ -80,6 +80,23 @@ public interface DashboardFeatureProvider {
     void bindPreferenceToTile(Activity activity, int sourceMetricsCategory, Preference pref,
             Tile tile, String key, int baseOrder);
 
+    /**
+     * Holds back loading the summaries and icons of the tiles bound until the matching
+     * {@link #endTileBatch()}, so they are loaded together. Only call from the main thread.
+     */
+    void beginTileBatch();
+
+    /**
+     * Starts loading the summaries and icons of the tiles bound since {@link #beginTileBatch()}.
+     * Only call from the main thread.
+     */
+    void endTileBatch();
+
+    /**
+     * Drops the cached summaries and icons of tiles, after the tiles have been reloaded.
+     */
+    void clearTileCache();
+
     /**
      * Returns additional intent filter action for dashboard tiles
      */
@@ -17,24 +17,19 @@
 package com.android.settings.dashboard;
 
 import static com.android.settingslib.drawer.TileUtils.META_DATA_PREFERENCE_ICON_URI;
-import static com.android.settingslib.drawer.TileUtils.META_DATA_PREFERENCE_SUMMARY;
 import static com.android.settingslib.drawer.TileUtils.META_DATA_PREFERENCE_SUMMARY_URI;
 
 import android.app.Activity;
 import android.content.ComponentName;
 import android.content.Context;
-import android.content.IContentProvider;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.graphics.drawable.Icon;
 import android.os.Bundle;
 import android.provider.Settings;
 import androidx.annotation.VisibleForTesting;
 import androidx.preference.Preference;
 import android.text.TextUtils;
-import android.util.ArrayMap;
 import android.util.Log;
-import android.util.Pair;
 
 import com.android.internal.logging.nano.MetricsProto.MetricsEvent;
 import com.android.settings.R;
@@ -46,12 +41,9 @@ import com.android.settingslib.drawer.CategoryManager;
 import com.android.settingslib.drawer.DashboardCategory;
 import com.android.settingslib.drawer.ProfileSelectDialog;
 import com.android.settingslib.drawer.Tile;
-import com.android.settingslib.drawer.TileUtils;
-import com.android.settingslib.utils.ThreadUtils;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Impl for {@code DashboardFeatureProvider}.
@@ -71,11 +63,15 @@ public class DashboardFeatureProviderImpl implements DashboardFeatureProvider {
     private final CategoryManager mCategoryManager;
     private final PackageManager mPackageManager;
 
+    @VisibleForTesting
+    TileSummaryExecutor mTileSummaryExecutor;
+
     public DashboardFeatureProviderImpl(Context context) {
         mContext = context.getApplicationContext();
         mCategoryManager = CategoryManager.get(context, getExtraIntentAction());
         mMetricsFeatureProvider = FeatureFactory.getFactory(context).getMetricsFeatureProvider();
         mPackageManager = context.getPackageManager();
+        mTileSummaryExecutor = TileSummaryExecutor.getInstance();
     }
 
     @Override
@@ -97,11 +93,16 @@ public class DashboardFeatureProviderImpl implements DashboardFeatureProvider {
             return null;
         }
         final List<Preference> preferences = new ArrayList<>();
-        for (Tile tile : tiles) {
-            final Preference pref = new Preference(context);
-            bindPreferenceToTile(activity, sourceMetricsCategory, pref, tile, null /* key */,
-                    Preference.DEFAULT_ORDER /* baseOrder */);
-            preferences.add(pref);
+        beginTileBatch();
+        try {
+            for (Tile tile : tiles) {
+                final Preference pref = new Preference(context);
+                bindPreferenceToTile(activity, sourceMetricsCategory, pref, tile, null /* key */,
+                        Preference.DEFAULT_ORDER /* baseOrder */);
+                preferences.add(pref);
+            }
+        } finally {
+            endTileBatch();
         }
         return preferences;
     }
@@ -192,6 +193,21 @@ public class DashboardFeatureProviderImpl implements DashboardFeatureProvider {
         }
     }
 
+    @Override
+    public void beginTileBatch() {
+        mTileSummaryExecutor.beginBatch();
+    }
+
+    @Override
+    public void endTileBatch() {
+        mTileSummaryExecutor.endBatch();
+    }
+
+    @Override
+    public void clearTileCache() {
+        mTileSummaryExecutor.clearCache();
+    }
+
     @Override
     public String getExtraIntentAction() {
         return null;
@@ -225,13 +241,7 @@ public class DashboardFeatureProviderImpl implements DashboardFeatureProvider {
             // to avoid preference height change.
             preference.setSummary(R.string.summary_placeholder);
 
-            ThreadUtils.postOnBackgroundThread(() -> {
-                final Map<String, IContentProvider> providerMap = new ArrayMap<>();
-                final String uri = tile.metaData.getString(META_DATA_PREFERENCE_SUMMARY_URI);
-                final String summary = TileUtils.getTextFromUri(
-                        mContext, uri, providerMap, META_DATA_PREFERENCE_SUMMARY);
-                ThreadUtils.postOnMainThread(() -> preference.setSummary(summary));
-            });
+            mTileSummaryExecutor.loadSummary(mContext, tile, preference::setSummary);
         } else {
             preference.setSummary(R.string.summary_placeholder);
         }
@@ -243,29 +253,8 @@ public class DashboardFeatureProviderImpl implements DashboardFeatureProvider {
             preference.setIcon(tile.icon.loadDrawable(preference.getContext()));
         } else if (tile.metaData != null
                 && tile.metaData.containsKey(META_DATA_PREFERENCE_ICON_URI)) {
-            ThreadUtils.postOnBackgroundThread(() -> {
-                String packageName = null;
-                if (tile.intent != null) {
-                    Intent intent = tile.intent;
-                    if (!TextUtils.isEmpty(intent.getPackage())) {
-                        packageName = intent.getPackage();
-                    } else if (intent.getComponent() != null) {
-                        packageName = intent.getComponent().getPackageName();
-                    }
-                }
-                final Map<String, IContentProvider> providerMap = new ArrayMap<>();
-                final String uri = tile.metaData.getString(META_DATA_PREFERENCE_ICON_URI);
-                final Pair<String, Integer> iconInfo = TileUtils.getIconFromUri(
-                        mContext, packageName, uri, providerMap);
-                if (iconInfo == null) {
-                    Log.w(TAG, "Failed to get icon from uri " + uri);
-                    return;
-                }
-                final Icon icon = Icon.createWithResource(iconInfo.first, iconInfo.second);
-                ThreadUtils.postOnMainThread(() ->
-                        preference.setIcon(icon.loadDrawable(preference.getContext()))
-                );
-            });
+            mTileSummaryExecutor.loadIcon(mContext, tile,
+                    icon -> preference.setIcon(icon.loadDrawable(preference.getContext())));
         }
     }
 
@@ -58,6 +58,7 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
     private final Map<Class, List<AbstractPreferenceController>> mPreferenceControllers =
             new ArrayMap<>();
     private final Set<String> mDashboardTilePrefKeys = new ArraySet<>();
+    private final PreferenceStateEngine mPreferenceStateEngine = new PreferenceStateEngine(TAG);
 
     private DashboardFeatureProvider mDashboardFeatureProvider;
     private DashboardTilePlaceholderPreferenceController mPlaceholderPreferenceController;
@@ -118,6 +119,8 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
 
     @Override
     public void onCategoriesChanged() {
+        // The tiles were reloaded, so don't serve summaries and icons cached before the reload.
+        mDashboardFeatureProvider.clearTileCache();
         final DashboardCategory category =
                 mDashboardFeatureProvider.getTilesForCategory(getCategoryKey());
         if (category == null) {
@@ -169,6 +172,18 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
         updatePreferenceStates();
     }
 
+    @Override
+    public void onPause() {
+        super.onPause();
+        mPreferenceStateEngine.cancel();
+    }
+
+    @Override
+    public void onDestroy() {
+        mPreferenceStateEngine.cancel();
+        super.onDestroy();
+    }
+
     @Override
     public boolean onPreferenceTreeClick(Preference preference) {
         Collection<List<AbstractPreferenceController>> controllers =
@@ -289,24 +304,20 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
      */
     protected void updatePreferenceStates() {
         final PreferenceScreen screen = getPreferenceScreen();
-        Collection<List<AbstractPreferenceController>> controllerLists =
-                mPreferenceControllers.values();
-        for (List<AbstractPreferenceController> controllerList : controllerLists) {
-            for (AbstractPreferenceController controller : controllerList) {
-                if (!controller.isAvailable()) {
-                    continue;
-                }
-                final String key = controller.getPreferenceKey();
-
-                final Preference preference = screen.findPreference(key);
-                if (preference == null) {
-                    Log.d(TAG, String.format("Cannot find preference with key %s in Controller %s",
-                            key, controller.getClass().getSimpleName()));
-                    continue;
-                }
-                controller.updateState(preference);
-            }
+        final List<AbstractPreferenceController> controllers = new ArrayList<>();
+        for (List<AbstractPreferenceController> controllerList : mPreferenceControllers.values()) {
+            controllers.addAll(controllerList);
         }
+        mPreferenceStateEngine.updatePreferenceStates(screen, controllers);
+    }
+
+    /**
+     * @return the time, in milliseconds, each preference controller took in the last
+     * {@link #updatePreferenceStates()}.
+     */
+    @VisibleForTesting
+    Map<String, Long> getPreferenceControllerTimings() {
+        return mPreferenceStateEngine.getControllerTimings();
     }
 
     /**
@@ -358,33 +369,40 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
                 android.R.attr.colorControlNormal});
         final int tintColor = a.getColor(0, context.getColor(android.R.color.white));
         a.recycle();
-        // Install dashboard tiles.
-        for (Tile tile : tiles) {
-            final String key = mDashboardFeatureProvider.getDashboardKeyForTile(tile);
-            if (TextUtils.isEmpty(key)) {
-                Log.d(TAG, "tile does not contain a key, skipping " + tile);
-                continue;
-            }
-            if (!displayTile(tile)) {
-                continue;
-            }
-            if (tintTileIcon(tile)) {
-                tile.icon.setTint(tintColor);
-            }
-            if (mDashboardTilePrefKeys.contains(key)) {
-                // Have the key already, will rebind.
-                final Preference preference = screen.findPreference(key);
-                mDashboardFeatureProvider.bindPreferenceToTile(getActivity(), getMetricsCategory(),
-                        preference, tile, key, mPlaceholderPreferenceController.getOrder());
-            } else {
-                // Don't have this key, add it.
-                final Preference pref = new Preference(getPrefContext());
-                mDashboardFeatureProvider.bindPreferenceToTile(getActivity(), getMetricsCategory(),
-                        pref, tile, key, mPlaceholderPreferenceController.getOrder());
-                screen.addPreference(pref);
-                mDashboardTilePrefKeys.add(key);
+        // Install dashboard tiles, loading their summaries and icons together.
+        mDashboardFeatureProvider.beginTileBatch();
+        try {
+            for (Tile tile : tiles) {
+                final String key = mDashboardFeatureProvider.getDashboardKeyForTile(tile);
+                if (TextUtils.isEmpty(key)) {
+                    Log.d(TAG, "tile does not contain a key, skipping " + tile);
+                    continue;
+                }
+                if (!displayTile(tile)) {
+                    continue;
+                }
+                if (tintTileIcon(tile)) {
+                    tile.icon.setTint(tintColor);
+                }
+                if (mDashboardTilePrefKeys.contains(key)) {
+                    // Have the key already, will rebind.
+                    final Preference preference = screen.findPreference(key);
+                    mDashboardFeatureProvider.bindPreferenceToTile(getActivity(),
+                            getMetricsCategory(), preference, tile, key,
+                            mPlaceholderPreferenceController.getOrder());
+                } else {
+                    // Don't have this key, add it.
+                    final Preference pref = new Preference(getPrefContext());
+                    mDashboardFeatureProvider.bindPreferenceToTile(getActivity(),
+                            getMetricsCategory(), pref, tile, key,
+                            mPlaceholderPreferenceController.getOrder());
+                    screen.addPreference(pref);
+                    mDashboardTilePrefKeys.add(key);
+                }
+                remove.remove(key);
             }
-            remove.remove(key);
+        } finally {
+            mDashboardFeatureProvider.endTileBatch();
         }
         // Finally remove tiles that are gone.
         for (String key : remove) {
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.settings.dashboard;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import androidx.annotation.VisibleForTesting;
+import androidx.preference.Preference;
+import androidx.preference.PreferenceScreen;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import com.android.settings.core.BasePreferenceController;
+import com.android.settings.utils.WorkerExecutors;
+import com.android.settingslib.core.AbstractPreferenceController;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Updates the {@link Preference Preferences} of a {@link DashboardFragment} in two phases.
+ *
+ * <p>First, the availability of each controller is computed into an immutable
+ * {@link ControllerState}. Controllers which declare
+ * {@link BasePreferenceController#isAvailabilityThreadSafe()} are checked on a worker pool, since
+ * their checks often make binder calls; the others make no promise about thread safety and are
+ * checked on the calling thread.
+ *
+ * <p>Then, on the main thread, {@link AbstractPreferenceController#updateState(Preference)} is
+ * applied to each available controller's {@link Preference}. The main thread never waits on a
+ * worker: a preference whose availability is still being checked keeps its current state and is
+ * updated once the check completes. A controller is never checked on two threads at once; a
+ * controller which is asked to update again while its check is still running is checked once
+ * more after it completes.
+ *
+ * <p>{@link #cancel()} drops the checks still running, so controllers are not updated once the
+ * screen is no longer shown.
+ *
+ * <p>The time each controller spends in both phases is recorded, so slow controllers can be
+ * found with {@link #getControllerTimings()}.
+ */
+class PreferenceStateEngine {
+
+    private static final String TAG = "PreferenceStateEngine";
+
+    private static final int MAX_WORKER_THREADS = 4;
+
+    /**
+     * Controllers slower than this are logged, since they likely cause a dropped frame.
+     */
+    private static final long SLOW_CONTROLLER_THRESHOLD_MS = 16;
+
+    private static final Executor WORKER_EXECUTOR =
+            WorkerExecutors.newBoundedExecutor(TAG, MAX_WORKER_THREADS);
+
+    private final String mTag;
+    private final Executor mExecutor;
+    private final Handler mHandler;
+    private final Map<String, Long> mControllerTimings = new ArrayMap<>();
+    /**
+     * Controllers being checked on a worker, mapped to whether they were asked to update again
+     * in the meantime. Only accessed on the main thread.
+     */
+    private final Map<AbstractPreferenceController, Boolean> mPendingControllers =
+            new ArrayMap<>();
+    private PreferenceScreen mScreen;
+    /**
+     * Incremented by {@link #cancel()}, so results of checks started before it are dropped.
+     * Only accessed on the main thread.
+     */
+    private int mGeneration;
+
+    PreferenceStateEngine(String tag) {
+        this(tag, WORKER_EXECUTOR, new Handler(Looper.getMainLooper()));
+    }
+
+    @VisibleForTesting
+    PreferenceStateEngine(String tag, Executor executor, Handler handler) {
+        mTag = tag;
+        mExecutor = executor;
+        mHandler = handler;
+    }
+
+    /**
+     * Computes and applies the state of each of {@param controllers} to {@param screen}. Must be
+     * called on the main thread.
+     */
+    void updatePreferenceStates(PreferenceScreen screen,
+            List<AbstractPreferenceController> controllers) {
+        mScreen = screen;
+        final List<ControllerState> states = new ArrayList<>(controllers.size());
+        for (AbstractPreferenceController controller : controllers) {
+            if (isThreadSafe(controller)) {
+                computeStateInBackground(controller);
+            } else {
+                states.add(computeState(controller));
+            }
+        }
+        applyStates(screen, states);
+    }
+
+    /**
+     * Drops the checks still running and forgets the screen, so no controller is updated until
+     * {@link #updatePreferenceStates} is called again. Must be called on the main thread.
+     */
+    void cancel() {
+        mHandler.removeCallbacksAndMessages(null);
+        mPendingControllers.clear();
+        mScreen = null;
+        mGeneration++;
+    }
+
+    /**
+     * Phase two: applies {@param states} to the {@link Preference Preferences} in
+     * {@param screen}. Must be called on the main thread.
+     */
+    @VisibleForTesting
+    void applyStates(PreferenceScreen screen, List<ControllerState> states) {
+        for (ControllerState state : states) {
+            long elapsed = state.availabilityMillis;
+            if (state.isAvailable) {
+                final AbstractPreferenceController controller = state.controller;
+                final String key = controller.getPreferenceKey();
+
+                final Preference preference = screen.findPreference(key);
+                if (preference == null) {
+                    Log.d(mTag, String.format("Cannot find preference with key %s in Controller %s",
+                            key, controller.getClass().getSimpleName()));
+                    continue;
+                }
+                final long startTime = SystemClock.elapsedRealtime();
+                controller.updateState(preference);
+                elapsed += SystemClock.elapsedRealtime() - startTime;
+            }
+            recordTiming(state.controller, elapsed);
+        }
+    }
+
+    /**
+     * @return the time, in milliseconds, each controller class took in its last update.
+     */
+    Map<String, Long> getControllerTimings() {
+        synchronized (mControllerTimings) {
+            return Collections.unmodifiableMap(new ArrayMap<>(mControllerTimings));
+        }
+    }
+
+    private void computeStateInBackground(AbstractPreferenceController controller) {
+        if (mPendingControllers.containsKey(controller)) {
+            mPendingControllers.put(controller, true);
+            return;
+        }
+        mPendingControllers.put(controller, false);
+        final PreferenceScreen screen = mScreen;
+        final int generation = mGeneration;
+        mExecutor.execute(() -> {
+            final ControllerState state;
+            try {
+                state = computeState(controller);
+            } catch (RuntimeException e) {
+                mHandler.post(() -> {
+                    if (generation == mGeneration) {
+                        mPendingControllers.remove(controller);
+                    }
+                    throw e;
+                });
+                return;
+            }
+            mHandler.post(() -> onStateComputed(state, screen, generation));
+        });
+    }
+
+    private void onStateComputed(ControllerState state, PreferenceScreen screen, int generation) {
+        if (generation != mGeneration) {
+            // Cancelled since the check started.
+            return;
+        }
+        final AbstractPreferenceController controller = state.controller;
+        if (Boolean.TRUE.equals(mPendingControllers.remove(controller))
+                || screen != mScreen) {
+            // The controller was asked to update while it was being checked, or the screen
+            // changed, so the result may already be out of date.
+            computeStateInBackground(controller);
+            return;
+        }
+        applyStates(mScreen, Collections.singletonList(state));
+    }
+
+    private void recordTiming(AbstractPreferenceController controller, long elapsed) {
+        final String name = controller.getClass().getName();
+        synchronized (mControllerTimings) {
+            mControllerTimings.put(name, elapsed);
+        }
+        if (elapsed > SLOW_CONTROLLER_THRESHOLD_MS) {
+            Log.w(mTag, controller.getClass().getSimpleName() + " took " + elapsed
+                    + "ms to update");
+        }
+    }
+
+    private static boolean isThreadSafe(AbstractPreferenceController controller) {
+        return controller instanceof BasePreferenceController
+                && ((BasePreferenceController) controller).isAvailabilityThreadSafe();
+    }
+
+    private static ControllerState computeState(AbstractPreferenceController controller) {
+        final long startTime = SystemClock.elapsedRealtime();
+        final boolean isAvailable = controller.isAvailable();
+        return new ControllerState(controller, isAvailable,
+                SystemClock.elapsedRealtime() - startTime);
+    }
+
+    /**
+     * Immutable result of the first phase for a single controller.
+     */
+    static class ControllerState {
+        final AbstractPreferenceController controller;
+        final boolean isAvailable;
+        final long availabilityMillis;
+
+        ControllerState(AbstractPreferenceController controller, boolean isAvailable,
+                long availabilityMillis) {
+            this.controller = controller;
+            this.isAvailable = isAvailable;
+            this.availabilityMillis = availabilityMillis;
+        }
+    }
+}
@@ -52,8 +52,13 @@ public class SummaryLoader {
     private final DashboardFeatureProvider mDashboardFeatureProvider;
     private final String mCategoryKey;
 
+    /**
+     * Worker thread shared by every {@link SummaryLoader}, so recreating loaders while
+     * navigating between dashboards doesn't start a new thread each time.
+     */
+    private static HandlerThread sWorkerThread;
+
     private final Worker mWorker;
-    private final HandlerThread mWorkerThread;
 
     private SummaryConsumer mSummaryConsumer;
     private boolean mListening;
@@ -64,18 +69,25 @@ public class SummaryLoader {
         mDashboardFeatureProvider = FeatureFactory.getFactory(activity)
                 .getDashboardFeatureProvider(activity);
         mCategoryKey = categoryKey;
-        mWorkerThread = new HandlerThread("SummaryLoader", Process.THREAD_PRIORITY_BACKGROUND);
-        mWorkerThread.start();
-        mWorker = new Worker(mWorkerThread.getLooper());
+        mWorker = new Worker(getWorkerLooper());
         mActivity = activity;
     }
 
     public void release() {
-        mWorkerThread.quitSafely();
+        // Drop this loader's pending work, the worker thread is shared.
+        mWorker.removeCallbacksAndMessages(null);
         // Make sure we aren't listening.
         setListeningW(false);
     }
 
+    private static synchronized Looper getWorkerLooper() {
+        if (sWorkerThread == null) {
+            sWorkerThread = new HandlerThread("SummaryLoader", Process.THREAD_PRIORITY_BACKGROUND);
+            sWorkerThread.start();
+        }
+        return sWorkerThread.getLooper();
+    }
+
     public void setSummaryConsumer(SummaryConsumer summaryConsumer) {
         mSummaryConsumer = summaryConsumer;
     }
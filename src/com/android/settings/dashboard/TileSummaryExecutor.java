@@ -0,0 +1,323 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.settings.dashboard;
+
+import static com.android.settingslib.drawer.TileUtils.META_DATA_PREFERENCE_ICON_URI;
+import static com.android.settingslib.drawer.TileUtils.META_DATA_PREFERENCE_SUMMARY;
+import static com.android.settingslib.drawer.TileUtils.META_DATA_PREFERENCE_SUMMARY_URI;
+
+import android.content.ComponentName;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.IContentProvider;
+import android.content.Intent;
+import android.graphics.drawable.Icon;
+import android.os.SystemClock;
+import androidx.annotation.VisibleForTesting;
+import android.text.TextUtils;
+import android.util.ArrayMap;
+import android.util.Log;
+import android.util.LruCache;
+import android.util.Pair;
+
+import com.android.settingslib.drawer.Tile;
+import com.android.settingslib.drawer.TileUtils;
+import com.android.settingslib.utils.ThreadUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * Loads the summaries and icons of dashboard {@link Tile tiles} from their content providers.
+ *
+ * <p>Every dashboard shares one instance, which runs at most {@link #MAX_CONCURRENT_LOADS} loads
+ * at a time on the shared background pool, summaries before icons and higher priority tiles
+ * first. Requests for a tile which is already queued are merged into the queued request, and
+ * results are cached across dashboards by tile component and uri for
+ * {@link #CACHE_MAX_AGE_MS}, so tiles rebound while scrolling or switching pages do not query
+ * their providers again.
+ *
+ * <p>A dashboard binding many tiles wraps the binds in {@link #beginBatch()} and
+ * {@link #endBatch()}. The queued requests are then loaded in one pass which acquires each
+ * authority's provider once, releases it when the pass is done, and delivers every result in a
+ * single main thread post.
+ */
+public class TileSummaryExecutor {
+
+    private static final String TAG = "TileSummaryExecutor";
+
+    @VisibleForTesting
+    static final int MAX_CONCURRENT_LOADS = 2;
+
+    private static final int CACHE_SIZE = 128;
+
+    @VisibleForTesting
+    static final long CACHE_MAX_AGE_MS = 5000;
+
+    private static final int TYPE_SUMMARY = 0;
+    private static final int TYPE_ICON = 1;
+
+    private static TileSummaryExecutor sInstance;
+
+    private final PriorityQueue<Request> mQueue = new PriorityQueue<>();
+    private final Map<String, Request> mPendingRequests = new ArrayMap<>();
+    private final LruCache<String, CacheEntry> mCache = new LruCache<>(CACHE_SIZE);
+
+    private int mActiveLoads;
+    private int mBatchDepth;
+    private long mSequence;
+
+    public static synchronized TileSummaryExecutor getInstance() {
+        if (sInstance == null) {
+            sInstance = new TileSummaryExecutor();
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    TileSummaryExecutor() {
+    }
+
+    /**
+     * Loads the summary of {@param tile} from its summary uri and hands it to {@param consumer}
+     * on the main thread.
+     */
+    public void loadSummary(Context context, Tile tile, Consumer<String> consumer) {
+        final String uri = tile.metaData.getString(META_DATA_PREFERENCE_SUMMARY_URI);
+        load(new Request(context, tile, uri, TYPE_SUMMARY),
+                result -> consumer.accept((String) result));
+    }
+
+    /**
+     * Loads the icon of {@param tile} from its icon uri and hands it to {@param consumer} on the
+     * main thread. {@param consumer} is not called if the icon can't be loaded.
+     */
+    public void loadIcon(Context context, Tile tile, Consumer<Icon> consumer) {
+        final String uri = tile.metaData.getString(META_DATA_PREFERENCE_ICON_URI);
+        load(new Request(context, tile, uri, TYPE_ICON), result -> {
+            if (result != null) {
+                consumer.accept((Icon) result);
+            }
+        });
+    }
+
+    /**
+     * Drops every cached result. Called whenever the tiles have been reloaded, since their
+     * summaries and icons may have changed along with them.
+     */
+    public synchronized void clearCache() {
+        mCache.evictAll();
+    }
+
+    /**
+     * Holds back loading until the matching {@link #endBatch()}, so the requests made in between
+     * are loaded together. Only call from the main thread.
+     */
+    public synchronized void beginBatch() {
+        mBatchDepth++;
+    }
+
+    /**
+     * Starts loading the requests made since {@link #beginBatch()}. Only call from the main
+     * thread.
+     */
+    public void endBatch() {
+        synchronized (this) {
+            if (mBatchDepth == 0 || --mBatchDepth > 0 || !startLoadIfPossible()) {
+                return;
+            }
+        }
+        ThreadUtils.postOnBackgroundThread(this::drainQueue);
+    }
+
+    private void load(Request request, Consumer<Object> consumer) {
+        synchronized (this) {
+            final CacheEntry entry = mCache.get(request.mKey);
+            if (entry != null
+                    && SystemClock.elapsedRealtime() - entry.mTimestamp < CACHE_MAX_AGE_MS) {
+                ThreadUtils.postOnMainThread(() -> consumer.accept(entry.mResult));
+                return;
+            }
+
+            final Request pending = mPendingRequests.get(request.mKey);
+            if (pending != null) {
+                // Coalesce with the queued request for the same tile and uri.
+                pending.mConsumers.add(consumer);
+                return;
+            }
+
+            request.mSequence = mSequence++;
+            request.mConsumers.add(consumer);
+            mPendingRequests.put(request.mKey, request);
+            mQueue.add(request);
+            if (mBatchDepth > 0 || !startLoadIfPossible()) {
+                return;
+            }
+        }
+        ThreadUtils.postOnBackgroundThread(this::drainQueue);
+    }
+
+    private boolean startLoadIfPossible() {
+        if (mActiveLoads >= MAX_CONCURRENT_LOADS || mQueue.isEmpty()) {
+            return false;
+        }
+        mActiveLoads++;
+        return true;
+    }
+
+    private void drainQueue() {
+        while (true) {
+            final List<Request> batch = new ArrayList<>();
+            synchronized (this) {
+                Request request;
+                while ((request = mQueue.poll()) != null) {
+                    batch.add(request);
+                }
+                if (batch.isEmpty()) {
+                    mActiveLoads--;
+                    return;
+                }
+            }
+            loadBatch(batch);
+        }
+    }
+
+    /**
+     * Loads {@param batch} in priority order, sharing one acquired provider per authority, and
+     * delivers all of the results in one main thread post.
+     */
+    private void loadBatch(List<Request> batch) {
+        final long startTime = SystemClock.elapsedRealtime();
+        final Map<String, IContentProvider> providerMap = new ArrayMap<>();
+        final Object[] results = new Object[batch.size()];
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                final Request request = batch.get(i);
+                try {
+                    results[i] = request.load(providerMap);
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Failed to load " + request.mKey, e);
+                }
+            }
+        } finally {
+            final ContentResolver resolver = batch.get(0).mContext.getContentResolver();
+            for (IContentProvider provider : providerMap.values()) {
+                if (provider != null) {
+                    resolver.releaseUnstableProvider(provider);
+                }
+            }
+        }
+
+        final List<List<Consumer<Object>>> consumers = new ArrayList<>(batch.size());
+        synchronized (this) {
+            for (int i = 0; i < batch.size(); i++) {
+                final Request request = batch.get(i);
+                mPendingRequests.remove(request.mKey);
+                mCache.put(request.mKey, new CacheEntry(results[i]));
+                consumers.add(new ArrayList<>(request.mConsumers));
+            }
+        }
+        if (DashboardSummary.DEBUG) {
+            Log.d(TAG, "Loaded " + batch.size() + " tiles from " + providerMap.size()
+                    + " authorities in " + (SystemClock.elapsedRealtime() - startTime) + "ms");
+        }
+        ThreadUtils.postOnMainThread(() -> {
+            for (int i = 0; i < consumers.size(); i++) {
+                for (Consumer<Object> consumer : consumers.get(i)) {
+                    consumer.accept(results[i]);
+                }
+            }
+        });
+    }
+
+    private static String getCacheKey(Tile tile, String uri) {
+        final ComponentName component = tile.intent != null ? tile.intent.getComponent() : null;
+        return (component != null ? component.flattenToShortString() : "") + "|" + uri;
+    }
+
+    private static String getPackageName(Tile tile) {
+        if (tile.intent == null) {
+            return null;
+        }
+        final Intent intent = tile.intent;
+        if (!TextUtils.isEmpty(intent.getPackage())) {
+            return intent.getPackage();
+        } else if (intent.getComponent() != null) {
+            return intent.getComponent().getPackageName();
+        }
+        return null;
+    }
+
+    private static class Request implements Comparable<Request> {
+        private final Context mContext;
+        private final String mUri;
+        private final String mPackageName;
+        private final String mKey;
+        private final int mType;
+        private final int mPriority;
+        private final List<Consumer<Object>> mConsumers = new ArrayList<>();
+        private long mSequence;
+
+        Request(Context context, Tile tile, String uri, int type) {
+            // Requests are queued in a process-wide executor, so don't hold on to an activity.
+            mContext = context.getApplicationContext();
+            mUri = uri;
+            mPackageName = getPackageName(tile);
+            mKey = getCacheKey(tile, uri);
+            mType = type;
+            mPriority = tile.priority;
+        }
+
+        Object load(Map<String, IContentProvider> providerMap) {
+            if (mType == TYPE_SUMMARY) {
+                return TileUtils.getTextFromUri(mContext, mUri, providerMap,
+                        META_DATA_PREFERENCE_SUMMARY);
+            }
+            final Pair<String, Integer> iconInfo = TileUtils.getIconFromUri(
+                    mContext, mPackageName, mUri, providerMap);
+            if (iconInfo == null) {
+                Log.w(TAG, "Failed to get icon from uri " + mUri);
+                return null;
+            }
+            return Icon.createWithResource(iconInfo.first, iconInfo.second);
+        }
+
+        @Override
+        public int compareTo(Request other) {
+            if (mType != other.mType) {
+                return Integer.compare(mType, other.mType);
+            }
+            if (mPriority != other.mPriority) {
+                // Larger tile priority is shown higher on the page.
+                return Integer.compare(other.mPriority, mPriority);
+            }
+            return Long.compare(mSequence, other.mSequence);
+        }
+    }
+
+    private static class CacheEntry {
+        private final Object mResult;
+        private final long mTimestamp;
+
+        CacheEntry(Object result) {
+            mResult = result;
+            mTimestamp = SystemClock.elapsedRealtime();
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.android.settings.fuelgauge;
+
+import android.os.BatteryStats;
+import android.os.BatteryStats.HistoryItem;
+import android.os.SystemClock;
+import androidx.annotation.VisibleForTesting;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+
+/**
+ * Compact copy of the {@link BatteryStats} history, decoded in a single pass.
+ *
+ * <p>Each record is stored across primitive arrays instead of a {@link HistoryItem} per record,
+ * and the values which need a full walk of the history (wall clock range, last data record,
+ * aggregated states) are computed while decoding. The most recently decoded stats snapshot is
+ * cached, so the battery chart, the history graph and the battery tip detectors share one decode
+ * instead of each iterating the history again.
+ */
+public class BatteryHistoryData {
+
+    private static final String TAG = "BatteryHistoryData";
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private static WeakReference<BatteryStats> sCachedStats;
+    private static int sCachedHistorySize;
+    private static BatteryHistoryData sCachedData;
+
+    private int mSize;
+    private long[] mTimes = new long[INITIAL_CAPACITY];
+    private long[] mCurrentTimes = new long[INITIAL_CAPACITY];
+    private byte[] mCmds = new byte[INITIAL_CAPACITY];
+    private byte[] mBatteryLevels = new byte[INITIAL_CAPACITY];
+    private int[] mStates = new int[INITIAL_CAPACITY];
+    private int[] mStates2 = new int[INITIAL_CAPACITY];
+
+    private long mHistoryStart;
+    private long mHistoryDataEnd;
+    private long mStartWallTime;
+    private long mEndDataWallTime;
+    private long mLastRealtime;
+    private int mNumInteresting;
+    private int mAggregatedStates;
+    private int mAggregatedStates2;
+
+    /**
+     * @return the decoded history of {@param stats}, reusing the last decode if the stats and
+     * their history haven't changed since.
+     */
+    public static synchronized BatteryHistoryData get(BatteryStats stats) {
+        final int historySize = stats.getHistoryUsedSize();
+        if (sCachedData != null && sCachedStats.get() == stats
+                && sCachedHistorySize == historySize) {
+            return sCachedData;
+        }
+        final long startTime = SystemClock.elapsedRealtime();
+        sCachedData = decode(stats);
+        sCachedStats = new WeakReference<>(stats);
+        sCachedHistorySize = historySize;
+        BatteryUtils.logRuntime(TAG, "decode " + sCachedData.mSize + " records", startTime);
+        return sCachedData;
+    }
+
+    @VisibleForTesting
+    static synchronized void clearCache() {
+        sCachedStats = null;
+        sCachedData = null;
+    }
+
+    @VisibleForTesting
+    static BatteryHistoryData decode(BatteryStats stats) {
+        final BatteryHistoryData data = new BatteryHistoryData();
+        long lastWallTime = 0;
+        boolean first = true;
+        if (stats.startIteratingHistoryLocked()) {
+            final HistoryItem rec = new HistoryItem();
+            while (stats.getNextHistoryLocked(rec)) {
+                data.add(rec);
+                if (first) {
+                    first = false;
+                    data.mHistoryStart = rec.time;
+                }
+                if (rec.cmd == HistoryItem.CMD_CURRENT_TIME
+                        || rec.cmd == HistoryItem.CMD_RESET) {
+                    // If there is a ridiculously large jump in time, then we won't be
+                    // able to create a good chart with that data, so just ignore the
+                    // times we got before and pretend like our data extends back from
+                    // the time we have now.
+                    // Also, if we are getting a time change and we are less than 5 minutes
+                    // since the start of the history real time, then also use this new
+                    // time to compute the base time, since whatever time we had before is
+                    // pretty much just noise.
+                    if (rec.currentTime > (lastWallTime + (180 * 24 * 60 * 60 * 1000L))
+                            || rec.time < (data.mHistoryStart + (5 * 60 * 1000L))) {
+                        data.mStartWallTime = 0;
+                    }
+                    lastWallTime = rec.currentTime;
+                    data.mLastRealtime = rec.time;
+                    if (data.mStartWallTime == 0) {
+                        data.mStartWallTime = lastWallTime
+                                - (data.mLastRealtime - data.mHistoryStart);
+                    }
+                }
+                if (rec.isDeltaData()) {
+                    data.mNumInteresting = data.mSize;
+                    data.mHistoryDataEnd = rec.time;
+                    data.mAggregatedStates |= rec.states;
+                    data.mAggregatedStates2 |= rec.states2;
+                }
+            }
+        }
+        stats.finishIteratingHistoryLocked();
+        data.mEndDataWallTime = lastWallTime + data.mHistoryDataEnd - data.mLastRealtime;
+        return data;
+    }
+
+    /**
+     * @return the number of decoded records.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return the number of records up to and including the last data record. Records after it
+     * carry no data to plot.
+     */
+    public int getNumInteresting() {
+        return mNumInteresting;
+    }
+
+    /**
+     * @return the elapsed realtime of the first record.
+     */
+    public long getHistoryStart() {
+        return mHistoryStart;
+    }
+
+    /**
+     * @return the elapsed realtime of the last data record.
+     */
+    public long getHistoryDataEnd() {
+        return mHistoryDataEnd;
+    }
+
+    /**
+     * @return the wall clock time the history starts at.
+     */
+    public long getStartWallTime() {
+        return mStartWallTime;
+    }
+
+    /**
+     * @return the wall clock time of the last data record.
+     */
+    public long getEndDataWallTime() {
+        return mEndDataWallTime;
+    }
+
+    /**
+     * @return the elapsed realtime of the last time change, which
+     * {@link #getEndDataWallTime()} is relative to.
+     */
+    public long getLastRealtime() {
+        return mLastRealtime;
+    }
+
+    /**
+     * @return every {@link HistoryItem#states} flag set in any data record.
+     */
+    public int getAggregatedStates() {
+        return mAggregatedStates;
+    }
+
+    /**
+     * @return every {@link HistoryItem#states2} flag set in any data record.
+     */
+    public int getAggregatedStates2() {
+        return mAggregatedStates2;
+    }
+
+    public long getTime(int index) {
+        return mTimes[index];
+    }
+
+    public byte getCmd(int index) {
+        return mCmds[index];
+    }
+
+    public boolean isDeltaData(int index) {
+        return mCmds[index] == HistoryItem.CMD_UPDATE;
+    }
+
+    public byte getBatteryLevel(int index) {
+        return mBatteryLevels[index];
+    }
+
+    public int getStates(int index) {
+        return mStates[index];
+    }
+
+    public int getStates2(int index) {
+        return mStates2[index];
+    }
+
+    public long getCurrentTime(int index) {
+        return mCurrentTimes[index];
+    }
+
+    /**
+     * Copies the record at {@param index} into {@param rec}, for consumers which take a
+     * {@link HistoryItem}. Only the fields stored by this class are set.
+     */
+    public void readRecord(int index, HistoryItem rec) {
+        rec.time = mTimes[index];
+        rec.cmd = mCmds[index];
+        rec.batteryLevel = mBatteryLevels[index];
+        rec.states = mStates[index];
+        rec.states2 = mStates2[index];
+        rec.currentTime = mCurrentTimes[index];
+    }
+
+    private void add(HistoryItem rec) {
+        if (mSize == mTimes.length) {
+            final int capacity = mSize * 2;
+            mTimes = Arrays.copyOf(mTimes, capacity);
+            mCurrentTimes = Arrays.copyOf(mCurrentTimes, capacity);
+            mCmds = Arrays.copyOf(mCmds, capacity);
+            mBatteryLevels = Arrays.copyOf(mBatteryLevels, capacity);
+            mStates = Arrays.copyOf(mStates, capacity);
+            mStates2 = Arrays.copyOf(mStates2, capacity);
+        }
+        mTimes[mSize] = rec.time;
+        mCurrentTimes[mSize] = rec.currentTime;
+        mCmds[mSize] = rec.cmd;
+        mBatteryLevels[mSize] = rec.batteryLevel;
+        mStates[mSize] = rec.states;
+        mStates2[mSize] = rec.states2;
+        mSize++;
+    }
+}
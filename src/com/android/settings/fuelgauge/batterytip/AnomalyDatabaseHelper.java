@@ -34,7 +34,7 @@ public class AnomalyDatabaseHelper extends SQLiteOpenHelper {
     private static final String TAG = "BatteryDatabaseHelper";
 
     private static final String DATABASE_NAME = "battery_settings.db";
-    private static final int DATABASE_VERSION = 4;
+    private static final int DATABASE_VERSION = 5;
 
     @Retention(RetentionPolicy.SOURCE)
     @IntDef({State.NEW,
@@ -92,6 +92,11 @@ public class AnomalyDatabaseHelper extends SQLiteOpenHelper {
                     + AnomalyColumns.ANOMALY_STATE + "," + AnomalyColumns.TIME_STAMP_MS + ")"
                     + ")";
 
+    private static final String CREATE_ANOMALY_TIME_STATE_INDEX =
+            "CREATE INDEX IF NOT EXISTS " + Tables.TABLE_ANOMALY + "_time_state_index ON "
+                    + Tables.TABLE_ANOMALY + "(" + AnomalyColumns.TIME_STAMP_MS + ","
+                    + AnomalyColumns.ANOMALY_STATE + ")";
+
     private static AnomalyDatabaseHelper sSingleton;
 
     public static synchronized AnomalyDatabaseHelper getInstance(Context context) {
@@ -103,6 +108,8 @@ public class AnomalyDatabaseHelper extends SQLiteOpenHelper {
 
     private AnomalyDatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // The anomaly job writes while the battery pages read, so don't block readers.
+        setWriteAheadLoggingEnabled(true);
     }
 
     @Override
@@ -112,12 +119,16 @@ public class AnomalyDatabaseHelper extends SQLiteOpenHelper {
 
     private void bootstrapDB(SQLiteDatabase db) {
         db.execSQL(CREATE_ANOMALY_TABLE);
+        db.execSQL(CREATE_ANOMALY_TIME_STATE_INDEX);
         Log.i(TAG, "Bootstrapped database");
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        if (oldVersion < DATABASE_VERSION) {
+        if (oldVersion == 4) {
+            // Version 5 only adds an index, so keep the logged anomalies.
+            db.execSQL(CREATE_ANOMALY_TIME_STATE_INDEX);
+        } else if (oldVersion < DATABASE_VERSION) {
             Log.w(TAG, "Detected schema version '" + oldVersion + "'. " +
                     "Index needs to be rebuilt for schema version '" + newVersion + "'.");
             // We need to drop the tables and recreate them
@@ -33,7 +33,6 @@ import android.content.Intent;
 import android.os.Bundle;
 import android.os.StatsDimensionsValue;
 import android.os.UserManager;
-import android.provider.Settings;
 import androidx.annotation.GuardedBy;
 import androidx.annotation.VisibleForTesting;
 import android.util.Log;
@@ -44,6 +43,7 @@ import com.android.internal.util.ArrayUtils;
 import com.android.settings.R;
 import com.android.settings.fuelgauge.BatteryUtils;
 import com.android.settings.fuelgauge.PowerUsageFeatureProvider;
+import com.android.settings.fuelgauge.batterytip.BatteryDatabaseManager.AnomalyRecord;
 import com.android.settings.overlay.FeatureFactory;
 import com.android.settingslib.core.instrumentation.MetricsFeatureProvider;
 import com.android.settingslib.fuelgauge.PowerWhitelistBackend;
@@ -56,7 +56,6 @@ import java.util.concurrent.TimeUnit;
 /** A JobService to store anomaly data to anomaly database */
 public class AnomalyDetectionJobService extends JobService {
     private static final String TAG = "AnomalyDetectionService";
-    private static final int ON = 1;
     @VisibleForTesting
     static final int UID_NULL = -1;
     @VisibleForTesting
@@ -102,15 +101,11 @@ public class AnomalyDetectionJobService extends JobService {
                     .getFactory(this).getPowerUsageFeatureProvider(this);
             final MetricsFeatureProvider metricsFeatureProvider = FeatureFactory
                     .getFactory(this).getMetricsFeatureProvider();
+            final AnomalyJobCache cache = new AnomalyJobCache(batteryUtils,
+                    powerWhitelistBackend, contentResolver, powerUsageFeatureProvider);
 
-            for (JobWorkItem item = dequeueWork(params); item != null; item = dequeueWork(params)) {
-                saveAnomalyToDatabase(context, userManager,
-                        batteryDatabaseManager, batteryUtils, policy, powerWhitelistBackend,
-                        contentResolver, powerUsageFeatureProvider, metricsFeatureProvider,
-                        item.getIntent().getExtras());
-
-                completeWork(params, item);
-            }
+            processWork(params, batteryDatabaseManager, userManager, batteryUtils, policy, cache,
+                    metricsFeatureProvider);
         });
 
         return true;
@@ -124,12 +119,42 @@ public class AnomalyDetectionJobService extends JobService {
         return true; // Need to reschedule
     }
 
+    /**
+     * Saves the queued anomalies until the queue is empty. Each burst of queued items is written
+     * in one transaction. The job only finishes when {@link #dequeueWork} finds the queue empty
+     * with no item left uncompleted, so the queue is checked again after each burst.
+     */
+    @VisibleForTesting
+    void processWork(JobParameters params, BatteryDatabaseManager batteryDatabaseManager,
+            UserManager userManager, BatteryUtils batteryUtils, BatteryTipPolicy policy,
+            AnomalyJobCache cache, MetricsFeatureProvider metricsFeatureProvider) {
+        final Context context = AnomalyDetectionJobService.this;
+        JobWorkItem item = dequeueWork(params);
+        while (item != null) {
+            final List<JobWorkItem> items = new ArrayList<>();
+            final List<AnomalyRecord> anomalies = new ArrayList<>();
+            for (; item != null; item = dequeueWork(params)) {
+                saveAnomalyToDatabase(context, userManager, anomalies, batteryUtils, policy,
+                        cache, metricsFeatureProvider, item.getIntent().getExtras());
+                items.add(item);
+            }
+
+            batteryDatabaseManager.insertAnomalies(anomalies);
+            for (int i = 0, size = items.size(); i < size; i++) {
+                completeWork(params, items.get(i));
+            }
+            item = dequeueWork(params);
+        }
+    }
+
+    /**
+     * Parses the anomaly in {@param bundle} and, unless it should be ignored, adds it to
+     * {@param anomalies} to be inserted to database.
+     */
     @VisibleForTesting
     void saveAnomalyToDatabase(Context context, UserManager userManager,
-            BatteryDatabaseManager databaseManager, BatteryUtils batteryUtils,
-            BatteryTipPolicy policy, PowerWhitelistBackend powerWhitelistBackend,
-            ContentResolver contentResolver, PowerUsageFeatureProvider powerUsageFeatureProvider,
-            MetricsFeatureProvider metricsFeatureProvider, Bundle bundle) {
+            List<AnomalyRecord> anomalies, BatteryUtils batteryUtils, BatteryTipPolicy policy,
+            AnomalyJobCache cache, MetricsFeatureProvider metricsFeatureProvider, Bundle bundle) {
         // The Example of intentDimsValue is: 35:{1:{1:{1:10013|}|}|}
         final StatsDimensionsValue intentDimsValue =
                 bundle.getParcelable(StatsManager.EXTRA_STATS_DIMENSIONS_VALUE);
@@ -143,15 +168,11 @@ public class AnomalyDetectionJobService extends JobService {
 
         try {
             final int uid = extractUidFromStatsDimensionsValue(intentDimsValue);
-            final boolean autoFeatureOn = powerUsageFeatureProvider.isSmartBatterySupported()
-                    ? Settings.Global.getInt(contentResolver,
-                            Settings.Global.ADAPTIVE_BATTERY_MANAGEMENT_ENABLED, ON) == ON
-                    : Settings.Global.getInt(contentResolver,
-                            Settings.Global.APP_AUTO_RESTRICTION_ENABLED, ON) == ON;
-            final String packageName = batteryUtils.getPackageName(uid);
-            final long versionCode = batteryUtils.getAppLongVersionCode(packageName);
-
-            if (batteryUtils.shouldHideAnomaly(powerWhitelistBackend, uid, anomalyInfo)) {
+            final boolean autoFeatureOn = cache.isAutoRestrictionOn();
+            final String packageName = cache.getPackageName(uid);
+            final long versionCode = cache.getAppLongVersionCode(packageName);
+
+            if (cache.shouldHideAnomaly(uid, anomalyInfo)) {
                 metricsFeatureProvider.action(context,
                         MetricsProto.MetricsEvent.ACTION_ANOMALY_IGNORED,
                         packageName,
@@ -164,13 +185,13 @@ public class AnomalyDetectionJobService extends JobService {
                     // Auto restrict this app
                     batteryUtils.setForceAppStandby(uid, packageName,
                             AppOpsManager.MODE_IGNORED);
-                    databaseManager.insertAnomaly(uid, packageName, anomalyInfo.anomalyType,
+                    anomalies.add(new AnomalyRecord(uid, packageName, anomalyInfo.anomalyType,
                             AnomalyDatabaseHelper.State.AUTO_HANDLED,
-                            timeMs);
+                            timeMs));
                 } else {
-                    databaseManager.insertAnomaly(uid, packageName, anomalyInfo.anomalyType,
+                    anomalies.add(new AnomalyRecord(uid, packageName, anomalyInfo.anomalyType,
                             AnomalyDatabaseHelper.State.NEW,
-                            timeMs);
+                            timeMs));
                 }
                 metricsFeatureProvider.action(context,
                         MetricsProto.MetricsEvent.ACTION_ANOMALY_TRIGGERED,
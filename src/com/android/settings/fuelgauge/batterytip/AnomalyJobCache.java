@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batterytip;
+
+import android.content.ContentResolver;
+import android.provider.Settings;
+import android.util.ArrayMap;
+import android.util.LongSparseArray;
+import android.util.SparseArray;
+
+import com.android.settings.fuelgauge.BatteryUtils;
+import com.android.settings.fuelgauge.PowerUsageFeatureProvider;
+import com.android.settingslib.fuelgauge.PowerWhitelistBackend;
+
+import java.util.Map;
+
+/**
+ * Lookups made while {@link AnomalyDetectionJobService} drains its queue, cached for the length
+ * of one job.
+ *
+ * <p>A burst of anomalies usually involves a few apps, so package names, version codes and
+ * whether an app's anomalies are hidden (uninstalled, system uid, whitelisted, system app, ...)
+ * are resolved once per uid or package instead of once per anomaly. The auto restriction setting
+ * is read once, when the job starts.
+ */
+class AnomalyJobCache {
+
+    private static final int ON = 1;
+
+    private final BatteryUtils mBatteryUtils;
+    private final PowerWhitelistBackend mPowerWhitelistBackend;
+    private final boolean mAutoRestrictionOn;
+
+    private final SparseArray<String> mPackageNames = new SparseArray<>();
+    private final Map<String, Long> mVersionCodes = new ArrayMap<>();
+    /**
+     * Whether to hide anomalies, keyed by uid and anomaly type.
+     */
+    private final LongSparseArray<Boolean> mHiddenAnomalies = new LongSparseArray<>();
+
+    AnomalyJobCache(BatteryUtils batteryUtils, PowerWhitelistBackend powerWhitelistBackend,
+            ContentResolver contentResolver, PowerUsageFeatureProvider powerUsageFeatureProvider) {
+        mBatteryUtils = batteryUtils;
+        mPowerWhitelistBackend = powerWhitelistBackend;
+        mAutoRestrictionOn = powerUsageFeatureProvider.isSmartBatterySupported()
+                ? Settings.Global.getInt(contentResolver,
+                        Settings.Global.ADAPTIVE_BATTERY_MANAGEMENT_ENABLED, ON) == ON
+                : Settings.Global.getInt(contentResolver,
+                        Settings.Global.APP_AUTO_RESTRICTION_ENABLED, ON) == ON;
+    }
+
+    /**
+     * @return whether apps may be restricted automatically, as of the start of the job.
+     */
+    boolean isAutoRestrictionOn() {
+        return mAutoRestrictionOn;
+    }
+
+    /**
+     * @see BatteryUtils#getPackageName(int)
+     */
+    String getPackageName(int uid) {
+        final int index = mPackageNames.indexOfKey(uid);
+        if (index >= 0) {
+            return mPackageNames.valueAt(index);
+        }
+        final String packageName = mBatteryUtils.getPackageName(uid);
+        mPackageNames.put(uid, packageName);
+        return packageName;
+    }
+
+    /**
+     * @see BatteryUtils#getAppLongVersionCode(String)
+     */
+    long getAppLongVersionCode(String packageName) {
+        Long versionCode = mVersionCodes.get(packageName);
+        if (versionCode == null) {
+            versionCode = mBatteryUtils.getAppLongVersionCode(packageName);
+            mVersionCodes.put(packageName, versionCode);
+        }
+        return versionCode;
+    }
+
+    /**
+     * @see BatteryUtils#shouldHideAnomaly(PowerWhitelistBackend, int, AnomalyInfo)
+     */
+    boolean shouldHideAnomaly(int uid, AnomalyInfo anomalyInfo) {
+        final long key = ((long) uid << 32) | (anomalyInfo.anomalyType & 0xffffffffL);
+        Boolean hidden = mHiddenAnomalies.get(key);
+        if (hidden == null) {
+            hidden = mBatteryUtils.shouldHideAnomaly(mPowerWhitelistBackend, uid, anomalyInfo);
+            mHiddenAnomalies.put(key, hidden);
+        }
+        return hidden;
+    }
+}
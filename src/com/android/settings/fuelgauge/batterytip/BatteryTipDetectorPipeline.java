@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batterytip;
+
+import android.os.OperationCanceledException;
+import android.os.Parcel;
+import android.os.SystemClock;
+import androidx.annotation.VisibleForTesting;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import com.android.settings.fuelgauge.batterytip.detectors.BatteryTipDetector;
+import com.android.settings.fuelgauge.batterytip.tips.BatteryTip;
+import com.android.settings.utils.WorkerExecutors;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs independent {@link BatteryTipDetector BatteryTipDetectors} concurrently.
+ *
+ * <p>Detectors added with a cache key, such as the battery stats version they read, reuse their
+ * last result while the key is unchanged. Each detector which has to run gets
+ * {@link #DETECTOR_TIMEOUT_MS} to finish. A detector which misses it is replaced by a result
+ * another run cached for the same key in the meantime, if there is one, and otherwise waited
+ * for, since the tip list must stay complete and detectors without a key read live state. The
+ * latency of every detector in the last run is kept for {@link #getDetectorLatencies()}.
+ */
+class BatteryTipDetectorPipeline {
+
+    private static final String TAG = "BatteryTipPipeline";
+
+    private static final int MAX_WORKER_THREADS = 3;
+
+    @VisibleForTesting
+    static final long DETECTOR_TIMEOUT_MS = 1000;
+
+    private static final ExecutorService EXECUTOR =
+            WorkerExecutors.newBoundedExecutor(TAG, MAX_WORKER_THREADS);
+
+    /**
+     * Last result of each detector, by detector name.
+     */
+    private static final Map<String, CachedTip> sTipCache = new ArrayMap<>();
+
+    private final List<Stage> mStages = new ArrayList<>();
+    private final Map<String, Long> mLatencies = new ArrayMap<>();
+
+    /**
+     * Adds {@param detector}, which is run every time.
+     */
+    BatteryTipDetectorPipeline add(String name, BatteryTipDetector detector) {
+        return add(name, detector, null /* cacheKey */);
+    }
+
+    /**
+     * Adds {@param detector}, which is only run when {@param cacheKey} differs from the key of
+     * its last result. {@param cacheKey} must change whenever the inputs of the detector do.
+     */
+    BatteryTipDetectorPipeline add(String name, BatteryTipDetector detector, String cacheKey) {
+        mStages.add(new Stage(name, detector, cacheKey));
+        return this;
+    }
+
+    /**
+     * Runs every detector and returns their tips in the order they were added.
+     */
+    List<BatteryTip> detect() {
+        final List<Future<BatteryTip>> futures = new ArrayList<>(mStages.size());
+        final BatteryTip[] tips = new BatteryTip[mStages.size()];
+        for (int i = 0; i < mStages.size(); i++) {
+            final Stage stage = mStages.get(i);
+            final BatteryTip cachedTip = getCachedTip(stage.name, stage.cacheKey);
+            if (cachedTip != null) {
+                tips[i] = cachedTip;
+                futures.add(null);
+                recordLatency(stage.name, 0);
+            } else {
+                futures.add(EXECUTOR.submit(() -> runStage(stage)));
+            }
+        }
+
+        for (int i = 0; i < mStages.size(); i++) {
+            final Future<BatteryTip> future = futures.get(i);
+            if (future != null) {
+                tips[i] = getTip(mStages.get(i), future);
+            }
+        }
+
+        final List<BatteryTip> result = new ArrayList<>(tips.length);
+        Collections.addAll(result, tips);
+        return result;
+    }
+
+    /**
+     * @return how long, in milliseconds, each detector took in the last {@link #detect()}.
+     * Detectors served from the cache report 0.
+     */
+    Map<String, Long> getDetectorLatencies() {
+        synchronized (mLatencies) {
+            return Collections.unmodifiableMap(new ArrayMap<>(mLatencies));
+        }
+    }
+
+    @VisibleForTesting
+    static void clearCache() {
+        synchronized (sTipCache) {
+            sTipCache.clear();
+        }
+    }
+
+    private BatteryTip runStage(Stage stage) {
+        final long startTime = SystemClock.elapsedRealtime();
+        final BatteryTip tip = stage.detector.detect();
+        recordLatency(stage.name, SystemClock.elapsedRealtime() - startTime);
+        if (stage.cacheKey != null) {
+            synchronized (sTipCache) {
+                sTipCache.put(stage.name, new CachedTip(stage.cacheKey, copyTip(tip)));
+            }
+        }
+        return tip;
+    }
+
+    private BatteryTip getTip(Stage stage, Future<BatteryTip> future) {
+        try {
+            return future.get(DETECTOR_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            final BatteryTip cachedTip = getCachedTip(stage.name, stage.cacheKey);
+            if (cachedTip != null) {
+                Log.w(TAG, stage.name + " missed its deadline, using a cached result");
+                return cachedTip;
+            }
+            Log.w(TAG, stage.name + " missed its deadline, waiting for it");
+            return waitForTip(future);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OperationCanceledException();
+        } catch (ExecutionException e) {
+            throw asRuntimeException(e);
+        }
+    }
+
+    private BatteryTip waitForTip(Future<BatteryTip> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OperationCanceledException();
+        } catch (ExecutionException e) {
+            throw asRuntimeException(e);
+        }
+    }
+
+    /**
+     * @return a copy of the last result of detector {@param name} if it was computed for
+     * {@param cacheKey}, or {@code null} otherwise.
+     */
+    private static BatteryTip getCachedTip(String name, String cacheKey) {
+        if (cacheKey == null) {
+            return null;
+        }
+        final CachedTip cachedTip;
+        synchronized (sTipCache) {
+            cachedTip = sTipCache.get(name);
+        }
+        if (cachedTip == null || !cacheKey.equals(cachedTip.cacheKey)) {
+            return null;
+        }
+        return copyTip(cachedTip.tip);
+    }
+
+    /**
+     * Copies {@param tip} through a {@link Parcel}, since tips are updated in place once shown.
+     */
+    private static BatteryTip copyTip(BatteryTip tip) {
+        final Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeParcelable(tip, 0 /* flags */);
+            parcel.setDataPosition(0);
+            return parcel.readParcelable(BatteryTip.class.getClassLoader());
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private void recordLatency(String name, long latency) {
+        synchronized (mLatencies) {
+            mLatencies.put(name, latency);
+        }
+    }
+
+    private static RuntimeException asRuntimeException(ExecutionException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        return new IllegalStateException(cause);
+    }
+
+    private static class Stage {
+        final String name;
+        final BatteryTipDetector detector;
+        final String cacheKey;
+
+        Stage(String name, BatteryTipDetector detector, String cacheKey) {
+            this.name = name;
+            this.detector = detector;
+            this.cacheKey = cacheKey;
+        }
+    }
+
+    private static class CachedTip {
+        final String cacheKey;
+        final BatteryTip tip;
+
+        CachedTip(String cacheKey, BatteryTip tip) {
+            this.cacheKey = cacheKey;
+            this.tip = tip;
+        }
+    }
+}
@@ -17,7 +17,9 @@
 package com.android.settings.fuelgauge.batterytip;
 
 import android.content.Context;
+import android.os.BatteryStats;
 import androidx.annotation.VisibleForTesting;
+import android.util.Log;
 
 import com.android.internal.os.BatteryStatsHelper;
 import com.android.settings.fuelgauge.BatteryInfo;
@@ -30,6 +32,7 @@ import com.android.settings.fuelgauge.batterytip.detectors.SmartBatteryDetector;
 import com.android.settings.fuelgauge.batterytip.detectors.RestrictAppDetector;
 import com.android.settings.fuelgauge.batterytip.detectors.SummaryDetector;
 import com.android.settings.fuelgauge.batterytip.tips.BatteryTip;
+import com.android.settings.fuelgauge.batterytip.tips.HighUsageTip;
 import com.android.settings.fuelgauge.batterytip.tips.LowBatteryTip;
 import com.android.settings.fuelgauge.batterytip.tips.SummaryTip;
 import com.android.settingslib.utils.AsyncLoader;
@@ -37,6 +40,7 @@ import com.android.settingslib.utils.AsyncLoader;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Loader to compute and return a battery tip list. It will always return a full length list even
@@ -44,10 +48,12 @@ import java.util.List;
  */
 public class BatteryTipLoader extends AsyncLoader<List<BatteryTip>> {
     private static final String TAG = "BatteryTipLoader";
+    private static final boolean DEBUG = false;
 
     private static final boolean USE_FAKE_DATA = false;
 
     private BatteryStatsHelper mBatteryStatsHelper;
+    private BatteryTipDetectorPipeline mPipeline;
     @VisibleForTesting
     BatteryUtils mBatteryUtils;
 
@@ -62,18 +68,26 @@ public class BatteryTipLoader extends AsyncLoader<List<BatteryTip>> {
         if (USE_FAKE_DATA) {
             return getFakeData();
         }
-        final List<BatteryTip> tips = new ArrayList<>();
         final BatteryTipPolicy policy = new BatteryTipPolicy(getContext());
         final BatteryInfo batteryInfo = mBatteryUtils.getBatteryInfo(mBatteryStatsHelper, TAG);
         final Context context = getContext();
 
-        tips.add(new LowBatteryDetector(context, policy, batteryInfo).detect());
-        tips.add(new HighUsageDetector(context, policy, mBatteryStatsHelper,
-                batteryInfo.discharging).detect());
-        tips.add(new SmartBatteryDetector(policy, context.getContentResolver()).detect());
-        tips.add(new EarlyWarningDetector(policy, context).detect());
-        tips.add(new SummaryDetector(policy, batteryInfo.averageTimeToDischarge).detect());
-        tips.add(new RestrictAppDetector(context, policy).detect());
+        mPipeline = new BatteryTipDetectorPipeline()
+                .add("LowBatteryDetector", new LowBatteryDetector(context, policy, batteryInfo))
+                .add("HighUsageDetector", new HighUsageDetector(context, policy,
+                                mBatteryStatsHelper, batteryInfo.discharging),
+                        getStatsVersion(policy, batteryInfo.discharging))
+                .add("SmartBatteryDetector",
+                        new SmartBatteryDetector(policy, context.getContentResolver()))
+                .add("EarlyWarningDetector", new EarlyWarningDetector(policy, context))
+                .add("SummaryDetector",
+                        new SummaryDetector(policy, batteryInfo.averageTimeToDischarge))
+                .add("RestrictAppDetector", new RestrictAppDetector(context, policy));
+        final List<BatteryTip> tips = mPipeline.detect();
+        updateLastFullChargeTime(tips);
+        if (DEBUG) {
+            logDetectorLatencies();
+        }
 
         Collections.sort(tips);
         return tips;
@@ -83,6 +97,58 @@ public class BatteryTipLoader extends AsyncLoader<List<BatteryTip>> {
     protected void onDiscardResult(List<BatteryTip> result) {
     }
 
+    /**
+     * @return how long, in milliseconds, each detector took in the last load.
+     */
+    public Map<String, Long> getDetectorLatencies() {
+        return mPipeline != null ? mPipeline.getDetectorLatencies() : Collections.emptyMap();
+    }
+
+    /**
+     * @return a key which changes whenever the battery stats, or anything else the
+     * {@link HighUsageDetector} reads, change. The stats are identified by when they were last
+     * reset and how much history they hold, which only stay the same while no event is logged.
+     * The time since full charge is left out, see {@link #updateLastFullChargeTime(List)}.
+     */
+    @VisibleForTesting
+    String getStatsVersion(BatteryTipPolicy policy, boolean discharging) {
+        final BatteryStats stats = mBatteryStatsHelper.getStats();
+        if (stats == null) {
+            return null;
+        }
+        return stats.getStartClockTime() + ":" + stats.getHistoryUsedSize() + ":" + discharging
+                + ":" + policy.highUsageEnabled + ":" + policy.testHighUsageTip + ":"
+                + policy.highUsagePeriodMs + ":" + policy.highUsageBatteryDraining + ":"
+                + policy.highUsageAppCount;
+    }
+
+    /**
+     * Replaces the {@link HighUsageTip} in {@param tips} with one showing the current time since
+     * full charge, since the tip may be served from the cache while that time moves on.
+     */
+    @VisibleForTesting
+    void updateLastFullChargeTime(List<BatteryTip> tips) {
+        if (mBatteryStatsHelper.getStats() == null) {
+            return;
+        }
+        final long lastFullChargeTimeMs = mBatteryUtils.calculateLastFullChargeTime(
+                mBatteryStatsHelper, System.currentTimeMillis());
+        for (int i = 0, size = tips.size(); i < size; i++) {
+            final BatteryTip tip = tips.get(i);
+            if (tip instanceof HighUsageTip) {
+                tips.set(i, new HighUsageTip(lastFullChargeTimeMs,
+                        ((HighUsageTip) tip).getHighUsageAppList()));
+            }
+        }
+    }
+
+    private void logDetectorLatencies() {
+        final Map<String, Long> latencies = mPipeline.getDetectorLatencies();
+        for (Map.Entry<String, Long> entry : latencies.entrySet()) {
+            Log.d(TAG, entry.getKey() + " took " + entry.getValue() + "ms");
+        }
+    }
+
     private List<BatteryTip> getFakeData() {
         final List<BatteryTip> tips = new ArrayList<>();
         tips.add(new SummaryTip(BatteryTip.StateType.NEW,
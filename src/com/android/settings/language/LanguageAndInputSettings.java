@@ -188,5 +188,12 @@ public class LanguageAndInputSettings extends DashboardFragment {
                     keys.add(KEY_PHYSICAL_KEYBOARD);
                     return keys;
                 }
+
+                @Override
+                public boolean isNonIndexableKeysThreadSafe() {
+                    // Controllers are built without a lifecycle, so none of them registers
+                    // listeners or Handlers; availability only reads resources and input services.
+                    return true;
+                }
             };
 }
@@ -19,6 +19,7 @@ package com.android.settings.location;
 import android.app.ActivityManager;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageItemInfo;
 import android.content.pm.PackageManager;
@@ -39,11 +40,13 @@ import android.os.UserHandle;
 import android.os.UserManager;
 import androidx.preference.Preference;
 import android.text.TextUtils;
+import android.util.ArrayMap;
 import android.util.AttributeSet;
 import android.util.IconDrawableFactory;
 import android.util.Log;
 import android.util.Xml;
 
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.settings.widget.AppPreference;
 import com.android.settings.widget.RestrictedAppPreference;
 
@@ -52,9 +55,11 @@ import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -68,7 +73,7 @@ import java.util.Set;
  * android.content.pm.RegisteredServicesCache#parseServiceAttributes(android.content.res.Resources,
  * String, android.util.AttributeSet)} into an interface, which didn't seem worth it.
  */
-class SettingsInjector {
+public class SettingsInjector {
     static final String TAG = "SettingsInjector";
 
     /**
@@ -77,6 +82,31 @@ class SettingsInjector {
      */
     private static final long INJECTED_STATUS_UPDATE_TIMEOUT_MILLIS = 1000;
 
+    /**
+     * How many settings have their status read at the same time. Each read starts a service, so
+     * this is kept small to limit memory pressure.
+     */
+    private static final int MAX_CONCURRENT_LOADS = 4;
+
+    /**
+     * Upper bounds, in milliseconds, of the buckets of the status latency histogram. A last
+     * bucket counts slower replies and timeouts.
+     */
+    private static final long[] LATENCY_BUCKETS_MILLIS = {100, 250, 500, 1000};
+
+    /**
+     * Shared preferences holding the last status each setting reported, so it can be shown as
+     * soon as the page opens.
+     */
+    private static final String STATUS_CACHE_PREFS = "location_injected_settings";
+
+    /**
+     * Latency histogram of each setting service, kept for the life of the process. Guarded by
+     * itself, since dumpsys reads it off the main thread.
+     */
+    @VisibleForTesting
+    static final Map<String, int[]> sLatencyHistograms = new ArrayMap<>();
+
     /**
      * {@link Message#what} value for starting to load status values
      * in case we aren't already in the process of loading them.
@@ -102,10 +132,13 @@ class SettingsInjector {
 
     private final Handler mHandler;
 
+    private final SharedPreferences mStatusCache;
+
     public SettingsInjector(Context context) {
         mContext = context;
         mSettings = new HashSet<Setting>();
         mHandler = new StatusLoadingHandler();
+        mStatusCache = context.getSharedPreferences(STATUS_CACHE_PREFS, Context.MODE_PRIVATE);
     }
 
     /**
@@ -255,8 +288,7 @@ class SettingsInjector {
             if (profileId == UserHandle.USER_CURRENT || profileId == userHandle.getIdentifier()) {
                 Iterable<InjectedSetting> settings = getSettings(userHandle);
                 for (InjectedSetting setting : settings) {
-                    Preference pref = addServiceSetting(prefContext, prefs, setting);
-                    mSettings.add(new Setting(setting, pref));
+                    addServiceSetting(prefContext, prefs, setting);
                 }
             }
         }
@@ -299,9 +331,10 @@ class SettingsInjector {
     }
 
     /**
-     * Adds an injected setting to the root.
+     * Adds an injected setting to the root, and to the settings whose status is loaded.
      */
-    private Preference addServiceSetting(Context prefContext, List<Preference> prefs,
+    @VisibleForTesting
+    Preference addServiceSetting(Context prefContext, List<Preference> prefs,
             InjectedSetting info) {
         final PackageManager pm = mContext.getPackageManager();
         Drawable appIcon = null;
@@ -321,12 +354,63 @@ class SettingsInjector {
                 : new RestrictedAppPreference(prefContext, info.userRestriction);
         pref.setTitle(info.title);
         pref.setSummary(null);
+        // Show the last known status until the service reports the current one.
+        pref.setEnabled(mStatusCache.getBoolean(getStatusCacheKey(info), true));
         pref.setIcon(appIcon);
         pref.setOnPreferenceClickListener(new ServiceSettingClickedListener(info));
         prefs.add(pref);
+        mSettings.add(new Setting(info, pref));
         return pref;
     }
 
+    /**
+     * @return the latency histogram of each setting service, with one count per bucket of
+     * {@link #getLatencyBucketsMillis()} plus one for slower replies and timeouts.
+     */
+    public static Map<String, int[]> getLatencyHistograms() {
+        final Map<String, int[]> histograms = new ArrayMap<>();
+        synchronized (sLatencyHistograms) {
+            for (Map.Entry<String, int[]> entry : sLatencyHistograms.entrySet()) {
+                histograms.put(entry.getKey(), entry.getValue().clone());
+            }
+        }
+        return histograms;
+    }
+
+    /**
+     * @return the upper bounds, in milliseconds, of the buckets of
+     * {@link #getLatencyHistograms()}.
+     */
+    public static long[] getLatencyBucketsMillis() {
+        return LATENCY_BUCKETS_MILLIS.clone();
+    }
+
+    @VisibleForTesting
+    static void recordLatency(InjectedSetting setting, long latencyMillis) {
+        final String key = setting.packageName + "/" + setting.className;
+        int bucket = 0;
+        while (bucket < LATENCY_BUCKETS_MILLIS.length
+                && latencyMillis >= LATENCY_BUCKETS_MILLIS[bucket]) {
+            bucket++;
+        }
+        synchronized (sLatencyHistograms) {
+            int[] histogram = sLatencyHistograms.get(key);
+            if (histogram == null) {
+                histogram = new int[LATENCY_BUCKETS_MILLIS.length + 1];
+                sLatencyHistograms.put(key, histogram);
+            }
+            histogram[bucket]++;
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, key + " latency histogram " + Arrays.toString(histogram));
+            }
+        }
+    }
+
+    private static String getStatusCacheKey(InjectedSetting setting) {
+        return setting.packageName + "/" + setting.className + "/"
+                + setting.mUserHandle.getIdentifier();
+    }
+
     private class ServiceSettingClickedListener
             implements Preference.OnPreferenceClickListener {
         private InjectedSetting mInfo;
@@ -359,9 +443,9 @@ class SettingsInjector {
     }
 
     /**
-     * Loads the setting status values one at a time. Each load starts a subclass of {@link
-     * SettingInjectorService}, so to reduce memory pressure we don't want to load too many at
-     * once.
+     * Loads up to {@link #MAX_CONCURRENT_LOADS} setting status values at a time. Each load starts
+     * a subclass of {@link SettingInjectorService}, so to reduce memory pressure we don't want to
+     * load too many at once.
      */
     private final class StatusLoadingHandler extends Handler {
 
@@ -371,15 +455,15 @@ class SettingsInjector {
         private Set<Setting> mSettingsToLoad = new HashSet<Setting>();
 
         /**
-         * Settings that are being loaded now and haven't timed out. In practice this should have
-         * zero or one elements.
+         * Settings that are being loaded now and haven't timed out. This has at most
+         * {@link #MAX_CONCURRENT_LOADS} elements.
          */
         private Set<Setting> mSettingsBeingLoaded = new HashSet<Setting>();
 
         /**
-         * Settings that are being loaded but have timed out. If only one setting has timed out, we
-         * will go ahead and start loading the next setting so that one slow load won't delay the
-         * load of the other settings.
+         * Settings that are being loaded but have timed out. As long as no more than
+         * {@link #MAX_CONCURRENT_LOADS} settings have timed out, we go ahead and start loading the
+         * next settings so that slow loads won't delay the load of the other settings.
          */
         private Set<Setting> mTimedOutSettings = new HashSet<Setting>();
 
@@ -402,14 +486,18 @@ class SettingsInjector {
                 case WHAT_RECEIVED_STATUS:
                     final Setting receivedSetting = (Setting) msg.obj;
                     receivedSetting.maybeLogElapsedTime();
+                    // Timeouts were already counted in the histogram when they happened.
+                    if (!mTimedOutSettings.remove(receivedSetting)) {
+                        recordLatency(receivedSetting.setting, receivedSetting.getElapsedTime());
+                    }
                     mSettingsBeingLoaded.remove(receivedSetting);
-                    mTimedOutSettings.remove(receivedSetting);
                     removeMessages(WHAT_TIMEOUT, receivedSetting);
                     break;
                 case WHAT_TIMEOUT:
                     final Setting timedOutSetting = (Setting) msg.obj;
                     mSettingsBeingLoaded.remove(timedOutSetting);
                     mTimedOutSettings.add(timedOutSetting);
+                    recordLatency(timedOutSetting.setting, timedOutSetting.getElapsedTime());
                     if (Log.isLoggable(TAG, Log.WARN)) {
                         Log.w(TAG, "Timed out after " + timedOutSetting.getElapsedTime()
                                 + " millis trying to get status for: " + timedOutSetting);
@@ -419,19 +507,6 @@ class SettingsInjector {
                     Log.wtf(TAG, "Unexpected what: " + msg);
             }
 
-            // Decide whether to load additional settings based on the new state. Start by seeing
-            // if we have headroom to load another setting.
-            if (mSettingsBeingLoaded.size() > 0 || mTimedOutSettings.size() > 1) {
-                // Don't load any more settings until one of the pending settings has completed.
-                // To reduce memory pressure, we want to be loading at most one setting (plus at
-                // most one timed-out setting) at a time. This means we'll be responsible for
-                // bringing in at most two services.
-                if (Log.isLoggable(TAG, Log.VERBOSE)) {
-                    Log.v(TAG, "too many services already live for " + msg + ", " + this);
-                }
-                return;
-            }
-
             if (mReloadRequested && mSettingsToLoad.isEmpty() && mSettingsBeingLoaded.isEmpty()
                     && mTimedOutSettings.isEmpty()) {
                 if (Log.isLoggable(TAG, Log.VERBOSE)) {
@@ -442,29 +517,31 @@ class SettingsInjector {
                 mReloadRequested = false;
             }
 
-            // Remove the next setting to load from the queue, if any
+            // Load additional settings as long as there is headroom. To reduce memory pressure,
+            // we want to be loading at most MAX_CONCURRENT_LOADS settings (plus at most as many
+            // timed-out settings) at a time.
             Iterator<Setting> iter = mSettingsToLoad.iterator();
-            if (!iter.hasNext()) {
-                if (Log.isLoggable(TAG, Log.VERBOSE)) {
-                    Log.v(TAG, "nothing left to do for " + msg + ", " + this);
+            while (iter.hasNext() && mSettingsBeingLoaded.size() < MAX_CONCURRENT_LOADS
+                    && mTimedOutSettings.size() <= MAX_CONCURRENT_LOADS) {
+                Setting setting = iter.next();
+                iter.remove();
+
+                // Request the status value
+                setting.startService();
+                mSettingsBeingLoaded.add(setting);
+
+                // Ensure that if receiving the status value takes too long, we start loading the
+                // next value anyway
+                Message timeoutMsg = obtainMessage(WHAT_TIMEOUT, setting);
+                sendMessageDelayed(timeoutMsg, INJECTED_STATUS_UPDATE_TIMEOUT_MILLIS);
+
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "handleMessage " + msg + ", " + this
+                            + ", started loading " + setting);
                 }
-                return;
             }
-            Setting setting = iter.next();
-            iter.remove();
-
-            // Request the status value
-            setting.startService();
-            mSettingsBeingLoaded.add(setting);
-
-            // Ensure that if receiving the status value takes too long, we start loading the
-            // next value anyway
-            Message timeoutMsg = obtainMessage(WHAT_TIMEOUT, setting);
-            sendMessageDelayed(timeoutMsg, INJECTED_STATUS_UPDATE_TIMEOUT_MILLIS);
-
-            if (Log.isLoggable(TAG, Log.DEBUG)) {
-                Log.d(TAG, "handleMessage end " + msg + ", " + this
-                        + ", started loading " + setting);
+            if (Log.isLoggable(TAG, Log.VERBOSE)) {
+                Log.v(TAG, "handleMessage end " + msg + ", " + this);
             }
         }
 
@@ -539,6 +616,7 @@ class SettingsInjector {
                     }
                     preference.setSummary(null);
                     preference.setEnabled(enabled);
+                    mStatusCache.edit().putBoolean(getStatusCacheKey(setting), enabled).apply();
                     mHandler.sendMessage(
                             mHandler.obtainMessage(WHAT_RECEIVED_STATUS, Setting.this));
                 }
@@ -551,10 +629,8 @@ class SettingsInjector {
             if (Log.isLoggable(TAG, Log.DEBUG)) {
                 Log.d(TAG, setting + ": sending update intent: " + intent
                         + ", handler: " + handler);
-                startMillis = SystemClock.elapsedRealtime();
-            } else {
-                startMillis = 0;
             }
+            startMillis = SystemClock.elapsedRealtime();
 
             // Start the service, making sure that this is attributed to the user associated with
             // the setting rather than the system user.
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.network;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.Telephony;
+import android.telephony.SubscriptionManager;
+import android.telephony.TelephonyManager;
+import android.telephony.data.ApnSetting;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.android.internal.telephony.dataconnection.ApnSettingUtils;
+import com.android.internal.telephony.uicc.IccRecords;
+import com.android.internal.telephony.uicc.UiccController;
+import com.android.settingslib.utils.AsyncLoader;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads the APNs shown by {@link ApnSettings} for one subscription, and which of them is
+ * preferred, in the background.
+ */
+public class ApnListLoader extends AsyncLoader<ApnListLoader.ApnList> {
+
+    private static final String TAG = ApnSettings.TAG;
+
+    private static final String[] PROJECTION = new String[] {
+            "_id", "name", "apn", "type", "mvno_type", "mvno_match_data"};
+
+    private static final int ID_INDEX = 0;
+    private static final int NAME_INDEX = 1;
+    private static final int APN_INDEX = 2;
+    private static final int TYPES_INDEX = 3;
+    private static final int MVNO_TYPE_INDEX = 4;
+    private static final int MVNO_MATCH_DATA_INDEX = 5;
+
+    private final int mSubId;
+    private final boolean mHasSubscription;
+    private final boolean mHideImsApn;
+    private final Uri mPreferredApnUri;
+    private final UiccController mUiccController;
+
+    /**
+     * @param subId the subscription to load the APNs of, which may be invalid.
+     * @param hasSubscription whether the subscription is active.
+     * @param preferredApnUri the uri of the preferred APN of the subscription.
+     */
+    public ApnListLoader(Context context, int subId, boolean hasSubscription, boolean hideImsApn,
+            Uri preferredApnUri, UiccController uiccController) {
+        super(context);
+        mSubId = subId;
+        mHasSubscription = hasSubscription;
+        mHideImsApn = hideImsApn;
+        mPreferredApnUri = preferredApnUri;
+        mUiccController = uiccController;
+    }
+
+    @Override
+    protected void onDiscardResult(ApnList result) {
+    }
+
+    @Override
+    public ApnList loadInBackground() {
+        final Context context = getContext();
+        final TelephonyManager tm =
+                (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
+        final String mccmnc = mHasSubscription ? tm.getSimOperator(mSubId) : "";
+        Log.d(TAG, "mccmnc = " + mccmnc);
+        StringBuilder where = new StringBuilder("numeric=\"" + mccmnc +
+                "\" AND NOT (type='ia' AND (apn=\"\" OR apn IS NULL)) AND user_visible!=0");
+
+        if (mHideImsApn) {
+            where.append(" AND NOT (type='ims')");
+        }
+
+        final Cursor cursor = context.getContentResolver().query(Telephony.Carriers.CONTENT_URI,
+                PROJECTION, where.toString(), null, Telephony.Carriers.DEFAULT_SORT_ORDER);
+        if (cursor == null) {
+            return null;
+        }
+
+        IccRecords r = null;
+        if (mUiccController != null && mHasSubscription) {
+            r = mUiccController.getIccRecords(
+                    SubscriptionManager.getPhoneId(mSubId), UiccController.APP_FAM_3GPP);
+        }
+
+        final ApnList apnList = new ApnList(getSelectedApnKey());
+        List<Apn> mnoApnList = new ArrayList<>();
+        List<Apn> mvnoApnList = new ArrayList<>();
+        List<Apn> mnoMmsApnList = new ArrayList<>();
+        List<Apn> mvnoMmsApnList = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) {
+                final String type = cursor.getString(TYPES_INDEX);
+                final boolean selectable = ((type == null) || !type.equals("mms"));
+                final Apn apn = new Apn(cursor.getString(ID_INDEX),
+                        cursor.getString(NAME_INDEX), cursor.getString(APN_INDEX), selectable);
+                final String mvnoType = cursor.getString(MVNO_TYPE_INDEX);
+                final String mvnoMatchData = cursor.getString(MVNO_MATCH_DATA_INDEX);
+                if (selectable) {
+                    addApnToList(apnList, apn, mnoApnList, mvnoApnList, r, mvnoType,
+                            mvnoMatchData);
+                } else {
+                    addApnToList(apnList, apn, mnoMmsApnList, mvnoMmsApnList, r, mvnoType,
+                            mvnoMatchData);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (!mvnoApnList.isEmpty()) {
+            mnoApnList = mvnoApnList;
+            mnoMmsApnList = mvnoMmsApnList;
+        }
+        apnList.apns.addAll(mnoApnList);
+        apnList.apns.addAll(mnoMmsApnList);
+        return apnList;
+    }
+
+    private static void addApnToList(ApnList apnList, Apn apn, List<Apn> mnoList,
+            List<Apn> mvnoList, IccRecords r, String mvnoType, String mvnoMatchData) {
+        if (r != null && !TextUtils.isEmpty(mvnoType) && !TextUtils.isEmpty(mvnoMatchData)) {
+            if (ApnSettingUtils.mvnoMatches(r, ApnSetting.getMvnoTypeIntFromString(mvnoType),
+                    mvnoMatchData)) {
+                mvnoList.add(apn);
+                // Since adding to mvno list, save mvno info
+                apnList.mvnoType = mvnoType;
+                apnList.mvnoMatchData = mvnoMatchData;
+            }
+        } else {
+            mnoList.add(apn);
+        }
+    }
+
+    private String getSelectedApnKey() {
+        final Cursor cursor = getContext().getContentResolver().query(mPreferredApnUri,
+                new String[] {"_id"}, null, null, Telephony.Carriers.DEFAULT_SORT_ORDER);
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getString(ID_INDEX) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * The APNs to show, in order, with the preferred one and the mvno info of the subscription.
+     */
+    public static class ApnList {
+        public final List<Apn> apns = new ArrayList<>();
+        public final String selectedKey;
+        public String mvnoType;
+        public String mvnoMatchData;
+
+        ApnList(String selectedKey) {
+            this.selectedKey = selectedKey;
+        }
+    }
+
+    /**
+     * One row of the APN list.
+     */
+    public static class Apn {
+        public final String key;
+        public final String name;
+        public final String apn;
+        public final boolean selectable;
+
+        Apn(String key, String name, String apn, boolean selectable) {
+            this.key = key;
+            this.name = name;
+            this.apn = apn;
+            this.selectable = selectable;
+        }
+    }
+}
@@ -85,7 +85,15 @@ public class ApnPreference extends Preference implements CompoundButton.OnChecke
     }
 
     public void setChecked() {
+        if (getKey().equals(mSelectedKey)) {
+            return;
+        }
+        if (mCurrentChecked != null) {
+            // Unchecking the old button also clears mCurrentChecked and mSelectedKey.
+            mCurrentChecked.setChecked(false);
+        }
         mSelectedKey = getKey();
+        notifyChanged();
     }
 
     public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
@@ -121,7 +129,10 @@ public class ApnPreference extends Preference implements CompoundButton.OnChecke
     }
 
     public void setSelectable(boolean selectable) {
-        mSelectable = selectable;
+        if (mSelectable != selectable) {
+            mSelectable = selectable;
+            notifyChanged();
+        }
     }
 
     public boolean getSelectable() {
@@ -18,6 +18,7 @@ package com.android.settings.network;
 
 import android.app.Activity;
 import android.app.Dialog;
+import android.app.LoaderManager;
 import android.app.ProgressDialog;
 import android.content.BroadcastReceiver;
 import android.content.ContentResolver;
@@ -25,7 +26,7 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.database.Cursor;
+import android.content.Loader;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
@@ -42,8 +43,8 @@ import android.telephony.CarrierConfigManager;
 import android.telephony.SubscriptionInfo;
 import android.telephony.SubscriptionManager;
 import android.telephony.TelephonyManager;
-import android.telephony.data.ApnSetting;
 import android.text.TextUtils;
+import android.util.ArrayMap;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -51,17 +52,16 @@ import android.view.MenuItem;
 import android.view.MotionEvent;
 import android.widget.Toast;
 
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.logging.nano.MetricsProto.MetricsEvent;
 import com.android.internal.telephony.PhoneConstants;
 import com.android.internal.telephony.TelephonyIntents;
-import com.android.internal.telephony.dataconnection.ApnSettingUtils;
-import com.android.internal.telephony.uicc.IccRecords;
 import com.android.internal.telephony.uicc.UiccController;
 import com.android.settings.R;
 import com.android.settings.RestrictedSettingsFragment;
 import com.android.settingslib.RestrictedLockUtils.EnforcedAdmin;
 
-import java.util.ArrayList;
+import java.util.Map;
 
 public class ApnSettings extends RestrictedSettingsFragment {
     static final String TAG = "ApnSettings";
@@ -77,12 +77,13 @@ public class ApnSettings extends RestrictedSettingsFragment {
     public static final String MVNO_TYPE = "mvno_type";
     public static final String MVNO_MATCH_DATA = "mvno_match_data";
 
-    private static final int ID_INDEX = 0;
-    private static final int NAME_INDEX = 1;
-    private static final int APN_INDEX = 2;
-    private static final int TYPES_INDEX = 3;
-    private static final int MVNO_TYPE_INDEX = 4;
-    private static final int MVNO_MATCH_DATA_INDEX = 5;
+    private static final int LOADER_APN_LIST = 1;
+
+    /**
+     * Data connection broadcasts come in bursts, one per APN type, so reloads they trigger are
+     * held back for this long.
+     */
+    private static final long RELOAD_DEBOUNCE_MS = 500;
 
     private static final int MENU_NEW = Menu.FIRST;
     private static final int MENU_RESTORE = Menu.FIRST + 1;
@@ -116,6 +117,33 @@ public class ApnSettings extends RestrictedSettingsFragment {
     private boolean mHideImsApn;
     private boolean mAllowAddingApns;
 
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mReloadRunnable = this::fillList;
+
+    private final LoaderManager.LoaderCallbacks<ApnListLoader.ApnList> mApnListCallbacks =
+            new LoaderManager.LoaderCallbacks<ApnListLoader.ApnList>() {
+                @Override
+                public Loader<ApnListLoader.ApnList> onCreateLoader(int id, Bundle args) {
+                    final int subId = mSubscriptionInfo != null
+                            ? mSubscriptionInfo.getSubscriptionId()
+                            : SubscriptionManager.INVALID_SUBSCRIPTION_ID;
+                    return new ApnListLoader(getActivity(), subId, mSubscriptionInfo != null,
+                            mHideImsApn, getUriForCurrSubId(PREFERAPN_URI), mUiccController);
+                }
+
+                @Override
+                public void onLoadFinished(Loader<ApnListLoader.ApnList> loader,
+                        ApnListLoader.ApnList apnList) {
+                    if (apnList != null && !mRestoreDefaultApnMode) {
+                        updateApnPreferences(apnList);
+                    }
+                }
+
+                @Override
+                public void onLoaderReset(Loader<ApnListLoader.ApnList> loader) {
+                }
+            };
+
     public ApnSettings() {
         super(UserManager.DISALLOW_CONFIG_MOBILE_NETWORKS);
     }
@@ -129,7 +157,7 @@ public class ApnSettings extends RestrictedSettingsFragment {
                 switch (state) {
                 case CONNECTED:
                     if (!mRestoreDefaultApnMode) {
-                        fillList();
+                        scheduleFillList();
                     } else {
                         showDialog(DIALOG_RESTORE_DEFAULTAPN);
                     }
@@ -145,7 +173,7 @@ public class ApnSettings extends RestrictedSettingsFragment {
                         mSubId = extraSubId;
                         mSubscriptionInfo = getSubscriptionInfo(mSubId);
                     }
-                    fillList();
+                    scheduleFillList();
                 }
             }
         }
@@ -237,6 +265,7 @@ public class ApnSettings extends RestrictedSettingsFragment {
         }
 
         getActivity().unregisterReceiver(mReceiver);
+        mHandler.removeCallbacks(mReloadRunnable);
     }
 
     @Override
@@ -263,98 +292,71 @@ public class ApnSettings extends RestrictedSettingsFragment {
         return SubscriptionManager.from(getActivity()).getActiveSubscriptionInfo(subId);
     }
 
+    /**
+     * Reloads the APN list in the background. The preferences are updated when it is loaded.
+     */
     private void fillList() {
-        final TelephonyManager tm = (TelephonyManager) getSystemService(Context.TELEPHONY_SERVICE);
+        mHandler.removeCallbacks(mReloadRunnable);
+        getLoaderManager().restartLoader(LOADER_APN_LIST, null /* args */, mApnListCallbacks);
+    }
+
+    /**
+     * Reloads the APN list after {@link #RELOAD_DEBOUNCE_MS}, so a burst of broadcasts causes one
+     * reload.
+     */
+    private void scheduleFillList() {
+        mHandler.removeCallbacks(mReloadRunnable);
+        mHandler.postDelayed(mReloadRunnable, RELOAD_DEBOUNCE_MS);
+    }
+
+    /**
+     * Updates the APN preferences to {@param apnList}, reusing the preference of each APN which
+     * is still listed.
+     */
+    @VisibleForTesting
+    void updateApnPreferences(ApnListLoader.ApnList apnList) {
+        final PreferenceGroup apnPrefList = (PreferenceGroup) findPreference("apn_list");
+        if (apnPrefList == null) {
+            return;
+        }
         final int subId = mSubscriptionInfo != null ? mSubscriptionInfo.getSubscriptionId()
                 : SubscriptionManager.INVALID_SUBSCRIPTION_ID;
-        final String mccmnc = mSubscriptionInfo == null ? "" : tm.getSimOperator(subId);
-        Log.d(TAG, "mccmnc = " + mccmnc);
-        StringBuilder where = new StringBuilder("numeric=\"" + mccmnc +
-                "\" AND NOT (type='ia' AND (apn=\"\" OR apn IS NULL)) AND user_visible!=0");
 
-        if (mHideImsApn) {
-            where.append(" AND NOT (type='ims')");
+        final Map<String, ApnPreference> oldPrefs = new ArrayMap<>();
+        for (int i = 0; i < apnPrefList.getPreferenceCount(); i++) {
+            final Preference preference = apnPrefList.getPreference(i);
+            if (preference instanceof ApnPreference) {
+                oldPrefs.put(preference.getKey(), (ApnPreference) preference);
+            }
         }
 
-        Cursor cursor = getContentResolver().query(Telephony.Carriers.CONTENT_URI, new String[] {
-                "_id", "name", "apn", "type", "mvno_type", "mvno_match_data"}, where.toString(),
-                null, Telephony.Carriers.DEFAULT_SORT_ORDER);
-
-        if (cursor != null) {
-            IccRecords r = null;
-            if (mUiccController != null && mSubscriptionInfo != null) {
-                r = mUiccController.getIccRecords(
-                        SubscriptionManager.getPhoneId(subId), UiccController.APP_FAM_3GPP);
-            }
-            PreferenceGroup apnList = (PreferenceGroup) findPreference("apn_list");
-            apnList.removeAll();
-
-            ArrayList<ApnPreference> mnoApnList = new ArrayList<ApnPreference>();
-            ArrayList<ApnPreference> mvnoApnList = new ArrayList<ApnPreference>();
-            ArrayList<ApnPreference> mnoMmsApnList = new ArrayList<ApnPreference>();
-            ArrayList<ApnPreference> mvnoMmsApnList = new ArrayList<ApnPreference>();
-
-            mSelectedKey = getSelectedApnKey();
-            cursor.moveToFirst();
-            while (!cursor.isAfterLast()) {
-                String name = cursor.getString(NAME_INDEX);
-                String apn = cursor.getString(APN_INDEX);
-                String key = cursor.getString(ID_INDEX);
-                String type = cursor.getString(TYPES_INDEX);
-                String mvnoType = cursor.getString(MVNO_TYPE_INDEX);
-                String mvnoMatchData = cursor.getString(MVNO_MATCH_DATA_INDEX);
-
-                ApnPreference pref = new ApnPreference(getPrefContext());
-
-                pref.setKey(key);
-                pref.setTitle(name);
-                pref.setSummary(apn);
+        mSelectedKey = apnList.selectedKey;
+        mMvnoType = apnList.mvnoType;
+        mMvnoMatchData = apnList.mvnoMatchData;
+        for (int i = 0; i < apnList.apns.size(); i++) {
+            final ApnListLoader.Apn apn = apnList.apns.get(i);
+            ApnPreference pref = oldPrefs.remove(apn.key);
+            final boolean isNew = pref == null;
+            if (isNew) {
+                pref = new ApnPreference(getPrefContext());
+                pref.setKey(apn.key);
                 pref.setPersistent(false);
-                pref.setSubId(subId);
-
-                boolean selectable = ((type == null) || !type.equals("mms"));
-                pref.setSelectable(selectable);
-                if (selectable) {
-                    if ((mSelectedKey != null) && mSelectedKey.equals(key)) {
-                        pref.setChecked();
-                    }
-                    addApnToList(pref, mnoApnList, mvnoApnList, r, mvnoType, mvnoMatchData);
-                } else {
-                    addApnToList(pref, mnoMmsApnList, mvnoMmsApnList, r, mvnoType, mvnoMatchData);
-                }
-                cursor.moveToNext();
             }
-            cursor.close();
-
-            if (!mvnoApnList.isEmpty()) {
-                mnoApnList = mvnoApnList;
-                mnoMmsApnList = mvnoMmsApnList;
-
-                // Also save the mvno info
-            }
-
-            for (Preference preference : mnoApnList) {
-                apnList.addPreference(preference);
+            // These only notify the list when the value actually changed.
+            pref.setTitle(apn.name);
+            pref.setSummary(apn.apn);
+            pref.setSubId(subId);
+            pref.setSelectable(apn.selectable);
+            pref.setOrder(i);
+            if (apn.selectable && (mSelectedKey != null) && mSelectedKey.equals(apn.key)) {
+                pref.setChecked();
             }
-            for (Preference preference : mnoMmsApnList) {
-                apnList.addPreference(preference);
+            if (isNew) {
+                apnPrefList.addPreference(pref);
             }
         }
-    }
-
-    private void addApnToList(ApnPreference pref, ArrayList<ApnPreference> mnoList,
-                              ArrayList<ApnPreference> mvnoList, IccRecords r, String mvnoType,
-                              String mvnoMatchData) {
-        if (r != null && !TextUtils.isEmpty(mvnoType) && !TextUtils.isEmpty(mvnoMatchData)) {
-            if (ApnSettingUtils.mvnoMatches(r, ApnSetting.getMvnoTypeIntFromString(mvnoType),
-                    mvnoMatchData)) {
-                mvnoList.add(pref);
-                // Since adding to mvno list, save mvno info
-                mMvnoType = mvnoType;
-                mMvnoMatchData = mvnoMatchData;
-            }
-        } else {
-            mnoList.add(pref);
+        for (ApnPreference stalePref : oldPrefs.values()) {
+            apnPrefList.removePreference(stalePref);
         }
     }
 
@@ -421,19 +423,6 @@ public class ApnSettings extends RestrictedSettingsFragment {
         resolver.update(getUriForCurrSubId(PREFERAPN_URI), values, null, null);
     }
 
-    private String getSelectedApnKey() {
-        String key = null;
-
-        Cursor cursor = getContentResolver().query(getUriForCurrSubId(PREFERAPN_URI),
-                new String[] {"_id"}, null, null, Telephony.Carriers.DEFAULT_SORT_ORDER);
-        if (cursor.getCount() > 0) {
-            cursor.moveToFirst();
-            key = cursor.getString(ID_INDEX);
-        }
-        cursor.close();
-        return key;
-    }
-
     private boolean restoreDefaultApn() {
         showDialog(DIALOG_RESTORE_DEFAULTAPN);
         mRestoreDefaultApnMode = true;
@@ -135,5 +135,11 @@ public class PaymentSettings extends SettingsPreferenceFragment implements Index
                 nonVisibleKeys.add(PAYMENT_KEY);
                 return nonVisibleKeys;
             }
+
+            @Override
+            public boolean isNonIndexableKeysThreadSafe() {
+                // Only queries PackageManager, and the payment page has no controllers.
+                return true;
+            }
         };
 }
@@ -62,6 +62,11 @@ public class PrintSettingPreferenceController extends BasePreferenceController i
                 ? AVAILABLE : UNSUPPORTED_ON_DEVICE;
     }
 
+    @Override
+    protected boolean isAvailabilityCacheable() {
+        return true;
+    }
+
     @Override
     public void displayPreference(PreferenceScreen screen) {
         super.displayPreference(screen);
@@ -122,6 +122,15 @@ public class BaseSearchIndexProvider implements Indexable.SearchIndexProvider {
         return null;
     }
 
+    /**
+     * Returns true if {@link #getNonIndexableKeys(Context)} may run on a background thread
+     * concurrently with other providers. Only override this when neither the provider nor any
+     * controller it creates shares mutable state.
+     */
+    public boolean isNonIndexableKeysThreadSafe() {
+        return false;
+    }
+
     /**
      * Returns true if the page should be considered in search query. If return false, entire page
      * will be suppressed during search query.
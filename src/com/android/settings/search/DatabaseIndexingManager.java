@@ -18,45 +18,22 @@
 package com.android.settings.search;
 
 
-import static com.android.settings.search.DatabaseResultLoader.COLUMN_INDEX_ID;
-import static com.android.settings.search.DatabaseResultLoader
-        .COLUMN_INDEX_INTENT_ACTION_TARGET_PACKAGE;
-import static com.android.settings.search.DatabaseResultLoader.COLUMN_INDEX_KEY;
-import static com.android.settings.search.DatabaseResultLoader.SELECT_COLUMNS;
-import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.CLASS_NAME;
-import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.DATA_ENTRIES;
-import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.DATA_KEYWORDS;
 import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.DATA_KEY_REF;
-import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.DATA_SUMMARY_ON;
-import static com.android.settings.search.IndexDatabaseHelper.IndexColumns
-        .DATA_SUMMARY_ON_NORMALIZED;
-import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.DATA_TITLE;
-import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.DATA_TITLE_NORMALIZED;
-import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.DOCID;
 import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.ENABLED;
-import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.ICON;
-import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.INTENT_ACTION;
-import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.INTENT_TARGET_CLASS;
 import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.INTENT_TARGET_PACKAGE;
-import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.LOCALE;
-import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.PAYLOAD;
-import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.PAYLOAD_TYPE;
-import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.SCREEN_TITLE;
-import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.USER_ID;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.PACKAGE;
 import static com.android.settings.search.IndexDatabaseHelper.Tables.TABLE_PREFS_INDEX;
+import static com.android.settings.search.IndexDatabaseHelper.Tables.TABLE_SITE_MAP;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.ResolveInfo;
-import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
 import android.os.Build;
 import android.provider.SearchIndexablesContract;
-import android.provider.SearchIndexablesContract.SiteMapColumns;
 import androidx.annotation.VisibleForTesting;
-import android.text.TextUtils;
 import android.util.Log;
 
 import com.android.settings.overlay.FeatureFactory;
@@ -65,6 +42,7 @@ import com.android.settings.search.indexing.IndexDataConverter;
 import com.android.settings.search.indexing.PreIndexData;
 import com.android.settings.search.indexing.PreIndexDataCollector;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -80,8 +58,53 @@ public class DatabaseIndexingManager {
 
     private static final String LOG_TAG = "DatabaseIndexingManager";
 
+    private static final String TABLE_TEMP_NON_INDEXABLE_KEYS = "temp_non_indexable_keys";
+    private static final String TEMP_COLUMN_PACKAGE = "package";
+    private static final String TEMP_COLUMN_KEY = "data_key";
+
+    private static final String CREATE_TEMP_NON_INDEXABLE_KEYS_TABLE =
+            "CREATE TEMP TABLE IF NOT EXISTS " + TABLE_TEMP_NON_INDEXABLE_KEYS
+                    + "(" + TEMP_COLUMN_PACKAGE + " TEXT NOT NULL, "
+                    + TEMP_COLUMN_KEY + " TEXT)";
+
+    private static final String CREATE_TEMP_NON_INDEXABLE_KEYS_INDEX =
+            "CREATE INDEX IF NOT EXISTS temp." + TABLE_TEMP_NON_INDEXABLE_KEYS + "_index ON "
+                    + TABLE_TEMP_NON_INDEXABLE_KEYS
+                    + "(" + TEMP_COLUMN_PACKAGE + ", " + TEMP_COLUMN_KEY + ")";
+
+    private static final String DROP_TEMP_NON_INDEXABLE_KEYS_TABLE =
+            "DROP TABLE IF EXISTS " + TABLE_TEMP_NON_INDEXABLE_KEYS;
+
+    private static final String INSERT_NON_INDEXABLE_KEY =
+            "INSERT INTO " + TABLE_TEMP_NON_INDEXABLE_KEYS
+                    + "(" + TEMP_COLUMN_PACKAGE + ", " + TEMP_COLUMN_KEY + ") VALUES (?, ?)";
+
+    // Rows without a target package belong to Settings, whose package is bound as the only arg.
+    private static final String ROW_PACKAGE =
+            "IFNULL(" + TABLE_PREFS_INDEX + "." + INTENT_TARGET_PACKAGE + ", ?1)";
+
+    private static final String IS_NON_INDEXABLE_ROW =
+            "EXISTS (SELECT 1 FROM " + TABLE_TEMP_NON_INDEXABLE_KEYS
+                    + " WHERE " + TEMP_COLUMN_PACKAGE + " = " + ROW_PACKAGE
+                    + " AND " + TEMP_COLUMN_KEY + " = "
+                    + TABLE_PREFS_INDEX + "." + DATA_KEY_REF + ")";
+
+    private static final String IS_KNOWN_PACKAGE_ROW =
+            "EXISTS (SELECT 1 FROM " + TABLE_TEMP_NON_INDEXABLE_KEYS
+                    + " WHERE " + TEMP_COLUMN_PACKAGE + " = " + ROW_PACKAGE + ")";
+
+    private static final String DISABLE_NON_INDEXABLE_ROWS =
+            "UPDATE " + TABLE_PREFS_INDEX + " SET " + ENABLED + " = 0"
+                    + " WHERE " + ENABLED + " = 1 AND " + IS_NON_INDEXABLE_ROW;
+
+    private static final String ENABLE_INDEXABLE_ROWS =
+            "UPDATE " + TABLE_PREFS_INDEX + " SET " + ENABLED + " = 1"
+                    + " WHERE " + ENABLED + " = 0 AND " + IS_KNOWN_PACKAGE_ROW
+                    + " AND NOT " + IS_NON_INDEXABLE_ROW;
+
     private PreIndexDataCollector mCollector;
     private IndexDataConverter mConverter;
+    private IndexDataBulkInserter mInserter;
 
     private Context mContext;
 
@@ -102,29 +125,35 @@ public class DatabaseIndexingManager {
 
         final String localeStr = Locale.getDefault().toString();
         final String fingerprint = Build.FINGERPRINT;
-        final String providerVersionedNames =
-                IndexDatabaseHelper.buildProviderVersionedNames(providers);
+        final Map<String, Long> providerVersions =
+                IndexDatabaseHelper.buildProviderVersions(providers);
 
-        final boolean isFullIndex = isFullIndex(mContext, localeStr, fingerprint,
-                providerVersionedNames);
+        final boolean isFullIndex = isFullIndex(mContext, localeStr, fingerprint);
+        final Set<String> changedPackages = isFullIndex
+                ? Collections.emptySet()
+                : IndexDatabaseHelper.getChangedProviders(mContext, providerVersions);
 
         if (isFullIndex) {
             rebuildDatabase();
         }
 
-        PreIndexData indexData = getIndexDataFromProviders(providers, isFullIndex);
+        PreIndexData indexData = getIndexDataFromProviders(providers, isFullIndex,
+                changedPackages);
 
         final long updateDatabaseStartTime = System.currentTimeMillis();
-        updateDatabase(indexData, isFullIndex);
+        updateDatabase(indexData, isFullIndex, changedPackages);
         if (SettingsSearchIndexablesProvider.DEBUG) {
             final long updateDatabaseTime = System.currentTimeMillis() - updateDatabaseStartTime;
-            Log.d(LOG_TAG, "performIndexing updateDatabase took time: " + updateDatabaseTime);
+            Log.d(LOG_TAG, "performIndexing updateDatabase took time: " + updateDatabaseTime
+                    + "ms. Changed providers: " + changedPackages);
         }
 
         //TODO(63922686): Setting indexed should be a single method, not 3 separate setters.
         IndexDatabaseHelper.setLocaleIndexed(mContext, localeStr);
         IndexDatabaseHelper.setBuildIndexed(mContext, fingerprint);
-        IndexDatabaseHelper.setProvidersIndexed(mContext, providerVersionedNames);
+        // Leave failed providers out of the ledger, so the next pass collects them again.
+        providerVersions.keySet().removeAll(indexData.failedPackages);
+        IndexDatabaseHelper.setProvidersIndexed(mContext, providerVersions);
 
         if (SettingsSearchIndexablesProvider.DEBUG) {
             final long indexingTime = System.currentTimeMillis() - startTime;
@@ -134,32 +163,31 @@ public class DatabaseIndexingManager {
     }
 
     @VisibleForTesting
-    PreIndexData getIndexDataFromProviders(List<ResolveInfo> providers, boolean isFullIndex) {
+    PreIndexData getIndexDataFromProviders(List<ResolveInfo> providers, boolean isFullIndex,
+            Set<String> changedPackages) {
         if (mCollector == null) {
-            mCollector = new PreIndexDataCollector(mContext);
+            mCollector = new PreIndexDataCollector(mContext, true /* collectInParallel */);
         }
-        return mCollector.collectIndexableData(providers, isFullIndex);
+        return mCollector.collectIndexableData(providers, isFullIndex, changedPackages);
     }
 
     /**
      * Checks if the indexed data is obsolete, when either:
      * - Device language has changed
      * - Device has taken an OTA.
-     * In both cases, the device requires a full index.
+     * In both cases, the device requires a full index. Updates to individual providers are
+     * handled incrementally, see {@link IndexDatabaseHelper#getChangedProviders}.
      *
      * @param locale      is the default for the device
      * @param fingerprint id for the current build.
      * @return true if a full index should be preformed.
      */
     @VisibleForTesting
-    boolean isFullIndex(Context context, String locale, String fingerprint,
-            String providerVersionedNames) {
+    boolean isFullIndex(Context context, String locale, String fingerprint) {
         final boolean isLocaleIndexed = IndexDatabaseHelper.isLocaleAlreadyIndexed(context, locale);
         final boolean isBuildIndexed = IndexDatabaseHelper.isBuildIndexed(context, fingerprint);
-        final boolean areProvidersIndexed = IndexDatabaseHelper
-                .areProvidersIndexed(context, providerVersionedNames);
 
-        return !(isLocaleIndexed && isBuildIndexed && areProvidersIndexed);
+        return !(isLocaleIndexed && isBuildIndexed);
     }
 
     /**
@@ -172,17 +200,25 @@ public class DatabaseIndexingManager {
         IndexDatabaseHelper.getInstance(mContext).reconstruct(db);
     }
 
+    @VisibleForTesting
+    void updateDatabase(PreIndexData preIndexData, boolean needsReindexing) {
+        updateDatabase(preIndexData, needsReindexing, Collections.emptySet());
+    }
+
     /**
      * Adds new data to the database and verifies the correctness of the ENABLED column.
      * First, the data to be updated and all non-indexable keys are copied locally.
+     * Then rows from providers which changed since the last index are removed.
      * Then all new data to be added is inserted.
      * Then search results are verified to have the correct value of enabled.
      * Finally, we record that the locale has been indexed.
      *
      * @param needsReindexing true the database needs to be rebuilt.
+     * @param changedPackages packages of providers whose rows are stale.
      */
     @VisibleForTesting
-    void updateDatabase(PreIndexData preIndexData, boolean needsReindexing) {
+    void updateDatabase(PreIndexData preIndexData, boolean needsReindexing,
+            Set<String> changedPackages) {
         final Map<String, Set<String>> nonIndexableKeys = preIndexData.nonIndexableKeys;
 
         final SQLiteDatabase database = getWritableDatabase();
@@ -194,6 +230,11 @@ public class DatabaseIndexingManager {
         try {
             database.beginTransaction();
 
+            // A rebuilt database is already empty, so there is nothing stale to remove.
+            if (!needsReindexing) {
+                deleteProviderData(database, changedPackages);
+            }
+
             // Convert all Pre-index data to Index data.
             List<IndexData> indexData = getIndexData(preIndexData);
             insertIndexData(database, indexData);
@@ -210,6 +251,25 @@ public class DatabaseIndexingManager {
         }
     }
 
+    /**
+     * Removes every index row and site map pair which was supplied by one of
+     * {@param packageNames}.
+     */
+    @VisibleForTesting
+    void deleteProviderData(SQLiteDatabase database, Set<String> packageNames) {
+        if (packageNames.isEmpty()) {
+            return;
+        }
+        final String[] whereArgs = packageNames.toArray(new String[packageNames.size()]);
+        final StringBuilder where = new StringBuilder(PACKAGE).append(" IN (");
+        for (int i = 0; i < whereArgs.length; i++) {
+            where.append(i == 0 ? "?" : ", ?");
+        }
+        where.append(')');
+        database.delete(TABLE_PREFS_INDEX, where.toString(), whereArgs);
+        database.delete(TABLE_SITE_MAP, where.toString(), whereArgs);
+    }
+
     @VisibleForTesting
     List<IndexData> getIndexData(PreIndexData data) {
         if (mConverter == null) {
@@ -224,48 +284,10 @@ public class DatabaseIndexingManager {
      */
     @VisibleForTesting
     void insertIndexData(SQLiteDatabase database, List<IndexData> indexData) {
-        ContentValues values;
-
-        for (IndexData dataRow : indexData) {
-            if (TextUtils.isEmpty(dataRow.normalizedTitle)) {
-                continue;
-            }
-
-            values = new ContentValues();
-            values.put(IndexDatabaseHelper.IndexColumns.DOCID, dataRow.getDocId());
-            values.put(LOCALE, dataRow.locale);
-            values.put(DATA_TITLE, dataRow.updatedTitle);
-            values.put(DATA_TITLE_NORMALIZED, dataRow.normalizedTitle);
-            values.put(DATA_SUMMARY_ON, dataRow.updatedSummaryOn);
-            values.put(DATA_SUMMARY_ON_NORMALIZED, dataRow.normalizedSummaryOn);
-            values.put(DATA_ENTRIES, dataRow.entries);
-            values.put(DATA_KEYWORDS, dataRow.spaceDelimitedKeywords);
-            values.put(CLASS_NAME, dataRow.className);
-            values.put(SCREEN_TITLE, dataRow.screenTitle);
-            values.put(INTENT_ACTION, dataRow.intentAction);
-            values.put(INTENT_TARGET_PACKAGE, dataRow.intentTargetPackage);
-            values.put(INTENT_TARGET_CLASS, dataRow.intentTargetClass);
-            values.put(ICON, dataRow.iconResId);
-            values.put(ENABLED, dataRow.enabled);
-            values.put(DATA_KEY_REF, dataRow.key);
-            values.put(USER_ID, dataRow.userId);
-            values.put(PAYLOAD_TYPE, dataRow.payloadType);
-            values.put(PAYLOAD, dataRow.payload);
-
-            database.replaceOrThrow(TABLE_PREFS_INDEX, null, values);
-
-            if (!TextUtils.isEmpty(dataRow.className)
-                    && !TextUtils.isEmpty(dataRow.childClassName)) {
-                final ContentValues siteMapPair = new ContentValues();
-                siteMapPair.put(SiteMapColumns.PARENT_CLASS, dataRow.className);
-                siteMapPair.put(SiteMapColumns.PARENT_TITLE, dataRow.screenTitle);
-                siteMapPair.put(SiteMapColumns.CHILD_CLASS, dataRow.childClassName);
-                siteMapPair.put(SiteMapColumns.CHILD_TITLE, dataRow.updatedTitle);
-
-                database.replaceOrThrow(IndexDatabaseHelper.Tables.TABLE_SITE_MAP,
-                        null /* nullColumnHack */, siteMapPair);
-            }
+        if (mInserter == null) {
+            mInserter = new IndexDataBulkInserter();
         }
+        mInserter.insert(database, indexData);
     }
 
     /**
@@ -273,68 +295,52 @@ public class DatabaseIndexingManager {
      * All rows which are enabled but are now flagged with non-indexable keys will become disabled.
      * All rows which are disabled but no longer a non-indexable key will become enabled.
      *
+     * The non-indexable keys are copied into a temporary table, and both directions are then
+     * reconciled with a single statement each rather than by walking the index row by row.
+     *
      * @param database         The database to validate.
      * @param nonIndexableKeys A map between package name and the set of non-indexable keys for it.
      */
     @VisibleForTesting
     void updateDataInDatabase(SQLiteDatabase database,
             Map<String, Set<String>> nonIndexableKeys) {
-        final String whereEnabled = ENABLED + " = 1";
-        final String whereDisabled = ENABLED + " = 0";
-
-        final Cursor enabledResults = database.query(TABLE_PREFS_INDEX, SELECT_COLUMNS,
-                whereEnabled, null, null, null, null);
-
-        final ContentValues enabledToDisabledValue = new ContentValues();
-        enabledToDisabledValue.put(ENABLED, 0);
-
-        String packageName;
-        // TODO Refactor: Move these two loops into one method.
-        while (enabledResults.moveToNext()) {
-            // Package name is the key for remote providers.
-            // If package name is null, the provider is Settings.
-            packageName = enabledResults.getString(COLUMN_INDEX_INTENT_ACTION_TARGET_PACKAGE);
-            if (packageName == null) {
-                packageName = mContext.getPackageName();
-            }
-
-            final String key = enabledResults.getString(COLUMN_INDEX_KEY);
-            final Set<String> packageKeys = nonIndexableKeys.get(packageName);
-
-            // The indexed item is set to Enabled but is now non-indexable
-            if (packageKeys != null && packageKeys.contains(key)) {
-                final String whereClause = DOCID + " = " + enabledResults.getInt(COLUMN_INDEX_ID);
-                database.update(TABLE_PREFS_INDEX, enabledToDisabledValue, whereClause, null);
+        database.execSQL(CREATE_TEMP_NON_INDEXABLE_KEYS_TABLE);
+        database.execSQL(CREATE_TEMP_NON_INDEXABLE_KEYS_INDEX);
+        try {
+            final SQLiteStatement insertKey = database.compileStatement(INSERT_NON_INDEXABLE_KEY);
+            try {
+                for (Map.Entry<String, Set<String>> entry : nonIndexableKeys.entrySet()) {
+                    // A row with a null key records that the package is known, even when it has
+                    // no non-indexable keys. Rows from unknown packages are never enabled.
+                    insertKey.bindString(1, entry.getKey());
+                    insertKey.bindNull(2);
+                    insertKey.executeInsert();
+                    for (String key : entry.getValue()) {
+                        if (key == null) {
+                            continue;
+                        }
+                        insertKey.bindString(1, entry.getKey());
+                        insertKey.bindString(2, key);
+                        insertKey.executeInsert();
+                    }
+                }
+            } finally {
+                insertKey.close();
             }
-        }
-        enabledResults.close();
 
-        final Cursor disabledResults = database.query(TABLE_PREFS_INDEX, SELECT_COLUMNS,
-                whereDisabled, null, null, null, null);
-
-        final ContentValues disabledToEnabledValue = new ContentValues();
-        disabledToEnabledValue.put(ENABLED, 1);
-
-        while (disabledResults.moveToNext()) {
             // Package name is the key for remote providers.
             // If package name is null, the provider is Settings.
-            packageName = disabledResults.getString(COLUMN_INDEX_INTENT_ACTION_TARGET_PACKAGE);
-            if (packageName == null) {
-                packageName = mContext.getPackageName();
-            }
+            final String[] settingsPackage = {mContext.getPackageName()};
 
-            final String key = disabledResults.getString(COLUMN_INDEX_KEY);
-            final Set<String> packageKeys = nonIndexableKeys.get(packageName);
+            // The indexed item is set to Enabled but is now non-indexable
+            database.execSQL(DISABLE_NON_INDEXABLE_ROWS, settingsPackage);
 
             // The indexed item is set to Disabled but is no longer non-indexable.
-            // We do not enable keys when packageKeys is null because it means the keys came
-            // from an unrecognized package and therefore should not be surfaced as results.
-            if (packageKeys != null && !packageKeys.contains(key)) {
-                String whereClause = DOCID + " = " + disabledResults.getInt(COLUMN_INDEX_ID);
-                database.update(TABLE_PREFS_INDEX, disabledToEnabledValue, whereClause, null);
-            }
+            // We do not enable keys from unrecognized packages, as they should not be surfaced.
+            database.execSQL(ENABLE_INDEXABLE_ROWS, settingsPackage);
+        } finally {
+            database.execSQL(DROP_TEMP_NON_INDEXABLE_KEYS_TABLE);
         }
-        disabledResults.close();
     }
 
     private SQLiteDatabase getWritableDatabase() {
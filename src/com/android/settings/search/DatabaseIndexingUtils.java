@@ -24,6 +24,8 @@ import android.os.Bundle;
 import android.util.ArrayMap;
 import android.util.Log;
 
+import androidx.annotation.VisibleForTesting;
+
 import com.android.internal.logging.nano.MetricsProto;
 import com.android.settings.SettingsActivity;
 import com.android.settings.core.BasePreferenceController;
@@ -34,6 +36,8 @@ import com.android.settingslib.core.AbstractPreferenceController;
 import java.lang.reflect.Field;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 /**
  * Utility class for {@like DatabaseIndexingManager} to handle the mapping between Payloads
@@ -46,6 +50,25 @@ public class DatabaseIndexingUtils {
     public static final String FIELD_NAME_SEARCH_INDEX_DATA_PROVIDER =
             "SEARCH_INDEX_DATA_PROVIDER";
 
+    /**
+     * Indexable classes by name, registered up front by {@link SearchIndexableResourcesImpl} or
+     * resolved once by {@link #getIndexableClass(String)}.
+     */
+    private static final Map<String, Class<?>> sIndexableClasses = new ConcurrentHashMap<>();
+
+    /**
+     * How to get the search index provider of each class registered by
+     * {@link SearchIndexableResourcesImpl}, without reflection.
+     */
+    private static final Map<Class<?>, Supplier<Indexable.SearchIndexProvider>>
+            sRegisteredProviders = new ConcurrentHashMap<>();
+
+    /**
+     * Search index providers by class, resolved once by {@link #getSearchIndexProvider(Class)}.
+     */
+    private static final Map<Class<?>, Indexable.SearchIndexProvider> sSearchIndexProviders =
+            new ConcurrentHashMap<>();
+
     /**
      * Builds intent that launches the search destination as a sub-setting.
      */
@@ -121,7 +144,32 @@ public class DatabaseIndexingUtils {
         return map;
     }
 
+    /**
+     * Registers how to get the {@param provider} of {@param clazz}, so that neither needs to be
+     * resolved through reflection. {@param provider} is only called on the first lookup.
+     */
+    public static void registerSearchIndexProvider(Class<?> clazz,
+            Supplier<Indexable.SearchIndexProvider> provider) {
+        sIndexableClasses.put(clazz.getName(), clazz);
+        sRegisteredProviders.put(clazz, provider);
+    }
+
+    /**
+     * Forgets every registered and resolved class and provider.
+     */
+    @VisibleForTesting
+    static void clearSearchIndexProviders() {
+        sIndexableClasses.clear();
+        sRegisteredProviders.clear();
+        sSearchIndexProviders.clear();
+    }
+
     public static Class<?> getIndexableClass(String className) {
+        final Class<?> registeredClass = sIndexableClasses.get(className);
+        if (registeredClass != null) {
+            return registeredClass;
+        }
+
         final Class<?> clazz;
         try {
             clazz = Class.forName(className);
@@ -129,7 +177,11 @@ public class DatabaseIndexingUtils {
             Log.d(TAG, "Cannot find class: " + className);
             return null;
         }
-        return isIndexableClass(clazz) ? clazz : null;
+        if (!isIndexableClass(clazz)) {
+            return null;
+        }
+        sIndexableClasses.put(className, clazz);
+        return clazz;
     }
 
     public static boolean isIndexableClass(final Class<?> clazz) {
@@ -137,9 +189,29 @@ public class DatabaseIndexingUtils {
     }
 
     public static Indexable.SearchIndexProvider getSearchIndexProvider(final Class<?> clazz) {
+        final Indexable.SearchIndexProvider resolvedProvider = sSearchIndexProviders.get(clazz);
+        if (resolvedProvider != null) {
+            return resolvedProvider;
+        }
+
+        final Supplier<Indexable.SearchIndexProvider> registeredProvider =
+                sRegisteredProviders.get(clazz);
+        if (registeredProvider != null) {
+            final Indexable.SearchIndexProvider provider = registeredProvider.get();
+            if (provider != null) {
+                sSearchIndexProviders.put(clazz, provider);
+            }
+            return provider;
+        }
+
         try {
             final Field f = clazz.getField(FIELD_NAME_SEARCH_INDEX_DATA_PROVIDER);
-            return (Indexable.SearchIndexProvider) f.get(null);
+            final Indexable.SearchIndexProvider provider =
+                    (Indexable.SearchIndexProvider) f.get(null);
+            if (provider != null) {
+                sSearchIndexProviders.put(clazz, provider);
+            }
+            return provider;
         } catch (NoSuchFieldException e) {
             Log.d(TAG, "Cannot find field '" + FIELD_NAME_SEARCH_INDEX_DATA_PROVIDER + "'");
         } catch (SecurityException se) {
@@ -153,4 +225,4 @@ public class DatabaseIndexingUtils {
         }
         return null;
     }
-}
\ No newline at end of file
+}
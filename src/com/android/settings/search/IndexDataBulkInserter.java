@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.android.settings.search;
+
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.CLASS_NAME;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.DATA_ENTRIES;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.DATA_KEYWORDS;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.DATA_KEY_REF;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.DATA_SUMMARY_ON;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns
+        .DATA_SUMMARY_ON_NORMALIZED;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.DATA_TITLE;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.DATA_TITLE_NORMALIZED;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.DOCID;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.ENABLED;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.ICON;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.INTENT_ACTION;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.INTENT_TARGET_CLASS;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.INTENT_TARGET_PACKAGE;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.LOCALE;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.PACKAGE;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.PAYLOAD;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.PAYLOAD_TYPE;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.SCREEN_TITLE;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.USER_ID;
+import static com.android.settings.search.IndexDatabaseHelper.Tables.TABLE_PREFS_INDEX;
+import static com.android.settings.search.IndexDatabaseHelper.Tables.TABLE_SITE_MAP;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.provider.SearchIndexablesContract.SiteMapColumns;
+import android.text.TextUtils;
+import android.util.ArraySet;
+import android.util.Log;
+
+import com.android.settings.search.indexing.IndexData;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes {@link IndexData} rows into the search index through precompiled statements.
+ *
+ * Both statements are compiled once per batch and re-bound for every row, so a full index does
+ * not allocate a {@link android.content.ContentValues} or re-parse SQL per row. Site map pairs
+ * are de-duplicated in memory before they are written.
+ */
+public class IndexDataBulkInserter {
+
+    private static final String TAG = "IndexDataBulkInserter";
+
+    private static final String[] INDEX_COLUMNS = {
+            DOCID,
+            LOCALE,
+            DATA_TITLE,
+            DATA_TITLE_NORMALIZED,
+            DATA_SUMMARY_ON,
+            DATA_SUMMARY_ON_NORMALIZED,
+            DATA_ENTRIES,
+            DATA_KEYWORDS,
+            CLASS_NAME,
+            SCREEN_TITLE,
+            INTENT_ACTION,
+            INTENT_TARGET_PACKAGE,
+            INTENT_TARGET_CLASS,
+            ICON,
+            ENABLED,
+            DATA_KEY_REF,
+            USER_ID,
+            PAYLOAD_TYPE,
+            PAYLOAD,
+            PACKAGE,
+    };
+
+    private static final String[] SITE_MAP_COLUMNS = {
+            SiteMapColumns.PARENT_CLASS,
+            SiteMapColumns.PARENT_TITLE,
+            SiteMapColumns.CHILD_CLASS,
+            SiteMapColumns.CHILD_TITLE,
+            // Lets the pairs of a provider be replaced when only that provider is reindexed.
+            PACKAGE,
+    };
+
+    private static final String INSERT_INDEX_ROW =
+            buildInsertStatement(TABLE_PREFS_INDEX, INDEX_COLUMNS);
+
+    private static final String INSERT_SITE_MAP_ROW =
+            buildInsertStatement(TABLE_SITE_MAP, SITE_MAP_COLUMNS);
+
+    private int mRowCount;
+    private int mSiteMapCount;
+    private long mElapsedMillis;
+
+    /**
+     * Inserts all of the entries in {@param indexData} into the {@param database}
+     * as Search Data and as part of the Information Hierarchy.
+     * The caller is responsible for wrapping this call in a transaction.
+     */
+    public void insert(SQLiteDatabase database, List<IndexData> indexData) {
+        final long startTime = SystemClock.elapsedRealtime();
+        final Set<List<String>> siteMapPairs = new ArraySet<>();
+        int rowCount = 0;
+
+        final SQLiteStatement indexStatement = database.compileStatement(INSERT_INDEX_ROW);
+        try {
+            for (IndexData dataRow : indexData) {
+                if (TextUtils.isEmpty(dataRow.normalizedTitle)) {
+                    continue;
+                }
+                bindIndexRow(indexStatement, dataRow);
+                indexStatement.executeInsert();
+                rowCount++;
+
+                if (!TextUtils.isEmpty(dataRow.className)
+                        && !TextUtils.isEmpty(dataRow.childClassName)) {
+                    siteMapPairs.add(Arrays.asList(dataRow.className, dataRow.screenTitle,
+                            dataRow.childClassName, dataRow.updatedTitle,
+                            dataRow.packageName));
+                }
+            }
+        } finally {
+            indexStatement.close();
+        }
+
+        final SQLiteStatement siteMapStatement = database.compileStatement(INSERT_SITE_MAP_ROW);
+        try {
+            for (List<String> pair : siteMapPairs) {
+                siteMapStatement.clearBindings();
+                for (int i = 0; i < pair.size(); i++) {
+                    bindString(siteMapStatement, i + 1, pair.get(i));
+                }
+                siteMapStatement.executeInsert();
+            }
+        } finally {
+            siteMapStatement.close();
+        }
+
+        mRowCount = rowCount;
+        mSiteMapCount = siteMapPairs.size();
+        mElapsedMillis = SystemClock.elapsedRealtime() - startTime;
+        if (SettingsSearchIndexablesProvider.DEBUG) {
+            Log.d(TAG, "Inserted " + mRowCount + " rows and " + mSiteMapCount
+                    + " site map pairs in " + mElapsedMillis + "ms ("
+                    + getRowsPerSecond() + " rows/sec)");
+        }
+    }
+
+    /**
+     * @return the number of index rows written by the last call to {@link #insert}.
+     */
+    public int getRowCount() {
+        return mRowCount;
+    }
+
+    /**
+     * @return the number of distinct site map pairs written by the last call to {@link #insert}.
+     */
+    public int getSiteMapCount() {
+        return mSiteMapCount;
+    }
+
+    /**
+     * @return the index row throughput of the last call to {@link #insert}.
+     */
+    public long getRowsPerSecond() {
+        return mElapsedMillis == 0 ? mRowCount * 1000L : mRowCount * 1000L / mElapsedMillis;
+    }
+
+    private static void bindIndexRow(SQLiteStatement statement, IndexData dataRow) {
+        statement.clearBindings();
+        int i = 1;
+        statement.bindLong(i++, dataRow.getDocId());
+        bindString(statement, i++, dataRow.locale);
+        bindString(statement, i++, dataRow.updatedTitle);
+        bindString(statement, i++, dataRow.normalizedTitle);
+        bindString(statement, i++, dataRow.updatedSummaryOn);
+        bindString(statement, i++, dataRow.normalizedSummaryOn);
+        bindString(statement, i++, dataRow.entries);
+        bindString(statement, i++, dataRow.spaceDelimitedKeywords);
+        bindString(statement, i++, dataRow.className);
+        bindString(statement, i++, dataRow.screenTitle);
+        bindString(statement, i++, dataRow.intentAction);
+        bindString(statement, i++, dataRow.intentTargetPackage);
+        bindString(statement, i++, dataRow.intentTargetClass);
+        statement.bindLong(i++, dataRow.iconResId);
+        statement.bindLong(i++, dataRow.enabled ? 1 : 0);
+        bindString(statement, i++, dataRow.key);
+        statement.bindLong(i++, dataRow.userId);
+        statement.bindLong(i++, dataRow.payloadType);
+        if (dataRow.payload != null) {
+            statement.bindBlob(i++, dataRow.payload);
+        } else {
+            statement.bindNull(i++);
+        }
+        bindString(statement, i, dataRow.packageName);
+    }
+
+    private static void bindString(SQLiteStatement statement, int index, String value) {
+        if (value != null) {
+            statement.bindString(index, value);
+        } else {
+            statement.bindNull(index);
+        }
+    }
+
+    private static String buildInsertStatement(String table, String[] columns) {
+        final StringBuilder sql = new StringBuilder("INSERT OR REPLACE INTO ")
+                .append(table)
+                .append(" (")
+                .append(TextUtils.join(", ", columns))
+                .append(") VALUES (");
+        for (int i = 0; i < columns.length; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        return sql.append(')').toString();
+    }
+}
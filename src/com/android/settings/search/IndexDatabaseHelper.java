@@ -17,6 +17,7 @@
 package com.android.settings.search;
 
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.content.pm.ResolveInfo;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
@@ -24,21 +25,25 @@ import android.database.sqlite.SQLiteOpenHelper;
 import android.os.Build;
 import android.provider.SearchIndexablesContract.SiteMapColumns;
 import androidx.annotation.VisibleForTesting;
-import android.text.TextUtils;
+import android.util.ArrayMap;
+import android.util.ArraySet;
 import android.util.Log;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 public class IndexDatabaseHelper extends SQLiteOpenHelper {
 
     private static final String TAG = "IndexDatabaseHelper";
 
     private static final String DATABASE_NAME = "search_index.db";
-    private static final int DATABASE_VERSION = 118;
+    private static final int DATABASE_VERSION = 120;
 
     private static final String SHARED_PREFS_TAG = "indexing_manager";
 
-    private static final String PREF_KEY_INDEXED_PROVIDERS = "indexed_providers";
+    private static final String PREF_KEY_PROVIDER_VERSION_PREFIX = "indexed_provider_version:";
 
     public interface Tables {
         String TABLE_PREFS_INDEX = "prefs_index";
@@ -70,6 +75,7 @@ public class IndexDatabaseHelper extends SQLiteOpenHelper {
         String USER_ID = "user_id";
         String PAYLOAD_TYPE = "payload_type";
         String PAYLOAD = "payload";
+        String PACKAGE = "package";
     }
 
     public interface MetaColumns {
@@ -125,6 +131,8 @@ public class IndexDatabaseHelper extends SQLiteOpenHelper {
                     IndexColumns.PAYLOAD_TYPE +
                     ", " +
                     IndexColumns.PAYLOAD +
+                    ", " +
+                    IndexColumns.PACKAGE +
                     ");";
 
     private static final String CREATE_META_TABLE =
@@ -151,6 +159,8 @@ public class IndexDatabaseHelper extends SQLiteOpenHelper {
                     SiteMapColumns.PARENT_TITLE +
                     ", " +
                     SiteMapColumns.CHILD_TITLE +
+                    ", " +
+                    IndexColumns.PACKAGE +
                     ")";
     private static final String INSERT_BUILD_VERSION =
             "INSERT INTO " + Tables.TABLE_META_INDEX +
@@ -249,16 +259,17 @@ public class IndexDatabaseHelper extends SQLiteOpenHelper {
         return version;
     }
 
+    /**
+     * @return a map from the package name of each provider to its version code.
+     */
     @VisibleForTesting
-    static String buildProviderVersionedNames(List<ResolveInfo> providers) {
-        StringBuilder sb = new StringBuilder();
+    static Map<String, Long> buildProviderVersions(List<ResolveInfo> providers) {
+        final Map<String, Long> versions = new ArrayMap<>();
         for (ResolveInfo info : providers) {
-            sb.append(info.providerInfo.packageName)
-                    .append(':')
-                    .append(info.providerInfo.applicationInfo.longVersionCode)
-                    .append(',');
+            versions.put(info.providerInfo.packageName,
+                    info.providerInfo.applicationInfo.longVersionCode);
         }
-        return sb.toString();
+        return versions;
     }
 
     static void setLocaleIndexed(Context context, String locale) {
@@ -268,11 +279,23 @@ public class IndexDatabaseHelper extends SQLiteOpenHelper {
                 .apply();
     }
 
-    static void setProvidersIndexed(Context context, String providerVersionedNames) {
-        context.getSharedPreferences(SHARED_PREFS_TAG, Context.MODE_PRIVATE)
-                .edit()
-                .putString(PREF_KEY_INDEXED_PROVIDERS, providerVersionedNames)
-                .apply();
+    /**
+     * Records the version of every provider whose data is now in the index. Entries for
+     * providers that are no longer installed are dropped from the ledger.
+     */
+    static void setProvidersIndexed(Context context, Map<String, Long> providerVersions) {
+        final SharedPreferences prefs =
+                context.getSharedPreferences(SHARED_PREFS_TAG, Context.MODE_PRIVATE);
+        final SharedPreferences.Editor editor = prefs.edit();
+        for (String prefKey : prefs.getAll().keySet()) {
+            if (prefKey.startsWith(PREF_KEY_PROVIDER_VERSION_PREFIX)) {
+                editor.remove(prefKey);
+            }
+        }
+        for (Map.Entry<String, Long> entry : providerVersions.entrySet()) {
+            editor.putLong(PREF_KEY_PROVIDER_VERSION_PREFIX + entry.getKey(), entry.getValue());
+        }
+        editor.apply();
     }
 
     static boolean isLocaleAlreadyIndexed(Context context, String locale) {
@@ -280,11 +303,32 @@ public class IndexDatabaseHelper extends SQLiteOpenHelper {
                 .getBoolean(locale, false);
     }
 
-    static boolean areProvidersIndexed(Context context, String providerVersionedNames) {
-        final String indexedProviders =
-                context.getSharedPreferences(SHARED_PREFS_TAG, Context.MODE_PRIVATE)
-                        .getString(PREF_KEY_INDEXED_PROVIDERS, null);
-        return TextUtils.equals(indexedProviders, providerVersionedNames);
+    /**
+     * @return the package names of providers which were added, upgraded or removed since the
+     * last time they were indexed.
+     */
+    static Set<String> getChangedProviders(Context context, Map<String, Long> providerVersions) {
+        final SharedPreferences prefs =
+                context.getSharedPreferences(SHARED_PREFS_TAG, Context.MODE_PRIVATE);
+        final Set<String> changedProviders = new ArraySet<>();
+        for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+            final String prefKey = entry.getKey();
+            if (!prefKey.startsWith(PREF_KEY_PROVIDER_VERSION_PREFIX)) {
+                continue;
+            }
+            final String packageName =
+                    prefKey.substring(PREF_KEY_PROVIDER_VERSION_PREFIX.length());
+            if (!Objects.equals(entry.getValue(), providerVersions.get(packageName))) {
+                changedProviders.add(packageName);
+            }
+        }
+        for (Map.Entry<String, Long> entry : providerVersions.entrySet()) {
+            final String prefKey = PREF_KEY_PROVIDER_VERSION_PREFIX + entry.getKey();
+            if (!prefs.contains(prefKey)) {
+                changedProviders.add(entry.getKey());
+            }
+        }
+        return changedProviders;
     }
 
     static boolean isBuildIndexed(Context context, String buildNo) {
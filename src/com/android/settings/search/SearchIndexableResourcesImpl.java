@@ -102,6 +102,7 @@ import com.android.settings.wifi.WifiSettings;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.function.Supplier;
 
 public class SearchIndexableResourcesImpl implements SearchIndexableResources {
 
@@ -112,87 +113,145 @@ public class SearchIndexableResourcesImpl implements SearchIndexableResources {
         sProviders.add(indexClass);
     }
 
+    /**
+     * Adds {@param indexClass} and registers how to get its provider, so that it can be looked
+     * up without reflecting over the class. The provider is only read, and the class only
+     * initialized, the first time it is looked up.
+     */
+    private void addIndex(Class indexClass, Supplier<Indexable.SearchIndexProvider> provider) {
+        addIndex(indexClass);
+        DatabaseIndexingUtils.registerSearchIndexProvider(indexClass, provider);
+    }
+
     public SearchIndexableResourcesImpl() {
-        addIndex(WifiSettings.class);
-        addIndex(NetworkDashboardFragment.class);
-        addIndex(ConfigureWifiSettings.class);
-        addIndex(SimSettings.class);
-        addIndex(DataUsageSummary.class);
-        addIndex(DataUsageSummaryLegacy.class);
-        addIndex(ScreenZoomSettings.class);
-        addIndex(DisplaySettings.class);
-        addIndex(AutoBrightnessSettings.class);
-        addIndex(AmbientDisplaySettings.class);
-        addIndex(WallpaperTypeSettings.class);
-        addIndex(AppAndNotificationDashboardFragment.class);
-        addIndex(SoundSettings.class);
-        addIndex(ZenModeSettings.class);
-        addIndex(StorageSettings.class);
-        addIndex(PowerUsageAdvanced.class);
-        addIndex(DefaultAppSettings.class);
-        addIndex(ManageAssist.class);
-        addIndex(SpecialAccessSettings.class);
-        addIndex(UserSettings.class);
-        addIndex(AssistGestureSettings.class);
-        addIndex(PickupGestureSettings.class);
-        addIndex(DoubleTapScreenSettings.class);
-        addIndex(DoubleTapPowerSettings.class);
-        addIndex(DoubleTwistGestureSettings.class);
-        addIndex(SwipeUpGestureSettings.class);
-        addIndex(SwipeToNotificationSettings.class);
-        addIndex(GestureSettings.class);
-        addIndex(LanguageAndInputSettings.class);
-        addIndex(LocationSettings.class);
-        addIndex(ScanningSettings.class);
-        addIndex(SecuritySettings.class);
-        addIndex(ScreenLockSettings.class);
-        addIndex(EncryptionAndCredential.class);
-        addIndex(ScreenPinningSettings.class);
-        addIndex(AccountDashboardFragment.class);
-        addIndex(VirtualKeyboardFragment.class);
-        addIndex(AvailableVirtualKeyboardFragment.class);
-        addIndex(PhysicalKeyboardFragment.class);
-        addIndex(BackupSettingsActivity.class);
-        addIndex(BackupSettingsFragment.class);
-        addIndex(DateTimeSettings.class);
-        addIndex(AccessibilitySettings.class);
-        addIndex(PrintSettingsFragment.class);
-        addIndex(DevelopmentSettingsDashboardFragment.class);
-        addIndex(DeviceInfoSettings.class);
-        addIndex(LegalSettings.class);
-        addIndex(SystemDashboardFragment.class);
-        addIndex(ResetDashboardFragment.class);
-        addIndex(StorageDashboardFragment.class);
-        addIndex(ConnectedDeviceDashboardFragment.class);
-        addIndex(AdvancedConnectedDeviceDashboardFragment.class);
-        addIndex(EnterprisePrivacySettings.class);
-        addIndex(PaymentSettings.class);
-        addIndex(TextToSpeechSettings.class);
-        addIndex(TtsEnginePreferenceFragment.class);
-        addIndex(MagnificationPreferenceFragment.class);
-        addIndex(AccessibilityShortcutPreferenceFragment.class);
-        addIndex(DreamSettings.class);
-        addIndex(SupportDashboardActivity.class);
-        addIndex(AutomaticStorageManagerSettings.class);
-        addIndex(ConfigureNotificationSettings.class);
-        addIndex(PowerUsageSummary.class);
-        addIndex(BatterySaverSettings.class);
-        addIndex(LockscreenDashboardFragment.class);
-        addIndex(UsbDetailsFragment.class);
-        addIndex(WifiDisplaySettings.class);
-        addIndex(ZenModeMsgEventReminderSettings.class);
-        addIndex(ZenModeCallsSettings.class);
-        addIndex(ZenModeSoundVibrationSettings.class);
-        addIndex(ZenModeBlockedEffectsSettings.class);
-        addIndex(ZenModeAutomationSettings.class);
-        addIndex(ZenModeRestrictNotificationsSettings.class);
-        addIndex(NightDisplaySettings.class);
-        addIndex(SmartBatterySettings.class);
-        addIndex(MyDeviceInfoFragment.class);
-        addIndex(VibrationSettings.class);
-        addIndex(RecentLocationRequestSeeAllFragment.class);
-        addIndex(PreviouslyConnectedDeviceDashboardFragment.class);
-        addIndex(BluetoothDashboardFragment.class);
+        addIndex(WifiSettings.class, () -> WifiSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(NetworkDashboardFragment.class,
+                () -> NetworkDashboardFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(ConfigureWifiSettings.class,
+                () -> ConfigureWifiSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(SimSettings.class, () -> SimSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(DataUsageSummary.class, () -> DataUsageSummary.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(DataUsageSummaryLegacy.class,
+                () -> DataUsageSummaryLegacy.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(ScreenZoomSettings.class, () -> ScreenZoomSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(DisplaySettings.class, () -> DisplaySettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(AutoBrightnessSettings.class,
+                () -> AutoBrightnessSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(AmbientDisplaySettings.class,
+                () -> AmbientDisplaySettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(WallpaperTypeSettings.class,
+                () -> WallpaperTypeSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(AppAndNotificationDashboardFragment.class,
+                () -> AppAndNotificationDashboardFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(SoundSettings.class, () -> SoundSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(ZenModeSettings.class, () -> ZenModeSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(StorageSettings.class, () -> StorageSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(PowerUsageAdvanced.class, () -> PowerUsageAdvanced.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(DefaultAppSettings.class, () -> DefaultAppSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(ManageAssist.class, () -> ManageAssist.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(SpecialAccessSettings.class,
+                () -> SpecialAccessSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(UserSettings.class, () -> UserSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(AssistGestureSettings.class,
+                () -> AssistGestureSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(PickupGestureSettings.class,
+                () -> PickupGestureSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(DoubleTapScreenSettings.class,
+                () -> DoubleTapScreenSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(DoubleTapPowerSettings.class,
+                () -> DoubleTapPowerSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(DoubleTwistGestureSettings.class,
+                () -> DoubleTwistGestureSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(SwipeUpGestureSettings.class,
+                () -> SwipeUpGestureSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(SwipeToNotificationSettings.class,
+                () -> SwipeToNotificationSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(GestureSettings.class, () -> GestureSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(LanguageAndInputSettings.class,
+                () -> LanguageAndInputSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(LocationSettings.class, () -> LocationSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(ScanningSettings.class, () -> ScanningSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(SecuritySettings.class, () -> SecuritySettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(ScreenLockSettings.class, () -> ScreenLockSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(EncryptionAndCredential.class,
+                () -> EncryptionAndCredential.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(ScreenPinningSettings.class,
+                () -> ScreenPinningSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(AccountDashboardFragment.class,
+                () -> AccountDashboardFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(VirtualKeyboardFragment.class,
+                () -> VirtualKeyboardFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(AvailableVirtualKeyboardFragment.class,
+                () -> AvailableVirtualKeyboardFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(PhysicalKeyboardFragment.class,
+                () -> PhysicalKeyboardFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(BackupSettingsActivity.class,
+                () -> BackupSettingsActivity.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(BackupSettingsFragment.class,
+                () -> BackupSettingsFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(DateTimeSettings.class, () -> DateTimeSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(AccessibilitySettings.class,
+                () -> AccessibilitySettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(PrintSettingsFragment.class,
+                () -> PrintSettingsFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(DevelopmentSettingsDashboardFragment.class,
+                () -> DevelopmentSettingsDashboardFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(DeviceInfoSettings.class, () -> DeviceInfoSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(LegalSettings.class, () -> LegalSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(SystemDashboardFragment.class,
+                () -> SystemDashboardFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(ResetDashboardFragment.class,
+                () -> ResetDashboardFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(StorageDashboardFragment.class,
+                () -> StorageDashboardFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(ConnectedDeviceDashboardFragment.class,
+                () -> ConnectedDeviceDashboardFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(AdvancedConnectedDeviceDashboardFragment.class,
+                () -> AdvancedConnectedDeviceDashboardFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(EnterprisePrivacySettings.class,
+                () -> EnterprisePrivacySettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(PaymentSettings.class, () -> PaymentSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(TextToSpeechSettings.class, () -> TextToSpeechSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(TtsEnginePreferenceFragment.class,
+                () -> TtsEnginePreferenceFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(MagnificationPreferenceFragment.class,
+                () -> MagnificationPreferenceFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(AccessibilityShortcutPreferenceFragment.class,
+                () -> AccessibilityShortcutPreferenceFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(DreamSettings.class, () -> DreamSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(SupportDashboardActivity.class,
+                () -> SupportDashboardActivity.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(AutomaticStorageManagerSettings.class,
+                () -> AutomaticStorageManagerSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(ConfigureNotificationSettings.class,
+                () -> ConfigureNotificationSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(PowerUsageSummary.class, () -> PowerUsageSummary.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(BatterySaverSettings.class, () -> BatterySaverSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(LockscreenDashboardFragment.class,
+                () -> LockscreenDashboardFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(UsbDetailsFragment.class, () -> UsbDetailsFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(WifiDisplaySettings.class, () -> WifiDisplaySettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(ZenModeMsgEventReminderSettings.class,
+                () -> ZenModeMsgEventReminderSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(ZenModeCallsSettings.class, () -> ZenModeCallsSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(ZenModeSoundVibrationSettings.class,
+                () -> ZenModeSoundVibrationSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(ZenModeBlockedEffectsSettings.class,
+                () -> ZenModeBlockedEffectsSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(ZenModeAutomationSettings.class,
+                () -> ZenModeAutomationSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(ZenModeRestrictNotificationsSettings.class,
+                () -> ZenModeRestrictNotificationsSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(NightDisplaySettings.class, () -> NightDisplaySettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(SmartBatterySettings.class, () -> SmartBatterySettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(MyDeviceInfoFragment.class, () -> MyDeviceInfoFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(VibrationSettings.class, () -> VibrationSettings.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(RecentLocationRequestSeeAllFragment.class,
+                () -> RecentLocationRequestSeeAllFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(PreviouslyConnectedDeviceDashboardFragment.class,
+                () -> PreviouslyConnectedDeviceDashboardFragment.SEARCH_INDEX_DATA_PROVIDER);
+        addIndex(BluetoothDashboardFragment.class,
+                () -> BluetoothDashboardFragment.SEARCH_INDEX_DATA_PROVIDER);
     }
 
     @Override
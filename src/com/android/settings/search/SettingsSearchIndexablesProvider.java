@@ -47,21 +47,32 @@ import static com.android.settings.dashboard.DashboardFragmentRegistry.CATEGORY_
 import android.content.Context;
 import android.database.Cursor;
 import android.database.MatrixCursor;
+import android.os.OperationCanceledException;
 import android.provider.SearchIndexableResource;
 import android.provider.SearchIndexablesContract;
 import android.provider.SearchIndexablesProvider;
 import android.text.TextUtils;
+import android.util.ArrayMap;
 import android.util.ArraySet;
 import android.util.Log;
 
+import androidx.annotation.VisibleForTesting;
+
 import com.android.settings.SettingsActivity;
 import com.android.settings.overlay.FeatureFactory;
+import com.android.settings.utils.WorkerExecutors;
 import com.android.settingslib.drawer.DashboardCategory;
 import com.android.settingslib.drawer.Tile;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
 
@@ -84,6 +95,17 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
         INVALID_KEYS.add("");
     }
 
+    /**
+     * Upper bound on the number of threads evaluating non-indexable keys concurrently.
+     */
+    private static final int MAX_NON_INDEXABLE_KEYS_THREADS = 4;
+
+    private static final ExecutorService NON_INDEXABLE_KEYS_EXECUTOR =
+            WorkerExecutors.newBoundedExecutor("NonIndexableKeys",
+                    MAX_NON_INDEXABLE_KEYS_THREADS);
+
+    private volatile Map<String, Long> mProviderTimings = Collections.emptyMap();
+
     @Override
     public boolean onCreate() {
         return true;
@@ -184,55 +206,117 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
         return cursor;
     }
 
+    /**
+     * Returns the non-indexable keys of every provider inside of settings, in provider order.
+     *
+     * <p>Many providers build controllers which call into system services. Providers which
+     * declare {@link BaseSearchIndexProvider#isNonIndexableKeysThreadSafe()} are evaluated on a
+     * shared worker pool while the others run one after another on the calling thread. On either
+     * path, controllers which declare
+     * {@link com.android.settings.core.BasePreferenceController#isAvailabilityCacheable()} have
+     * their availability memoized by {@code AvailabilityCache}, so repeated queries are cheap.
+     *
+     * @throws OperationCanceledException if the calling thread is interrupted while waiting.
+     */
     private List<String> getNonIndexableKeysFromProvider(Context context) {
         final Collection<Class> values = FeatureFactory.getFactory(context)
                 .getSearchFeatureProvider().getSearchIndexableResources().getProviderValues();
-        final List<String> nonIndexableKeys = new ArrayList<>();
+        final Map<String, Long> providerTimings = new ConcurrentHashMap<>();
 
+        final Map<Class, Future<List<String>>> futures = new ArrayMap<>();
         for (Class<?> clazz : values) {
-            final long startTime = System.currentTimeMillis();
-            Indexable.SearchIndexProvider provider = DatabaseIndexingUtils.getSearchIndexProvider(
-                    clazz);
-
-            List<String> providerNonIndexableKeys;
-            try {
-                providerNonIndexableKeys = provider.getNonIndexableKeys(context);
-            } catch (Exception e) {
-                // Catch a generic crash. In the absence of the catch, the background thread will
-                // silently fail anyway, so we aren't losing information by catching the exception.
-                // We crash when the system property exists so that we can test if crashes need to
-                // be fixed.
-                // The gain is that if there is a crash in a specific controller, we don't lose all
-                // non-indexable keys, but we can still find specific crashes in development.
-                if (System.getProperty(SYSPROP_CRASH_ON_ERROR) != null) {
-                    throw new RuntimeException(e);
-                }
-                Log.e(TAG, "Error trying to get non-indexable keys from: " + clazz.getName() , e);
-                continue;
+            final Indexable.SearchIndexProvider provider =
+                    DatabaseIndexingUtils.getSearchIndexProvider(clazz);
+            if (provider instanceof BaseSearchIndexProvider
+                    && ((BaseSearchIndexProvider) provider).isNonIndexableKeysThreadSafe()) {
+                futures.put(clazz, NON_INDEXABLE_KEYS_EXECUTOR.submit(() ->
+                        getNonIndexableKeysFromClass(context, clazz, provider, providerTimings)));
             }
+        }
 
-            if (providerNonIndexableKeys == null || providerNonIndexableKeys.isEmpty()) {
-                if (DEBUG) {
-                    final long totalTime = System.currentTimeMillis() - startTime;
-                    Log.d(TAG, "No indexable, total time " + totalTime);
+        final List<String> nonIndexableKeys = new ArrayList<>();
+        try {
+            for (Class<?> clazz : values) {
+                final Future<List<String>> future = futures.get(clazz);
+                if (future == null) {
+                    nonIndexableKeys.addAll(getNonIndexableKeysFromClass(context, clazz,
+                            DatabaseIndexingUtils.getSearchIndexProvider(clazz),
+                            providerTimings));
+                    continue;
                 }
-                continue;
+                try {
+                    nonIndexableKeys.addAll(future.get());
+                } catch (ExecutionException e) {
+                    // Only thrown when SYSPROP_CRASH_ON_ERROR is set, so surface it as is.
+                    final Throwable cause = e.getCause();
+                    throw cause instanceof RuntimeException
+                            ? (RuntimeException) cause : new RuntimeException(cause);
+                } catch (InterruptedException e) {
+                    // A partial list would un-hide keys, so fail the whole query instead.
+                    Thread.currentThread().interrupt();
+                    throw new OperationCanceledException();
+                }
+            }
+        } finally {
+            for (Future<List<String>> future : futures.values()) {
+                future.cancel(false /* mayInterruptIfRunning */);
             }
+        }
+        mProviderTimings = providerTimings;
+        return nonIndexableKeys;
+    }
 
-            if (providerNonIndexableKeys.removeAll(INVALID_KEYS)) {
-                Log.v(TAG, provider + " tried to add an empty non-indexable key");
+    private List<String> getNonIndexableKeysFromClass(Context context, Class<?> clazz,
+            Indexable.SearchIndexProvider provider, Map<String, Long> providerTimings) {
+        final long startTime = System.currentTimeMillis();
+
+        List<String> providerNonIndexableKeys;
+        try {
+            providerNonIndexableKeys = provider.getNonIndexableKeys(context);
+        } catch (Exception e) {
+            // Catch a generic crash. In the absence of the catch, the background thread will
+            // silently fail anyway, so we aren't losing information by catching the exception.
+            // We crash when the system property exists so that we can test if crashes need to
+            // be fixed.
+            // The gain is that if there is a crash in a specific controller, we don't lose all
+            // non-indexable keys, but we can still find specific crashes in development.
+            if (System.getProperty(SYSPROP_CRASH_ON_ERROR) != null) {
+                throw new RuntimeException(e);
             }
+            Log.e(TAG, "Error trying to get non-indexable keys from: " + clazz.getName() , e);
+            return Collections.emptyList();
+        } finally {
+            providerTimings.put(clazz.getName(), System.currentTimeMillis() - startTime);
+        }
 
+        if (providerNonIndexableKeys == null || providerNonIndexableKeys.isEmpty()) {
             if (DEBUG) {
                 final long totalTime = System.currentTimeMillis() - startTime;
-                Log.d(TAG, "Non-indexables " + providerNonIndexableKeys.size() + ", total time "
-                        + totalTime);
+                Log.d(TAG, "No indexable, total time " + totalTime);
             }
+            return Collections.emptyList();
+        }
 
-            nonIndexableKeys.addAll(providerNonIndexableKeys);
+        if (providerNonIndexableKeys.removeAll(INVALID_KEYS)) {
+            Log.v(TAG, provider + " tried to add an empty non-indexable key");
         }
 
-        return nonIndexableKeys;
+        if (DEBUG) {
+            final long totalTime = System.currentTimeMillis() - startTime;
+            Log.d(TAG, "Non-indexables " + providerNonIndexableKeys.size() + ", total time "
+                    + totalTime);
+        }
+
+        return providerNonIndexableKeys;
+    }
+
+    /**
+     * @return a map from provider class name to the time in milliseconds its non-indexable keys
+     * took to compute, for the most recent query.
+     */
+    @VisibleForTesting
+    Map<String, Long> getNonIndexableKeysTimings() {
+        return mProviderTimings;
     }
 
     private List<SearchIndexableResource> getSearchIndexableResourcesFromProvider(Context context) {
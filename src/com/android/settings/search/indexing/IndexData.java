@@ -55,6 +55,7 @@ public class IndexData {
     public final int userId;
     public final int payloadType;
     public final byte[] payload;
+    public final String packageName;
 
     private static final String NON_BREAKING_HYPHEN = "\u2011";
     private static final String EMPTY = "";
@@ -93,6 +94,7 @@ public class IndexData {
         payloadType = builder.mPayloadType;
         payload = builder.mPayload != null ? ResultPayloadUtils.marshall(builder.mPayload)
                 : null;
+        packageName = builder.mPackageName;
     }
 
     /**
@@ -175,6 +177,7 @@ public class IndexData {
         @ResultPayload.PayloadType
         private int mPayloadType;
         private ResultPayload mPayload;
+        private String mPackageName;
 
         public Builder setTitle(String title) {
             mTitle = title;
@@ -246,6 +249,15 @@ public class IndexData {
             return this;
         }
 
+        /**
+         * Sets the package of the {@link android.provider.SearchIndexablesProvider} which
+         * supplied this row, so it can be replaced when only that provider changes.
+         */
+        public Builder setPackageName(String packageName) {
+            mPackageName = packageName;
+            return this;
+        }
+
         public Builder setPayload(ResultPayload payload) {
             mPayload = payload;
 
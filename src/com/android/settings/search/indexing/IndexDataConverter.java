@@ -123,7 +123,8 @@ public class IndexDataConverter {
                 .setIntentTargetClass(raw.intentTargetClass)
                 .setEnabled(enabled)
                 .setKey(raw.key)
-                .setUserId(raw.userId);
+                .setUserId(raw.userId)
+                .setPackageName(raw.packageName);
 
         return builder;
     }
@@ -202,7 +203,8 @@ public class IndexDataConverter {
                     .setIntentTargetClass(intentTargetClass)
                     .setEnabled(enabled)
                     .setKey(key)
-                    .setUserId(-1 /* default user id */);
+                    .setUserId(-1 /* default user id */)
+                    .setPackageName(sir.packageName);
 
             // Flag for XML headers which a child element's title.
             boolean isHeaderUnique = true;
@@ -237,7 +239,8 @@ public class IndexDataConverter {
                         .setIntentTargetClass(intentTargetClass)
                         .setEnabled(enabled)
                         .setKey(key)
-                        .setUserId(-1 /* default user id */);
+                        .setUserId(-1 /* default user id */)
+                        .setPackageName(sir.packageName);
 
                 if (!nodeName.equals(NODE_NAME_CHECK_BOX_PREFERENCE)) {
                     summary = PreferenceXmlParserUtils.getDataSummary(context, attrs);
@@ -21,6 +21,7 @@ import android.provider.SearchIndexableData;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -33,23 +34,39 @@ import java.util.Set;
 public class PreIndexData {
     public List<SearchIndexableData> dataToUpdate;
     public Map<String, Set<String>> nonIndexableKeys;
+    /**
+     * Packages whose provider could not be queried, so their data is missing.
+     */
+    public Set<String> failedPackages;
 
     public PreIndexData() {
         dataToUpdate = new ArrayList<>();
         nonIndexableKeys = new HashMap<>();
+        failedPackages = new HashSet<>();
     }
 
     public PreIndexData(PreIndexData other) {
         dataToUpdate = new ArrayList<>(other.dataToUpdate);
         nonIndexableKeys = new HashMap<>(other.nonIndexableKeys);
+        failedPackages = new HashSet<>(other.failedPackages);
     }
 
     public PreIndexData copy() {
         return new PreIndexData(this);
     }
 
+    /**
+     * Adds all of the data sources of {@param other} to this one.
+     */
+    public void merge(PreIndexData other) {
+        dataToUpdate.addAll(other.dataToUpdate);
+        nonIndexableKeys.putAll(other.nonIndexableKeys);
+        failedPackages.addAll(other.failedPackages);
+    }
+
     public void clear() {
         dataToUpdate.clear();
         nonIndexableKeys.clear();
+        failedPackages.clear();
     }
 }
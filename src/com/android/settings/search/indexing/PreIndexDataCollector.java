@@ -39,6 +39,13 @@ import com.android.settings.search.SettingsSearchIndexablesProvider;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static android.provider.SearchIndexablesContract.COLUMN_INDEX_XML_RES_CLASS_NAME;
 import static android.provider.SearchIndexablesContract.COLUMN_INDEX_XML_RES_ICON_RESID;
@@ -73,54 +80,155 @@ public class PreIndexDataCollector {
     // TODO (b/64938328) update to new search package.
     private final String BASE_AUTHORITY = "com.android.settings";
 
-    private static final List<String> EMPTY_LIST = Collections.emptyList();
+    @VisibleForTesting
+    static final int MAX_PARALLEL_PROVIDERS = 4;
+
+    @VisibleForTesting
+    static final long PROVIDER_TIMEOUT_MS = 5000;
 
     private Context mContext;
 
-    private PreIndexData mIndexData;
+    private final boolean mCollectInParallel;
 
     public PreIndexDataCollector(Context context) {
+        this(context, false /* collectInParallel */);
+    }
+
+    /**
+     * @param collectInParallel true to query the providers concurrently rather than one after
+     *                          another.
+     */
+    public PreIndexDataCollector(Context context, boolean collectInParallel) {
         mContext = context;
+        mCollectInParallel = collectInParallel;
     }
 
     public PreIndexData collectIndexableData(List<ResolveInfo> providers, boolean isFullIndex) {
-        mIndexData = new PreIndexData();
+        return collectIndexableData(providers, isFullIndex, Collections.emptySet());
+    }
 
+    /**
+     * Collects non-indexable keys from every provider, and indexable data from every provider
+     * when {@param isFullIndex} is true, or only from {@param changedPackages} otherwise.
+     */
+    public PreIndexData collectIndexableData(List<ResolveInfo> providers, boolean isFullIndex,
+            Set<String> changedPackages) {
+        final List<ResolveInfo> wellKnownProviders = new ArrayList<>();
         for (final ResolveInfo info : providers) {
-            if (!isWellKnownProvider(info)) {
-                continue;
+            if (isWellKnownProvider(info)) {
+                wellKnownProviders.add(info);
             }
-            final String authority = info.providerInfo.authority;
-            final String packageName = info.providerInfo.packageName;
+        }
 
-            if (isFullIndex) {
-                addIndexablesFromRemoteProvider(packageName, authority);
+        if (!mCollectInParallel || wellKnownProviders.size() <= 1) {
+            final PreIndexData indexData = new PreIndexData();
+            for (final ResolveInfo info : wellKnownProviders) {
+                indexData.merge(collectFromProvider(info, isFullIndex, changedPackages));
             }
+            return indexData;
+        }
+        return collectInParallel(wellKnownProviders, isFullIndex, changedPackages);
+    }
 
-            final long nonIndexableStartTime = System.currentTimeMillis();
-            addNonIndexablesKeysFromRemoteProvider(packageName, authority);
-            if (SettingsSearchIndexablesProvider.DEBUG) {
-                final long nonIndexableTime = System.currentTimeMillis() - nonIndexableStartTime;
-                Log.d(TAG, "performIndexing update non-indexable for package " + packageName
-                        + " took time: " + nonIndexableTime);
+    /**
+     * Queries up to {@link #MAX_PARALLEL_PROVIDERS} providers at a time. A provider which throws
+     * or does not answer within {@link #PROVIDER_TIMEOUT_MS} is dropped from this pass without
+     * affecting the data collected from the others, and its package is reported in
+     * {@link PreIndexData#failedPackages}. Results are merged in provider order.
+     *
+     * <p>A timed out binder call cannot be interrupted, so its worker is left to finish on its
+     * own. Each pass uses its own executor, so such a worker never holds up a later pass.
+     */
+    private PreIndexData collectInParallel(List<ResolveInfo> providers, boolean isFullIndex,
+            Set<String> changedPackages) {
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(MAX_PARALLEL_PROVIDERS, providers.size()));
+        final List<Future<PreIndexData>> futures = new ArrayList<>(providers.size());
+        for (final ResolveInfo info : providers) {
+            futures.add(executor.submit(
+                    () -> collectFromProvider(info, isFullIndex, changedPackages)));
+        }
+        executor.shutdown();
+
+        final PreIndexData indexData = new PreIndexData();
+        for (int i = 0; i < futures.size(); i++) {
+            final Future<PreIndexData> future = futures.get(i);
+            final String packageName = providers.get(i).providerInfo.packageName;
+            try {
+                indexData.merge(future.get(PROVIDER_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            } catch (TimeoutException e) {
+                Log.w(TAG, "Timed out collecting index data from " + packageName);
+                future.cancel(false /* mayInterruptIfRunning */);
+                indexData.failedPackages.add(packageName);
+            } catch (ExecutionException e) {
+                Log.w(TAG, "Failed collecting index data from " + packageName, e.getCause());
+                indexData.failedPackages.add(packageName);
+            } catch (InterruptedException e) {
+                Log.w(TAG, "Interrupted collecting index data from " + packageName);
+                Thread.currentThread().interrupt();
+                for (int j = i; j < futures.size(); j++) {
+                    futures.get(j).cancel(false /* mayInterruptIfRunning */);
+                    indexData.failedPackages.add(providers.get(j).providerInfo.packageName);
+                }
+                break;
             }
         }
+        return indexData;
+    }
+
+    /**
+     * @return the indexable data and non-indexable keys of a single provider. The package is
+     * reported in {@link PreIndexData#failedPackages} when any of its queries failed, so that its
+     * version is not recorded and it is collected again on the next pass.
+     */
+    private PreIndexData collectFromProvider(ResolveInfo info, boolean isFullIndex,
+            Set<String> changedPackages) {
+        final PreIndexData indexData = new PreIndexData();
+        final String authority = info.providerInfo.authority;
+        final String packageName = info.providerInfo.packageName;
+
+        if ((isFullIndex || changedPackages.contains(packageName))
+                && !addIndexablesFromRemoteProvider(indexData, packageName, authority)) {
+            indexData.failedPackages.add(packageName);
+        }
 
-        return mIndexData;
+        final long nonIndexableStartTime = System.currentTimeMillis();
+        if (!addNonIndexablesKeysFromRemoteProvider(indexData, packageName, authority)) {
+            indexData.failedPackages.add(packageName);
+        }
+        if (SettingsSearchIndexablesProvider.DEBUG) {
+            final long nonIndexableTime = System.currentTimeMillis() - nonIndexableStartTime;
+            Log.d(TAG, "performIndexing update non-indexable for package " + packageName
+                    + " took time: " + nonIndexableTime);
+        }
+        return indexData;
     }
 
-    private boolean addIndexablesFromRemoteProvider(String packageName, String authority) {
+    /**
+     * @return false if the package context could not be created or a query returned no cursor.
+     */
+    private boolean addIndexablesFromRemoteProvider(PreIndexData indexData, String packageName,
+            String authority) {
         try {
             final Context context = BASE_AUTHORITY.equals(authority) ?
                     mContext : mContext.createPackageContext(packageName, 0);
 
             final Uri uriForResources = buildUriForXmlResources(authority);
-            mIndexData.dataToUpdate.addAll(getIndexablesForXmlResourceUri(context, packageName,
-                    uriForResources, SearchIndexablesContract.INDEXABLES_XML_RES_COLUMNS));
+            final List<SearchIndexableResource> resources = getIndexablesForXmlResourceUri(
+                    context, packageName, uriForResources,
+                    SearchIndexablesContract.INDEXABLES_XML_RES_COLUMNS);
+            if (resources == null) {
+                return false;
+            }
+            indexData.dataToUpdate.addAll(resources);
 
             final Uri uriForRawData = buildUriForRawData(authority);
-            mIndexData.dataToUpdate.addAll(getIndexablesForRawDataUri(context, packageName,
-                    uriForRawData, SearchIndexablesContract.INDEXABLES_RAW_COLUMNS));
+            final List<SearchIndexableRaw> rawData = getIndexablesForRawDataUri(context,
+                    packageName, uriForRawData, SearchIndexablesContract.INDEXABLES_RAW_COLUMNS);
+            if (rawData == null) {
+                return false;
+            }
+            indexData.dataToUpdate.addAll(rawData);
             return true;
         } catch (PackageManager.NameNotFoundException e) {
             Log.w(TAG, "Could not create context for " + packageName + ": "
@@ -129,6 +237,9 @@ public class PreIndexDataCollector {
         }
     }
 
+    /**
+     * @return the rows of the query, or null if the provider could not be queried.
+     */
     @VisibleForTesting
     List<SearchIndexableResource> getIndexablesForXmlResourceUri(Context packageContext,
             String packageName, Uri uri, String[] projection) {
@@ -139,7 +250,7 @@ public class PreIndexDataCollector {
 
         if (cursor == null) {
             Log.w(TAG, "Cannot add index data for Uri: " + uri.toString());
-            return resources;
+            return null;
         }
 
         try {
@@ -175,16 +286,26 @@ public class PreIndexDataCollector {
         return resources;
     }
 
-    private void addNonIndexablesKeysFromRemoteProvider(String packageName,
-            String authority) {
+    /**
+     * @return false if the provider could not be queried for its non-indexable keys.
+     */
+    private boolean addNonIndexablesKeysFromRemoteProvider(PreIndexData indexData,
+            String packageName, String authority) {
         final List<String> keys =
                 getNonIndexablesKeysFromRemoteProvider(packageName, authority);
+        if (keys == null) {
+            return false;
+        }
 
-        if (keys != null && !keys.isEmpty()) {
-            mIndexData.nonIndexableKeys.put(authority, new ArraySet<>(keys));
+        if (!keys.isEmpty()) {
+            indexData.nonIndexableKeys.put(authority, new ArraySet<>(keys));
         }
+        return true;
     }
 
+    /**
+     * @return the rows of the query, or null if the provider could not be queried.
+     */
     @VisibleForTesting
     List<String> getNonIndexablesKeysFromRemoteProvider(String packageName,
             String authority) {
@@ -197,7 +318,7 @@ public class PreIndexDataCollector {
         } catch (PackageManager.NameNotFoundException e) {
             Log.w(TAG, "Could not create context for " + packageName + ": "
                     + Log.getStackTraceString(e));
-            return EMPTY_LIST;
+            return null;
         }
     }
 
@@ -219,6 +340,9 @@ public class PreIndexDataCollector {
                 SearchIndexablesContract.NON_INDEXABLES_KEYS_PATH);
     }
 
+    /**
+     * @return the rows of the query, or null if the provider could not be queried.
+     */
     @VisibleForTesting
     List<SearchIndexableRaw> getIndexablesForRawDataUri(Context packageContext, String packageName,
             Uri uri, String[] projection) {
@@ -228,7 +352,7 @@ public class PreIndexDataCollector {
 
         if (cursor == null) {
             Log.w(TAG, "Cannot add index data for Uri: " + uri.toString());
-            return rawData;
+            return null;
         }
 
         try {
@@ -293,12 +417,12 @@ public class PreIndexDataCollector {
             cursor = resolver.query(uri, projection, null, null, null);
         } catch (NullPointerException e) {
             Log.e(TAG, "Exception querying the keys!", e);
-            return result;
+            return null;
         }
 
         if (cursor == null) {
             Log.w(TAG, "Cannot add index data for Uri: " + uri.toString());
-            return result;
+            return null;
         }
 
         try {
@@ -50,6 +50,18 @@ public class EncryptionStatusPreferenceController extends BasePreferenceControll
         return mUserManager.isAdminUser() ? AVAILABLE : DISABLED_FOR_USER;
     }
 
+    @Override
+    protected boolean isAvailabilityCacheable() {
+        // Depends on the detail page config flag and whether this is the admin user.
+        return true;
+    }
+
+    @Override
+    public boolean isAvailabilityThreadSafe() {
+        // Reads resources and the final mUserManager, and keeps no other state.
+        return true;
+    }
+
     @Override
     public void updateState(Preference preference) {
         final boolean encryptionEnabled = LockPatternUtils.isDeviceEncryptionEnabled();
@@ -60,6 +60,12 @@ public class SimLockPreferenceController extends BasePreferenceController {
         return AVAILABLE;
     }
 
+    @Override
+    public boolean isAvailabilityThreadSafe() {
+        // The carrier config, SIM state and admin checks go through final manager fields.
+        return true;
+    }
+
     @Override
     public void displayPreference(PreferenceScreen screen) {
         super.displayPreference(screen);
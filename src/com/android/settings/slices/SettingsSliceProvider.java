@@ -19,7 +19,6 @@ package com.android.settings.slices;
 import static android.Manifest.permission.READ_SEARCH_INDEXABLES;
 
 import android.app.slice.SliceManager;
-import android.content.ContentResolver;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.net.Uri;
@@ -49,10 +48,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.WeakHashMap;
-import java.util.concurrent.ConcurrentHashMap;
 
 import androidx.slice.Slice;
 import androidx.slice.SliceProvider;
@@ -69,7 +65,8 @@ import androidx.slice.SliceProvider;
  * return an stub {@link Slice} with the correct {@link Uri} immediately. In the background, the
  * data corresponding to the key in the {@link Uri} is read by {@link SlicesDatabaseAccessor}, and
  * the entire row is converted into a {@link SliceData}. Once complete, it is stored in
- * {@link #mSliceDataCache}, and then an update sent via the Slice framework to the Slice.
+ * {@link #mSliceDataCache} along with the data of a few slices on the same screen, and then an
+ * update sent via the Slice framework to the Slice.
  * The {@link Slice} displayed by the Slice-presenter will re-query this Slice-provider and find
  * the {@link SliceData} cached to build the full {@link Slice}.
  *
@@ -82,6 +79,8 @@ public class SettingsSliceProvider extends SliceProvider {
 
     private static final String TAG = "SettingsSliceProvider";
 
+    private static final boolean DEBUG = false;
+
     /**
      * Authority for Settings slices not officially supported by the platform, but extensible for
      * OEMs.
@@ -111,17 +110,26 @@ public class SettingsSliceProvider extends SliceProvider {
     public static final String EXTRA_SLICE_PLATFORM_DEFINED =
             "com.android.settings.slice.extra.platform";
 
+    /**
+     * Maximum number of unpinned {@link SliceData} kept in {@link #mSliceDataCache}.
+     */
+    private static final int SLICE_DATA_CACHE_SIZE = 64;
+
+    /**
+     * Maximum number of sibling slices loaded alongside a requested slice.
+     */
+    @VisibleForTesting
+    static final int PREFETCH_BATCH_SIZE = 8;
+
     @VisibleForTesting
     SlicesDatabaseAccessor mSlicesDatabaseAccessor;
 
     @VisibleForTesting
-    Map<Uri, SliceData> mSliceWeakDataCache;
-    @VisibleForTesting
-    Map<Uri, SliceData> mSliceDataCache;
+    SliceDataCache mSliceDataCache;
 
     private final KeyValueListParser mParser;
 
-    final Set<Uri> mRegisteredUris = new ArraySet<>();
+    final Set<Uri> mRegisteredUris = Collections.synchronizedSet(new ArraySet<>());
 
     public SettingsSliceProvider() {
         super(READ_SEARCH_INDEXABLES);
@@ -131,8 +139,7 @@ public class SettingsSliceProvider extends SliceProvider {
     @Override
     public boolean onCreateSliceProvider() {
         mSlicesDatabaseAccessor = new SlicesDatabaseAccessor(getContext());
-        mSliceDataCache = new ConcurrentHashMap<>();
-        mSliceWeakDataCache = new WeakHashMap<>();
+        mSliceDataCache = new SliceDataCache(SLICE_DATA_CACHE_SIZE);
         return true;
     }
 
@@ -161,6 +168,7 @@ public class SettingsSliceProvider extends SliceProvider {
         }
 
         // Start warming the slice, we expect someone will want it soon.
+        mSliceDataCache.pin(sliceUri);
         loadSliceInBackground(sliceUri);
     }
 
@@ -171,7 +179,7 @@ public class SettingsSliceProvider extends SliceProvider {
             SliceBroadcastRelay.unregisterReceivers(getContext(), sliceUri);
             mRegisteredUris.remove(sliceUri);
         }
-        mSliceDataCache.remove(sliceUri);
+        mSliceDataCache.unpin(sliceUri);
     }
 
     @Override
@@ -207,15 +215,16 @@ public class SettingsSliceProvider extends SliceProvider {
                 return LocationSliceBuilder.getSlice(getContext());
             }
 
-            SliceData cachedSliceData = mSliceWeakDataCache.get(sliceUri);
+            mSliceDataCache.setIndexGeneration(mSlicesDatabaseAccessor.getIndexGeneration());
+            SliceData cachedSliceData = mSliceDataCache.get(sliceUri);
             if (cachedSliceData == null) {
                 loadSliceInBackground(sliceUri);
                 return getSliceStub(sliceUri);
             }
 
-            // Remove the SliceData from the cache after it has been used to prevent a memory-leak.
-            if (!mSliceDataCache.containsKey(sliceUri)) {
-                mSliceWeakDataCache.remove(sliceUri);
+            if (mSliceDataCache.consumePrefetched(sliceUri)) {
+                // Prefetching skips broadcast registration, so do it on the first bind.
+                registerIntentFilter(sliceUri, cachedSliceData);
             }
             return SliceBuilderUtils.buildSlice(getContext(), cachedSliceData);
         } finally {
@@ -259,12 +268,9 @@ public class SettingsSliceProvider extends SliceProvider {
 
         // No path nor authority. Return all possible Uris.
         if (isPathEmpty && TextUtils.isEmpty(authority)) {
-            final List<String> platformKeys = mSlicesDatabaseAccessor.getSliceKeys(
-                    true /* isPlatformSlice */);
-            final List<String> oemKeys = mSlicesDatabaseAccessor.getSliceKeys(
-                    false /* isPlatformSlice */);
-            descendants.addAll(buildUrisFromKeys(platformKeys, SettingsSlicesContract.AUTHORITY));
-            descendants.addAll(buildUrisFromKeys(oemKeys, SettingsSliceProvider.SLICE_AUTHORITY));
+            final SlicesIndexSnapshot snapshot = mSlicesDatabaseAccessor.getIndexSnapshot();
+            descendants.addAll(snapshot.getSliceUris(true /* isPlatformSlice */));
+            descendants.addAll(snapshot.getSliceUris(false /* isPlatformSlice */));
             descendants.addAll(getSpecialCaseUris(true /* isPlatformSlice */));
             descendants.addAll(getSpecialCaseUris(false /* isPlatformSlice */));
 
@@ -282,26 +288,14 @@ public class SettingsSliceProvider extends SliceProvider {
 
         // Can assume authority belongs to the provider. Return all Uris for the authority.
         final boolean isPlatformUri = TextUtils.equals(authority, SettingsSlicesContract.AUTHORITY);
-        final List<String> keys = mSlicesDatabaseAccessor.getSliceKeys(isPlatformUri);
-        descendants.addAll(buildUrisFromKeys(keys, authority));
-        descendants.addAll(getSpecialCaseUris(isPlatformUri));
-        return descendants;
-    }
-
-    private List<Uri> buildUrisFromKeys(List<String> keys, String authority) {
-        final List<Uri> descendants = new ArrayList<>();
-
-        final Uri.Builder builder = new Uri.Builder()
-                .scheme(ContentResolver.SCHEME_CONTENT)
-                .authority(authority)
-                .appendPath(SettingsSlicesContract.PATH_SETTING_ACTION);
-
-        final String newUriPathPrefix = SettingsSlicesContract.PATH_SETTING_ACTION + "/";
-        for (String key : keys) {
-            builder.path(newUriPathPrefix + key);
-            descendants.add(builder.build());
+        final SlicesIndexSnapshot snapshot = mSlicesDatabaseAccessor.getIndexSnapshot();
+        if (isPlatformUri || TextUtils.equals(authority, SLICE_AUTHORITY)) {
+            descendants.addAll(snapshot.getSliceUris(isPlatformUri));
+        } else {
+            descendants.addAll(SlicesIndexSnapshot.buildUrisFromKeys(
+                    snapshot.getSliceKeys(isPlatformUri), authority));
         }
-
+        descendants.addAll(getSpecialCaseUris(isPlatformUri));
         return descendants;
     }
 
@@ -309,6 +303,7 @@ public class SettingsSliceProvider extends SliceProvider {
     void loadSlice(Uri uri) {
         long startBuildTime = System.currentTimeMillis();
 
+        final int generation = mSlicesDatabaseAccessor.getIndexGeneration();
         final SliceData sliceData;
         try {
             sliceData = mSlicesDatabaseAccessor.getSliceDataFromUri(uri);
@@ -317,24 +312,78 @@ public class SettingsSliceProvider extends SliceProvider {
             return;
         }
 
-        final BasePreferenceController controller = SliceBuilderUtils.getPreferenceController(
-                getContext(), sliceData);
-
-        final IntentFilter filter = controller.getIntentFilter();
-        if (filter != null) {
-            registerIntentToUri(filter, uri);
-        }
+        registerIntentFilter(uri, sliceData);
 
         final List<Uri> pinnedSlices = getContext().getSystemService(
                 SliceManager.class).getPinnedSlices();
         if (pinnedSlices.contains(uri)) {
-            mSliceDataCache.put(uri, sliceData);
+            mSliceDataCache.pin(uri);
         }
-        mSliceWeakDataCache.put(uri, sliceData);
+        mSliceDataCache.put(uri, sliceData, generation);
         getContext().getContentResolver().notifyChange(uri, null /* content observer */);
 
         Log.d(TAG, "Built slice (" + uri + ") in: " +
                 (System.currentTimeMillis() - startBuildTime));
+
+        prefetchSiblingSlices(uri, sliceData);
+    }
+
+    /**
+     * Caches the {@link SliceData} of slices on the same screen as {@param uri}, since hosts
+     * usually request them together. At most {@link #PREFETCH_BATCH_SIZE} slices are loaded.
+     */
+    @VisibleForTesting
+    void prefetchSiblingSlices(Uri uri, SliceData sliceData) {
+        // Swap the key at the end of the path, keeping however the host encoded the rest of it.
+        final String encodedPath = uri.getEncodedPath();
+        final String encodedKey = Uri.encode(sliceData.getKey());
+        if (encodedPath == null || !encodedPath.endsWith(encodedKey)) {
+            return;
+        }
+        final String encodedPathPrefix =
+                encodedPath.substring(0, encodedPath.length() - encodedKey.length());
+
+        final int generation = mSlicesDatabaseAccessor.getIndexGeneration();
+        final Set<String> blockedKeys = getBlockedKeys();
+        final List<String> siblingKeys = mSlicesDatabaseAccessor.getIndexSnapshot()
+                .getSiblingKeys(sliceData.getKey());
+        int prefetched = 0;
+        for (String key : siblingKeys) {
+            if (prefetched >= PREFETCH_BATCH_SIZE) {
+                break;
+            }
+            if (TextUtils.equals(key, sliceData.getKey()) || blockedKeys.contains(key)) {
+                continue;
+            }
+            final Uri siblingUri = uri.buildUpon()
+                    .encodedPath(encodedPathPrefix + Uri.encode(key))
+                    .build();
+            if (mSliceDataCache.contains(siblingUri)) {
+                continue;
+            }
+            try {
+                mSliceDataCache.prefetch(siblingUri,
+                        mSlicesDatabaseAccessor.getSliceDataFromUri(siblingUri), generation);
+                prefetched++;
+            } catch (IllegalStateException e) {
+                Log.w(TAG, "Could not prefetch slice data for uri: " + siblingUri, e);
+            }
+        }
+        if (DEBUG) {
+            Log.d(TAG, "Prefetched " + prefetched + " sibling slices of " + uri
+                    + ", cache hits: " + mSliceDataCache.getHitCount() + ", misses: "
+                    + mSliceDataCache.getMissCount());
+        }
+    }
+
+    private void registerIntentFilter(Uri uri, SliceData sliceData) {
+        final BasePreferenceController controller = SliceBuilderUtils.getPreferenceController(
+                getContext(), sliceData);
+
+        final IntentFilter filter = controller.getIntentFilter();
+        if (filter != null) {
+            registerIntentToUri(filter, uri);
+        }
     }
 
     @VisibleForTesting
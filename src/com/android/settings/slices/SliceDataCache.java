@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.settings.slices;
+
+import android.net.Uri;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+import android.util.LruCache;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Thread-safe cache of {@link SliceData} for {@link SettingsSliceProvider}.
+ *
+ * <p>Entries for pinned {@link Uri uris} are kept until the {@link Uri} is unpinned. All other
+ * entries live in a bounded LRU, so repeated binds from a host are served from memory without
+ * the cache growing with every {@link Uri} ever requested.
+ *
+ * <p>Entries are tagged with the {@link SlicesDatabaseHelper#getIndexGeneration() generation} of
+ * the slices index they were read from, and are all dropped once the index is rewritten.
+ */
+class SliceDataCache {
+
+    private final LruCache<Uri, SliceData> mEntries;
+    private final Map<Uri, SliceData> mPinnedEntries = new ArrayMap<>();
+    private final Set<Uri> mPinnedUris = new ArraySet<>();
+    private final Set<Uri> mPrefetchedUris = new ArraySet<>();
+
+    private boolean mHasIndexGeneration;
+    private int mIndexGeneration;
+    private int mHitCount;
+    private int mMissCount;
+
+    SliceDataCache(int maxSize) {
+        mEntries = new LruCache<Uri, SliceData>(maxSize) {
+            @Override
+            protected void entryRemoved(boolean evicted, Uri key, SliceData oldValue,
+                    SliceData newValue) {
+                if (evicted) {
+                    mPrefetchedUris.remove(key);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return the cached {@link SliceData} for {@param uri}, or {@code null} on a miss.
+     */
+    synchronized SliceData get(Uri uri) {
+        SliceData data = mPinnedEntries.get(uri);
+        if (data == null) {
+            data = mEntries.get(uri);
+        }
+        if (data == null) {
+            mMissCount++;
+        } else {
+            mHitCount++;
+        }
+        return data;
+    }
+
+    /**
+     * @return {@code true} if {@param uri} has a cached entry. Does not count as a hit or miss.
+     */
+    synchronized boolean contains(Uri uri) {
+        return mPinnedEntries.containsKey(uri) || mEntries.get(uri) != null;
+    }
+
+    /**
+     * Drops every entry if the slices index changed since they were read.
+     *
+     * @param generation the current {@link SlicesDatabaseHelper#getIndexGeneration()}.
+     */
+    synchronized void setIndexGeneration(int generation) {
+        isCurrentGeneration(generation);
+    }
+
+    /**
+     * Caches {@param data}, unless the slices index changed since it was read at
+     * {@param generation}.
+     */
+    synchronized void put(Uri uri, SliceData data, int generation) {
+        if (!isCurrentGeneration(generation)) {
+            return;
+        }
+        mPrefetchedUris.remove(uri);
+        putInternal(uri, data);
+    }
+
+    /**
+     * Caches {@param data}, read at {@param generation}, ahead of a bind. The first {@link #consumePrefetched(Uri)} for
+     * {@param uri} returns {@code true} so the caller can finish any work skipped by the prefetch.
+     */
+    synchronized void prefetch(Uri uri, SliceData data, int generation) {
+        if (!isCurrentGeneration(generation)) {
+            return;
+        }
+        mPrefetchedUris.add(uri);
+        putInternal(uri, data);
+    }
+
+    synchronized boolean consumePrefetched(Uri uri) {
+        return mPrefetchedUris.remove(uri);
+    }
+
+    /**
+     * Keeps the entry for {@param uri}, current or future, until {@link #unpin(Uri)} is called.
+     */
+    synchronized void pin(Uri uri) {
+        mPinnedUris.add(uri);
+        final SliceData data = mEntries.remove(uri);
+        if (data != null) {
+            mPinnedEntries.put(uri, data);
+        }
+    }
+
+    /**
+     * Returns the entry for {@param uri} to the LRU, where it can be evicted.
+     */
+    synchronized void unpin(Uri uri) {
+        mPinnedUris.remove(uri);
+        final SliceData data = mPinnedEntries.remove(uri);
+        if (data != null) {
+            mEntries.put(uri, data);
+        }
+    }
+
+    synchronized boolean isPinned(Uri uri) {
+        return mPinnedEntries.containsKey(uri);
+    }
+
+    synchronized void clear() {
+        mEntries.evictAll();
+        mPinnedEntries.clear();
+        mPrefetchedUris.clear();
+    }
+
+    synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Adopts {@param generation} if it is newer than the cached entries, dropping them.
+     *
+     * @return {@code false} if {@param generation} is older than the cached entries.
+     */
+    private boolean isCurrentGeneration(int generation) {
+        if (!mHasIndexGeneration) {
+            mHasIndexGeneration = true;
+            mIndexGeneration = generation;
+            return true;
+        }
+        // Compared by difference so the counter may wrap around.
+        final int age = mIndexGeneration - generation;
+        if (age > 0) {
+            return false;
+        }
+        if (age < 0) {
+            clear();
+            mIndexGeneration = generation;
+        }
+        return true;
+    }
+
+    private void putInternal(Uri uri, SliceData data) {
+        if (mPinnedUris.contains(uri)) {
+            mPinnedEntries.put(uri, data);
+        } else {
+            mEntries.put(uri, data);
+        }
+    }
+}
@@ -24,6 +24,8 @@ import android.net.Uri;
 
 import android.content.Context;
 import android.os.Binder;
+import android.os.SystemClock;
+import android.util.Log;
 import android.util.Pair;
 
 import com.android.settings.overlay.FeatureFactory;
@@ -39,6 +41,8 @@ import androidx.slice.Slice;
  */
 public class SlicesDatabaseAccessor {
 
+    private static final String TAG = "SlicesDatabaseAccessor";
+
     public static final String[] SELECT_COLUMNS_ALL = {
             IndexColumns.KEY,
             IndexColumns.TITLE,
@@ -55,6 +59,14 @@ public class SlicesDatabaseAccessor {
     // Cursor value for boolean true
     private final int TRUE = 1;
 
+    /**
+     * In-memory copy of the slices table, shared by every accessor in the process since most
+     * accessors are created for a single lookup.
+     */
+    private static SlicesIndexSnapshot sIndexSnapshot;
+    private static SlicesDatabaseHelper sIndexSnapshotHelper;
+    private static int sIndexSnapshotGeneration;
+
     private final Context mContext;
     private final SlicesDatabaseHelper mHelper;
 
@@ -71,8 +83,8 @@ public class SlicesDatabaseAccessor {
      */
     public SliceData getSliceDataFromUri(Uri uri) {
         Pair<Boolean, String> pathData = SliceBuilderUtils.getPathData(uri);
-        Cursor cursor = getIndexedSliceData(pathData.second /* key */);
-        return buildSliceData(cursor, uri, pathData.first /* isIntentOnly */);
+        final SliceData sliceData = getIndexedSliceData(pathData.second /* key */);
+        return buildSliceData(sliceData, uri, pathData.first /* isIntentOnly */);
     }
 
     /**
@@ -81,112 +93,127 @@ public class SlicesDatabaseAccessor {
      * Used when handling the action of the {@link Slice}.
      */
     public SliceData getSliceDataFromKey(String key) {
-        Cursor cursor = getIndexedSliceData(key);
-        return buildSliceData(cursor, null /* uri */, false /* isIntentOnly */);
+        return getIndexedSliceData(key);
     }
 
     /**
      * @return a list of keys in the Slices database matching on {@param isPlatformSlice}.
      */
     public List<String> getSliceKeys(boolean isPlatformSlice) {
-        verifyIndexing();
-        final String whereClause;
+        return new ArrayList<>(getIndexSnapshot().getSliceKeys(isPlatformSlice));
+    }
 
-        if (isPlatformSlice) {
-            whereClause = IndexColumns.PLATFORM_SLICE + " = 1";
-        } else {
-            whereClause = IndexColumns.PLATFORM_SLICE + " = 0";
-        }
+    /**
+     * @return the {@link SlicesDatabaseHelper#getIndexGeneration() generation} of the Slices
+     * database, which changes whenever it is rewritten.
+     */
+    int getIndexGeneration() {
+        return mHelper.getIndexGeneration();
+    }
 
-        final SQLiteDatabase database = mHelper.getReadableDatabase();
-        final String[] columns = new String[]{IndexColumns.KEY};
-        final List<String> keys = new ArrayList<>();
+    /**
+     * @return the in-memory copy of the Slices database, reloaded if the index has changed since
+     * it was last read.
+     */
+    SlicesIndexSnapshot getIndexSnapshot() {
+        verifyIndexing();
 
-        try (final Cursor resultCursor = database.query(TABLE_SLICES_INDEX, columns, whereClause,
-                null /* selection */, null /* groupBy */, null /* having */, null /* orderBy */)) {
-            if (!resultCursor.moveToFirst()) {
-                return keys;
+        synchronized (SlicesDatabaseAccessor.class) {
+            final int generation = mHelper.getIndexGeneration();
+            if (sIndexSnapshot == null || sIndexSnapshotHelper != mHelper
+                    || sIndexSnapshotGeneration != generation) {
+                final long startTime = SystemClock.elapsedRealtime();
+                sIndexSnapshot = new SlicesIndexSnapshot(loadAllSliceData());
+                sIndexSnapshotHelper = mHelper;
+                sIndexSnapshotGeneration = generation;
+                Log.d(TAG, "Loaded " + sIndexSnapshot.size() + " slices in: "
+                        + (SystemClock.elapsedRealtime() - startTime));
             }
-
-            do {
-                keys.add(resultCursor.getString(0 /* key index */));
-            } while (resultCursor.moveToNext());
+            return sIndexSnapshot;
         }
-
-        return keys;
     }
 
-    private Cursor getIndexedSliceData(String path) {
-        verifyIndexing();
-
-        final String whereClause = buildKeyMatchWhereClause();
-        final SQLiteDatabase database = mHelper.getReadableDatabase();
-        final String[] selection = new String[]{path};
-        final Cursor resultCursor = database.query(TABLE_SLICES_INDEX, SELECT_COLUMNS_ALL,
-                whereClause, selection, null /* groupBy */, null /* having */, null /* orderBy */);
-
-        int numResults = resultCursor.getCount();
-
-        if (numResults == 0) {
-            throw new IllegalStateException("Invalid Slices key from path: " + path);
-        }
+    private SliceData getIndexedSliceData(String key) {
+        final SliceData sliceData = getIndexSnapshot().getSliceData(key);
 
-        if (numResults > 1) {
-            throw new IllegalStateException(
-                    "Should not match more than 1 slice with path: " + path);
+        if (sliceData == null) {
+            throw new IllegalStateException("Invalid Slices key from path: " + key);
         }
 
-        resultCursor.moveToFirst();
-        return resultCursor;
+        return sliceData;
     }
 
-    private String buildKeyMatchWhereClause() {
-        return new StringBuilder(IndexColumns.KEY)
-                .append(" = ?")
-                .toString();
-    }
-
-    private SliceData buildSliceData(Cursor cursor, Uri uri, boolean isIntentOnly) {
-        final String key = cursor.getString(cursor.getColumnIndex(IndexColumns.KEY));
-        final String title = cursor.getString(cursor.getColumnIndex(IndexColumns.TITLE));
-        final String summary = cursor.getString(cursor.getColumnIndex(IndexColumns.SUMMARY));
-        final String screenTitle = cursor.getString(
-                cursor.getColumnIndex(IndexColumns.SCREENTITLE));
-        final String keywords = cursor.getString(cursor.getColumnIndex(IndexColumns.KEYWORDS));
-        final int iconResource = cursor.getInt(cursor.getColumnIndex(IndexColumns.ICON_RESOURCE));
-        final String fragmentClassName = cursor.getString(
-                cursor.getColumnIndex(IndexColumns.FRAGMENT));
-        final String controllerClassName = cursor.getString(
-                cursor.getColumnIndex(IndexColumns.CONTROLLER));
-        final boolean isPlatformDefined = cursor.getInt(
-                cursor.getColumnIndex(IndexColumns.PLATFORM_SLICE)) == TRUE;
-        int sliceType = cursor.getInt(
-                cursor.getColumnIndex(IndexColumns.SLICE_TYPE));
-
-        if (isIntentOnly) {
-            sliceType = SliceData.SliceType.INTENT;
+    private List<SliceData> loadAllSliceData() {
+        final SQLiteDatabase database = mHelper.getReadableDatabase();
+        final List<SliceData> sliceData = new ArrayList<>();
+
+        try (final Cursor cursor = database.query(TABLE_SLICES_INDEX, SELECT_COLUMNS_ALL,
+                null /* where */, null /* selection */, null /* groupBy */, null /* having */,
+                null /* orderBy */)) {
+            final int keyIndex = cursor.getColumnIndex(IndexColumns.KEY);
+            final int titleIndex = cursor.getColumnIndex(IndexColumns.TITLE);
+            final int summaryIndex = cursor.getColumnIndex(IndexColumns.SUMMARY);
+            final int screenTitleIndex = cursor.getColumnIndex(IndexColumns.SCREENTITLE);
+            final int keywordsIndex = cursor.getColumnIndex(IndexColumns.KEYWORDS);
+            final int iconIndex = cursor.getColumnIndex(IndexColumns.ICON_RESOURCE);
+            final int fragmentIndex = cursor.getColumnIndex(IndexColumns.FRAGMENT);
+            final int controllerIndex = cursor.getColumnIndex(IndexColumns.CONTROLLER);
+            final int platformIndex = cursor.getColumnIndex(IndexColumns.PLATFORM_SLICE);
+            final int sliceTypeIndex = cursor.getColumnIndex(IndexColumns.SLICE_TYPE);
+
+            while (cursor.moveToNext()) {
+                try {
+                    sliceData.add(new SliceData.Builder()
+                            .setKey(cursor.getString(keyIndex))
+                            .setTitle(cursor.getString(titleIndex))
+                            .setSummary(cursor.getString(summaryIndex))
+                            .setScreenTitle(cursor.getString(screenTitleIndex))
+                            .setKeywords(cursor.getString(keywordsIndex))
+                            .setIcon(cursor.getInt(iconIndex))
+                            .setFragmentName(cursor.getString(fragmentIndex))
+                            .setPreferenceControllerClassName(cursor.getString(controllerIndex))
+                            .setPlatformDefined(cursor.getInt(platformIndex) == TRUE)
+                            .setSliceType(cursor.getInt(sliceTypeIndex))
+                            .build());
+                } catch (SliceData.InvalidSliceDataException e) {
+                    Log.w(TAG, "Skipping invalid slice row", e);
+                }
+            }
         }
 
+        return sliceData;
+    }
+
+    private SliceData buildSliceData(SliceData sliceData, Uri uri, boolean isIntentOnly) {
         return new SliceData.Builder()
-                .setKey(key)
-                .setTitle(title)
-                .setSummary(summary)
-                .setScreenTitle(screenTitle)
-                .setKeywords(keywords)
-                .setIcon(iconResource)
-                .setFragmentName(fragmentClassName)
-                .setPreferenceControllerClassName(controllerClassName)
+                .setKey(sliceData.getKey())
+                .setTitle(sliceData.getTitle())
+                .setSummary(sliceData.getSummary())
+                .setScreenTitle(sliceData.getScreenTitle())
+                .setKeywords(sliceData.getKeywords())
+                .setIcon(sliceData.getIconResource())
+                .setFragmentName(sliceData.getFragmentClassName())
+                .setPreferenceControllerClassName(sliceData.getPreferenceController())
                 .setUri(uri)
-                .setPlatformDefined(isPlatformDefined)
-                .setSliceType(sliceType)
+                .setPlatformDefined(sliceData.isPlatformDefined())
+                .setSliceType(isIntentOnly ? SliceData.SliceType.INTENT : sliceData.getSliceType())
                 .build();
     }
 
     private void verifyIndexing() {
         final long uidToken = Binder.clearCallingIdentity();
         try {
-            FeatureFactory.getFactory(
-                    mContext).getSlicesFeatureProvider().indexSliceData(mContext);
+            if (mHelper.isSliceDataIndexed()) {
+                return;
+            }
+            final SlicesFeatureProvider provider =
+                    FeatureFactory.getFactory(mContext).getSlicesFeatureProvider();
+            if (mHelper.hasSliceData()) {
+                // Serve the previous index while the changed fragments are refreshed.
+                provider.indexSliceDataAsync(mContext);
+            } else {
+                provider.indexSliceData(mContext);
+            }
         } finally {
             Binder.restoreCallingIdentity(uidToken);
         }
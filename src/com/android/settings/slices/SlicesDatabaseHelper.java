@@ -17,14 +17,18 @@
 package com.android.settings.slices;
 
 import android.content.Context;
-
+import android.content.SharedPreferences;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.os.Build;
 import androidx.annotation.VisibleForTesting;
+import android.util.ArrayMap;
 import android.util.Log;
 
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Defines the schema for the Slices database.
@@ -35,8 +39,9 @@ public class SlicesDatabaseHelper extends SQLiteOpenHelper {
 
     private static final String DATABASE_NAME = "slices_index.db";
     private static final String SHARED_PREFS_TAG = "slices_shared_prefs";
+    private static final String FRAGMENT_VERSIONS_PREFS_TAG = "slices_fragment_versions";
 
-    private static final int DATABASE_VERSION = 2;
+    private static final int DATABASE_VERSION = 3;
 
     public interface Tables {
         String TABLE_SLICES_INDEX = "slices_index";
@@ -121,6 +126,8 @@ public class SlicesDatabaseHelper extends SQLiteOpenHelper {
 
     private final Context mContext;
 
+    private final AtomicInteger mIndexGeneration = new AtomicInteger();
+
     private static SlicesDatabaseHelper sSingleton;
 
     public static synchronized SlicesDatabaseHelper getInstance(Context context) {
@@ -158,8 +165,13 @@ public class SlicesDatabaseHelper extends SQLiteOpenHelper {
                 .edit()
                 .clear()
                 .apply();
+        mContext.getSharedPreferences(FRAGMENT_VERSIONS_PREFS_TAG, Context.MODE_PRIVATE)
+                .edit()
+                .clear()
+                .apply();
         dropTables(db);
         createDatabases(db);
+        notifySliceDataChanged();
     }
 
     /**
@@ -167,10 +179,67 @@ public class SlicesDatabaseHelper extends SQLiteOpenHelper {
      * a full index of the TABLE_SLICES_INDEX.
      */
     public void setIndexedState() {
+        // Only the current build and locale describe the data, so forget any earlier ones.
+        mContext.getSharedPreferences(SHARED_PREFS_TAG, Context.MODE_PRIVATE)
+                .edit()
+                .clear()
+                .apply();
         setBuildIndexed();
         setLocaleIndexed();
     }
 
+    /**
+     * @return a counter which changes whenever the contents of the slices table change, so
+     * in-memory copies of it know when to reload.
+     */
+    public int getIndexGeneration() {
+        return mIndexGeneration.get();
+    }
+
+    /**
+     * Invalidates in-memory copies of the slices table. Call after committing a change to it.
+     */
+    public void notifySliceDataChanged() {
+        mIndexGeneration.incrementAndGet();
+    }
+
+    /**
+     * @return {@code true} if the database holds slice data, even if that data is out of date.
+     */
+    public boolean hasSliceData() {
+        return DatabaseUtils.queryNumEntries(getReadableDatabase(),
+                Tables.TABLE_SLICES_INDEX) > 0;
+    }
+
+    /**
+     * @return a map from fragment class name to the version of its indexed slice data.
+     */
+    Map<String, String> getIndexedFragmentVersions() {
+        final Map<String, String> versions = new ArrayMap<>();
+        final Map<String, ?> prefs = mContext.getSharedPreferences(FRAGMENT_VERSIONS_PREFS_TAG,
+                Context.MODE_PRIVATE).getAll();
+        for (Map.Entry<String, ?> entry : prefs.entrySet()) {
+            versions.put(entry.getKey(), String.valueOf(entry.getValue()));
+        }
+        return versions;
+    }
+
+    /**
+     * Replaces the recorded versions of indexed fragments with {@param versions}.
+     */
+    void setIndexedFragmentVersions(Map<String, String> versions) {
+        final SharedPreferences.Editor editor = mContext.getSharedPreferences(
+                FRAGMENT_VERSIONS_PREFS_TAG, Context.MODE_PRIVATE).edit().clear();
+        for (Map.Entry<String, String> entry : versions.entrySet()) {
+            if (entry.getKey() == null) {
+                // Rows without a fragment are rewritten on every index.
+                continue;
+            }
+            editor.putString(entry.getKey(), entry.getValue());
+        }
+        editor.apply();
+    }
+
     /**
      * Indicates if the indexed slice data reflects the current state of the phone.
      *
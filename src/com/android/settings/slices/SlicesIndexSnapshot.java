@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.settings.slices;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.provider.SettingsSlicesContract;
+import android.util.ArrayMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable in-memory copy of {@link SlicesDatabaseHelper.Tables#TABLE_SLICES_INDEX}.
+ *
+ * <p>The snapshot holds every indexed {@link SliceData} by key along with the platform and OEM
+ * keys and their action {@link Uri uris}, so enumerating and binding slices does not need a
+ * database query per call. {@link SlicesDatabaseAccessor} replaces it whenever the index changes.
+ */
+class SlicesIndexSnapshot {
+
+    private final Map<String, SliceData> mSliceDataByKey;
+    private final Map<String, List<String>> mKeysByFragment;
+    private final List<String> mPlatformKeys;
+    private final List<String> mOemKeys;
+    private final List<Uri> mPlatformUris;
+    private final List<Uri> mOemUris;
+
+    SlicesIndexSnapshot(List<SliceData> sliceData) {
+        final Map<String, SliceData> sliceDataByKey = new ArrayMap<>(sliceData.size());
+        final List<String> platformKeys = new ArrayList<>();
+        final List<String> oemKeys = new ArrayList<>();
+        final Map<String, List<String>> keysByFragment = new ArrayMap<>();
+
+        for (SliceData data : sliceData) {
+            sliceDataByKey.put(data.getKey(), data);
+            List<String> fragmentKeys = keysByFragment.get(data.getFragmentClassName());
+            if (fragmentKeys == null) {
+                fragmentKeys = new ArrayList<>();
+                keysByFragment.put(data.getFragmentClassName(), fragmentKeys);
+            }
+            fragmentKeys.add(data.getKey());
+            if (data.isPlatformDefined()) {
+                platformKeys.add(data.getKey());
+            } else {
+                oemKeys.add(data.getKey());
+            }
+        }
+
+        mSliceDataByKey = sliceDataByKey;
+        mKeysByFragment = keysByFragment;
+        mPlatformKeys = Collections.unmodifiableList(platformKeys);
+        mOemKeys = Collections.unmodifiableList(oemKeys);
+        mPlatformUris = Collections.unmodifiableList(
+                buildUrisFromKeys(platformKeys, SettingsSlicesContract.AUTHORITY));
+        mOemUris = Collections.unmodifiableList(
+                buildUrisFromKeys(oemKeys, SettingsSliceProvider.SLICE_AUTHORITY));
+    }
+
+    /**
+     * @return the indexed {@link SliceData} for {@param key}, or {@code null} if it is unknown.
+     */
+    SliceData getSliceData(String key) {
+        return mSliceDataByKey.get(key);
+    }
+
+    /**
+     * @return the keys matching {@param isPlatformSlice}.
+     */
+    List<String> getSliceKeys(boolean isPlatformSlice) {
+        return isPlatformSlice ? mPlatformKeys : mOemKeys;
+    }
+
+    /**
+     * @return the action {@link Uri uris} of the keys matching {@param isPlatformSlice}, under
+     * the authority which owns them.
+     */
+    List<Uri> getSliceUris(boolean isPlatformSlice) {
+        return isPlatformSlice ? mPlatformUris : mOemUris;
+    }
+
+    /**
+     * @return the keys of every slice on the same screen as {@param key}, including itself.
+     */
+    List<String> getSiblingKeys(String key) {
+        final SliceData data = mSliceDataByKey.get(key);
+        if (data == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(mKeysByFragment.get(data.getFragmentClassName()));
+    }
+
+    int size() {
+        return mSliceDataByKey.size();
+    }
+
+    /**
+     * @return a list of authority/action/$KEY$ {@link Uri uris} for each of {@param keys}.
+     */
+    static List<Uri> buildUrisFromKeys(List<String> keys, String authority) {
+        final List<Uri> uris = new ArrayList<>(keys.size());
+
+        final Uri.Builder builder = new Uri.Builder()
+                .scheme(ContentResolver.SCHEME_CONTENT)
+                .authority(authority)
+                .appendPath(SettingsSlicesContract.PATH_SETTING_ACTION);
+
+        final String newUriPathPrefix = SettingsSlicesContract.PATH_SETTING_ACTION + "/";
+        for (String key : keys) {
+            builder.path(newUriPathPrefix + key);
+            uris.add(builder.build());
+        }
+
+        return uris;
+    }
+}
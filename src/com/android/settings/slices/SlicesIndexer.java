@@ -19,7 +19,11 @@ package com.android.settings.slices;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
 import androidx.annotation.VisibleForTesting;
+import android.text.TextUtils;
+import android.util.ArrayMap;
+import android.util.ArraySet;
 import android.util.Log;
 
 import com.android.settings.dashboard.DashboardFragment;
@@ -29,7 +33,13 @@ import com.android.settings.overlay.FeatureFactory;
 import com.android.settings.slices.SlicesDatabaseHelper.IndexColumns;
 import com.android.settings.slices.SlicesDatabaseHelper.Tables;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 /**
  * Manages the conversion of {@link DashboardFragment} and {@link BasePreferenceController} to
@@ -43,6 +53,10 @@ class SlicesIndexer implements Runnable {
 
     private SlicesDatabaseHelper mHelper;
 
+    private int mLastChangedFragmentCount;
+
+    private int mLastRowsWritten;
+
     public SlicesIndexer(Context context) {
         mContext = context;
         mHelper = SlicesDatabaseHelper.getInstance(mContext);
@@ -58,33 +72,83 @@ class SlicesIndexer implements Runnable {
 
     /**
      * Synchronously takes data obtained from {@link SliceDataConverter} and indexes it into a
-     * SQLite database
+     * SQLite database.
+     *
+     * Only the rows of fragments whose slice data changed since the last index are rewritten, so
+     * the existing rows stay readable while a refresh is in progress.
      */
-    protected void indexSliceData() {
+    protected synchronized void indexSliceData() {
         if (mHelper.isSliceDataIndexed()) {
             Log.d(TAG, "Slices already indexed - returning.");
             return;
         }
 
-        SQLiteDatabase database = mHelper.getWritableDatabase();
+        final long startTime = SystemClock.elapsedRealtime();
+        final Map<String, List<SliceData>> fragmentData = groupByFragment(getSliceData());
+        final long conversionTime = SystemClock.elapsedRealtime() - startTime;
+
+        final Map<String, String> indexedVersions = mHelper.getIndexedFragmentVersions();
+        final Map<String, String> newVersions = new ArrayMap<>();
+        final List<SliceData> changedData = new ArrayList<>();
+        final Set<String> staleFragments = new ArraySet<>(indexedVersions.keySet());
+        staleFragments.removeAll(fragmentData.keySet());
+        final int removedCount = staleFragments.size();
+
+        for (Map.Entry<String, List<SliceData>> entry : fragmentData.entrySet()) {
+            final String fragment = entry.getKey();
+            final String version = computeFragmentVersion(entry.getValue());
+            newVersions.put(fragment, version);
+            if (!TextUtils.equals(version, indexedVersions.get(fragment))) {
+                staleFragments.add(fragment);
+                changedData.addAll(entry.getValue());
+            }
+        }
 
+        final SQLiteDatabase database = mHelper.getWritableDatabase();
         try {
-            long startTime = System.currentTimeMillis();
             database.beginTransaction();
 
-            mHelper.reconstruct(mHelper.getWritableDatabase());
-            List<SliceData> indexData = getSliceData();
-            insertSliceData(database, indexData);
-
-            mHelper.setIndexedState();
+            if (indexedVersions.isEmpty()) {
+                // Nothing is known about the rows already present, so replace all of them.
+                database.delete(Tables.TABLE_SLICES_INDEX, null /* whereClause */,
+                        null /* whereArgs */);
+            } else {
+                deleteFragments(database, staleFragments);
+            }
+            insertSliceData(database, changedData);
 
-            // TODO (b/71503044) Log indexing time.
-            Log.d(TAG,
-                    "Indexing slices database took: " + (System.currentTimeMillis() - startTime));
             database.setTransactionSuccessful();
         } finally {
             database.endTransaction();
         }
+        // Only reached once the rows are committed, so a failed index is retried in full.
+        mHelper.setIndexedFragmentVersions(newVersions);
+        mHelper.setIndexedState();
+        mHelper.notifySliceDataChanged();
+
+        mLastChangedFragmentCount = staleFragments.size() - removedCount;
+        mLastRowsWritten = changedData.size();
+        // TODO (b/71503044) Log indexing time.
+        Log.d(TAG, "Indexing slices database took: " + (SystemClock.elapsedRealtime() - startTime)
+                + "ms (conversion " + conversionTime + "ms), fragments: " + fragmentData.size()
+                + " total, " + mLastChangedFragmentCount + " changed, " + removedCount
+                + " removed, rows written: " + mLastRowsWritten);
+    }
+
+    /**
+     * @return the number of fragments whose rows were rewritten by the last index.
+     */
+    @VisibleForTesting
+    int getLastChangedFragmentCount() {
+        return mLastChangedFragmentCount;
+    }
+
+    /**
+     * @return the number of rows written by the last index.
+     */
+    @VisibleForTesting
+    int getLastRowsWritten() {
+        return mLastRowsWritten;
     }
 
     @VisibleForTesting
@@ -116,4 +180,49 @@ class SlicesIndexer implements Runnable {
                     values);
         }
     }
-}
\ No newline at end of file
+
+    private static Map<String, List<SliceData>> groupByFragment(List<SliceData> sliceData) {
+        final Map<String, List<SliceData>> fragmentData = new ArrayMap<>();
+        for (SliceData data : sliceData) {
+            final String fragment = data.getFragmentClassName();
+            List<SliceData> rows = fragmentData.get(fragment);
+            if (rows == null) {
+                rows = new ArrayList<>();
+                fragmentData.put(fragment, rows);
+            }
+            rows.add(data);
+        }
+        return fragmentData;
+    }
+
+    /**
+     * @return a version string which changes whenever any indexed column of {@param rows} does.
+     */
+    @VisibleForTesting
+    static String computeFragmentVersion(List<SliceData> rows) {
+        final List<SliceData> sortedRows = new ArrayList<>(rows);
+        Collections.sort(sortedRows, Comparator.comparing(SliceData::getKey,
+                Comparator.nullsFirst(Comparator.naturalOrder())));
+
+        long version = sortedRows.size();
+        for (SliceData data : sortedRows) {
+            version = 31 * version + Objects.hash(data.getKey(), data.getTitle(),
+                    data.getSummary(), String.valueOf(data.getScreenTitle()), data.getKeywords(),
+                    data.getIconResource(), data.getPreferenceController(),
+                    data.isPlatformDefined(), data.getSliceType());
+        }
+        return Long.toHexString(version);
+    }
+
+    private static void deleteFragments(SQLiteDatabase database, Set<String> fragments) {
+        for (String fragment : fragments) {
+            if (fragment == null) {
+                database.delete(Tables.TABLE_SLICES_INDEX, IndexColumns.FRAGMENT + " IS NULL",
+                        null /* whereArgs */);
+            } else {
+                database.delete(Tables.TABLE_SLICES_INDEX, IndexColumns.FRAGMENT + " = ?",
+                        new String[]{fragment});
+            }
+        }
+    }
+}
@@ -61,6 +61,12 @@ public class SystemUpdatePreferenceController extends BasePreferenceController {
                 : UNSUPPORTED_ON_DEVICE;
     }
 
+    @Override
+    protected boolean isAvailabilityCacheable() {
+        // Depends only on a config resource and whether this is the admin user.
+        return true;
+    }
+
     @Override
     public void displayPreference(PreferenceScreen screen) {
         super.displayPreference(screen);
@@ -17,27 +17,40 @@
 package com.android.settings;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.nullable;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import android.app.ActivityManager;
 import android.app.FragmentManager;
 import android.app.FragmentTransaction;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
 import android.os.Bundle;
+import android.os.UserManager;
 import android.provider.Settings.Global;
 import android.view.View;
 
+import com.android.settings.testutils.FakeFeatureFactory;
 import com.android.settings.testutils.SettingsRobolectricTestRunner;
 import com.android.settings.testutils.shadow.SettingsShadowResources;
 import com.android.settings.testutils.shadow.SettingsShadowResourcesImpl;
+import com.android.settings.testutils.shadow.ShadowUtils;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -57,6 +70,10 @@ public class SettingsActivityTest {
     private ActivityManager.TaskDescription mTaskDescription;
     @Mock
     private Bitmap mBitmap;
+    @Mock
+    private PackageManager mPackageManager;
+    @Mock
+    private UserManager mUserManager;
     private SettingsActivity mActivity;
     private Context mContext;
 
@@ -67,6 +84,8 @@ public class SettingsActivityTest {
         mContext = RuntimeEnvironment.application;
         mActivity = spy(new SettingsActivity());
         doReturn(mBitmap).when(mActivity).getBitmapFromXmlResource(anyInt());
+        doReturn(mContext.getResources()).when(mActivity).getResources();
+        SettingsActivity.clearTaskDescriptionIcon();
     }
 
     @Test
@@ -114,4 +133,59 @@ public class SettingsActivityTest {
 
         verify(mTaskDescription).setIcon(nullable(Bitmap.class));
     }
+
+    @Test
+    public void setTaskDescription_calledTwice_iconRasterizedOnce() {
+        mActivity.setTaskDescription(mTaskDescription);
+        mActivity.setTaskDescription(mTaskDescription);
+
+        verify(mActivity).getBitmapFromXmlResource(anyInt());
+        verify(mTaskDescription, times(2)).setIcon(mBitmap);
+    }
+
+    @Test
+    @Config(shadows = ShadowUtils.class)
+    public void doUpdateTilesList_inputsUnchanged_doesNotTouchComponents() throws Exception {
+        final SettingsActivity activity = createActivityForTileUpdate();
+        activity.doUpdateTilesList();
+        verify(mPackageManager, atLeastOnce())
+                .setComponentEnabledSetting(any(ComponentName.class), anyInt(), anyInt());
+        clearInvocations(mPackageManager);
+
+        activity.doUpdateTilesList();
+
+        verify(mPackageManager, never())
+                .setComponentEnabledSetting(any(ComponentName.class), anyInt(), anyInt());
+    }
+
+    @Test
+    @Config(shadows = ShadowUtils.class)
+    public void doUpdateTilesList_oneInputChanged_onlyTouchesItsComponent() throws Exception {
+        final SettingsActivity activity = createActivityForTileUpdate();
+        activity.doUpdateTilesList();
+        clearInvocations(mPackageManager);
+
+        when(mPackageManager.hasSystemFeature(PackageManager.FEATURE_WIFI)).thenReturn(true);
+        activity.doUpdateTilesList();
+
+        final ComponentName wifiComponent = new ComponentName(activity.getPackageName(),
+                Settings.WifiSettingsActivity.class.getName());
+        verify(mPackageManager).setComponentEnabledSetting(eq(wifiComponent),
+                eq(PackageManager.COMPONENT_ENABLED_STATE_ENABLED), anyInt());
+        verify(mPackageManager, times(1))
+                .setComponentEnabledSetting(any(ComponentName.class), anyInt(), anyInt());
+    }
+
+    private SettingsActivity createActivityForTileUpdate() throws Exception {
+        FakeFeatureFactory.setupForTest();
+        final SettingsActivity activity =
+                spy(Robolectric.buildActivity(SettingsActivity.class).get());
+        doReturn(mPackageManager).when(activity).getPackageManager();
+        doReturn(mUserManager).when(activity).getSystemService(Context.USER_SERVICE);
+        doNothing().when(activity).updateCategories();
+        when(mUserManager.isAdminUser()).thenReturn(true);
+        when(mPackageManager.getPackageInfo(nullable(String.class), anyInt()))
+                .thenReturn(new PackageInfo());
+        return activity;
+    }
 }
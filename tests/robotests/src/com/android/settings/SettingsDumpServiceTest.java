@@ -31,6 +31,7 @@ import android.content.pm.ResolveInfo;
 import androidx.annotation.NonNull;
 
 import com.android.settings.fuelgauge.batterytip.AnomalyConfigJobService;
+import com.android.settings.location.SettingsInjector;
 import com.android.settings.testutils.SettingsRobolectricTestRunner;
 
 import org.json.JSONException;
@@ -100,6 +101,16 @@ public class SettingsDumpServiceTest {
                 ANOMALY_VERSION);
     }
 
+    @Test
+    public void testDumpLocationInjectedSettings_returnsLatencyHistograms() throws JSONException {
+        final JSONObject jsonObject = mTestService.dumpLocationInjectedSettings();
+
+        assertThat(jsonObject.getJSONArray("latency_buckets_ms").length()).isEqualTo(
+                SettingsInjector.getLatencyBucketsMillis().length);
+        assertThat(jsonObject.getJSONObject("latency_histograms").length()).isEqualTo(
+                SettingsInjector.getLatencyHistograms().size());
+    }
+
     @Test
     public void testDump_ReturnJsonObject() throws JSONException {
         mResolveInfo.activityInfo = new ActivityInfo();
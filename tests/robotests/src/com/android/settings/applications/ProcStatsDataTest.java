@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.internal.app.procstats.ProcessStats;
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class ProcStatsDataTest {
+
+    private static final long DURATION = 3 * 60 * 60 * 1000;
+    private static final long OTHER_DURATION = 24 * 60 * 60 * 1000;
+    private static final long LOAD_TIME = 1000;
+
+    private ProcessStats mStats;
+
+    @Before
+    public void setUp() {
+        ProcStatsData.clearCachedStats();
+        mStats = new ProcessStats(false /* running */);
+    }
+
+    @After
+    public void tearDown() {
+        ProcStatsData.clearCachedStats();
+    }
+
+    @Test
+    public void getCachedStats_withinMaxAge_returnsSameStats() {
+        ProcStatsData.putCachedStats(DURATION, mStats, LOAD_TIME);
+
+        assertThat(ProcStatsData.getCachedStats(DURATION,
+                LOAD_TIME + ProcStatsData.STATS_MAX_AGE_MS - 1)).isSameAs(mStats);
+    }
+
+    @Test
+    public void getCachedStats_otherDuration_returnsNull() {
+        ProcStatsData.putCachedStats(DURATION, mStats, LOAD_TIME);
+
+        assertThat(ProcStatsData.getCachedStats(OTHER_DURATION, LOAD_TIME)).isNull();
+    }
+
+    @Test
+    public void getCachedStats_afterMaxAge_dropsEveryExpiredSnapshot() {
+        ProcStatsData.putCachedStats(DURATION, mStats, LOAD_TIME);
+        ProcStatsData.putCachedStats(OTHER_DURATION, new ProcessStats(false /* running */),
+                LOAD_TIME);
+
+        assertThat(ProcStatsData.getCachedStats(DURATION,
+                LOAD_TIME + ProcStatsData.STATS_MAX_AGE_MS)).isNull();
+        assertThat(ProcStatsData.getCachedStatsCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void copyPackageEntry_updatingCopy_doesNotChangeOriginal() {
+        final ProcStatsPackageEntry original = new ProcStatsPackageEntry("package", 100);
+        original.mRunWeight = 1.5;
+        original.mUiLabel = "label";
+
+        final ProcStatsPackageEntry copy = new ProcStatsPackageEntry(original);
+        copy.mRunWeight = 3;
+        copy.mUiLabel = "other label";
+
+        assertThat(copy.mPackage).isEqualTo("package");
+        assertThat(copy.getRunWeight()).isEqualTo(3);
+        assertThat(original.mRunWeight).isEqualTo(1.5);
+        assertThat(original.mUiLabel).isEqualTo("label");
+        assertThat(copy.getEntries()).isNotSameAs(original.getEntries());
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.settings.core;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.provider.Settings;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadow.api.Shadow;
+import org.robolectric.shadows.ShadowApplication;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class AvailabilityCacheTest {
+
+    private static final Uri SETTING_URI = Settings.Global.getUriFor("fake_setting");
+
+    private Context mContext;
+    private AvailabilityCache mCache;
+    private CountingController mController;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mCache = new AvailabilityCache(mContext);
+        mController = new CountingController(mContext);
+    }
+
+    @Test
+    public void getAvailabilityStatus_calledTwice_computedOnce() {
+        assertThat(mCache.getAvailabilityStatus(mController))
+                .isEqualTo(BasePreferenceController.AVAILABLE);
+        assertThat(mCache.getAvailabilityStatus(mController))
+                .isEqualTo(BasePreferenceController.AVAILABLE);
+
+        assertThat(mController.mCount).isEqualTo(1);
+    }
+
+    @Test
+    public void getAvailabilityStatus_afterUserSwitch_recomputed() {
+        mCache.getAvailabilityStatus(mController);
+
+        mContext.sendBroadcast(new Intent(Intent.ACTION_USER_SWITCHED));
+        mCache.getAvailabilityStatus(mController);
+
+        assertThat(mController.mCount).isEqualTo(2);
+    }
+
+    @Test
+    public void getAvailabilityStatus_afterDependentUriChange_recomputed() {
+        mCache.getAvailabilityStatus(mController);
+
+        mCache.invalidate(SETTING_URI);
+        mCache.getAvailabilityStatus(mController);
+
+        assertThat(mController.mCount).isEqualTo(2);
+    }
+
+    @Test
+    public void getAvailabilityStatus_afterUnrelatedUriChange_notRecomputed() {
+        mCache.getAvailabilityStatus(mController);
+
+        mCache.invalidate(Settings.Global.getUriFor("other_setting"));
+        mCache.getAvailabilityStatus(mController);
+
+        assertThat(mController.mCount).isEqualTo(1);
+    }
+
+    @Test
+    public void isAvailable_notCacheable_alwaysRecomputed() {
+        mController.mCacheable = false;
+
+        mController.isAvailable();
+        mController.isAvailable();
+
+        assertThat(mController.mCount).isEqualTo(2);
+    }
+
+    @Test
+    public void release_stopsListeningForInvalidations() {
+        mCache.getAvailabilityStatus(mController);
+
+        mCache.release();
+
+        final ShadowContentResolver shadowContentResolver =
+                Shadow.extract(mContext.getContentResolver());
+        assertThat(shadowContentResolver.getContentObservers(SETTING_URI)).isEmpty();
+        for (ShadowApplication.Wrapper wrapper :
+                ShadowApplication.getInstance().getRegisteredReceivers()) {
+            assertThat(wrapper.getBroadcastReceiver()).isNotSameAs(mCache.mReceiver);
+        }
+        assertThat(mCache.size()).isEqualTo(0);
+    }
+
+    private static class CountingController extends BasePreferenceController {
+
+        private int mCount;
+        private boolean mCacheable = true;
+
+        CountingController(Context context) {
+            super(context, "counting_key");
+        }
+
+        @Override
+        public int getAvailabilityStatus() {
+            mCount++;
+            return AVAILABLE;
+        }
+
+        @Override
+        protected boolean isAvailabilityCacheable() {
+            return mCacheable;
+        }
+
+        @Override
+        protected List<Uri> getAvailabilityUris() {
+            return Collections.singletonList(SETTING_URI);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.settings.core;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+
+import com.android.settings.display.AutoBrightnessPreferenceController;
+import com.android.settings.slices.FakePreferenceController;
+import com.android.settings.system.AdditionalSystemUpdatePreferenceController;
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class PreferenceControllerFactoryTest {
+
+    private static final String KEY = "key";
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+    }
+
+    @Test
+    public void createController_generatedKeyConstructor_usesKey() {
+        final BasePreferenceController controller = PreferenceControllerFactory.createController(
+                mContext, AutoBrightnessPreferenceController.class.getName(), KEY);
+
+        assertThat(controller).isInstanceOf(AutoBrightnessPreferenceController.class);
+        assertThat(controller.getPreferenceKey()).isEqualTo(KEY);
+    }
+
+    @Test
+    public void createController_generatedContextConstructor_ignoresKey() {
+        final BasePreferenceController controller = PreferenceControllerFactory.createController(
+                mContext, AdditionalSystemUpdatePreferenceController.class.getName(), KEY);
+
+        assertThat(controller).isInstanceOf(AdditionalSystemUpdatePreferenceController.class);
+        assertThat(controller.getPreferenceKey()).isNotEqualTo(KEY);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void createController_generatedKeyConstructorWithoutKey_shouldCrash() {
+        PreferenceControllerFactory.createController(
+                mContext, AutoBrightnessPreferenceController.class.getName(), null /* key */);
+    }
+
+    @Test
+    public void createController_notInTable_resolvedOnce() {
+        final String name = FakePreferenceController.class.getName();
+        assertThat(PreferenceControllerFactory.hasGeneratedCreator(name)).isFalse();
+
+        final BasePreferenceController controller =
+                PreferenceControllerFactory.createController(mContext, name, KEY);
+
+        assertThat(controller).isInstanceOf(FakePreferenceController.class);
+        assertThat(controller.getPreferenceKey()).isEqualTo(KEY);
+        assertThat(PreferenceControllerFactory.getCreator(name))
+                .isSameAs(PreferenceControllerFactory.getCreator(name));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void createController_badConstructor_shouldCrash() {
+        PreferenceControllerFactory.createController(
+                mContext, BadPreferenceController.class.getName(), KEY);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void createController_unknownClass_shouldCrash() {
+        PreferenceControllerFactory.createController(mContext, "not.a.Controller", KEY);
+    }
+}
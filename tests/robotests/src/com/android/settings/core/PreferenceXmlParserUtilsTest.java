@@ -16,11 +16,13 @@
 
 package com.android.settings.core;
 
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_KEY;
 import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_KEYWORDS;
 
 import static com.google.common.truth.Truth.assertThat;
 
 import android.content.Context;
+import android.content.res.Configuration;
 import android.content.res.XmlResourceParser;
 import android.os.Bundle;
 import android.text.TextUtils;
@@ -41,6 +43,7 @@ import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * These tests use a series of preferences that have specific attributes which are sometimes
@@ -59,6 +62,43 @@ public class PreferenceXmlParserUtilsTest {
         mContext = RuntimeEnvironment.application;
     }
 
+    @Test
+    public void extractMetadata_calledTwice_returnsIndependentCopies()
+            throws IOException, XmlPullParserException {
+        final List<Bundle> first = PreferenceXmlParserUtils.extractMetadata(mContext,
+                R.xml.display_settings, MetadataFlag.FLAG_NEED_KEY);
+        first.get(0).putString(METADATA_KEY, "mutated");
+
+        final List<Bundle> second = PreferenceXmlParserUtils.extractMetadata(mContext,
+                R.xml.display_settings, MetadataFlag.FLAG_NEED_KEY);
+
+        assertThat(second).hasSize(first.size());
+        assertThat(second.get(0).getString(METADATA_KEY)).isNotEqualTo("mutated");
+    }
+
+    @Test
+    public void getConfigurationKey_onlyWindowSizeDiffers_sameKey() {
+        final Configuration configuration = new Configuration(
+                mContext.getResources().getConfiguration());
+        final Configuration resized = new Configuration(configuration);
+        resized.screenWidthDp = configuration.screenWidthDp / 2;
+
+        assertThat(PreferenceXmlParserUtils.getConfigurationKey(resized))
+                .isEqualTo(PreferenceXmlParserUtils.getConfigurationKey(configuration));
+    }
+
+    @Test
+    public void getConfigurationKey_localeDiffers_differentKey() {
+        final Configuration configuration = new Configuration(
+                mContext.getResources().getConfiguration());
+        configuration.setLocale(Locale.US);
+        final Configuration french = new Configuration(configuration);
+        french.setLocale(Locale.FRANCE);
+
+        assertThat(PreferenceXmlParserUtils.getConfigurationKey(french))
+                .isNotEqualTo(PreferenceXmlParserUtils.getConfigurationKey(configuration));
+    }
+
     @Test
     public void testDataTitleValid_ReturnsPreferenceTitle() {
         XmlResourceParser parser = getChildByType(R.xml.display_settings,
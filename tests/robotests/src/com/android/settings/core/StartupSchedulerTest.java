@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.settings.core;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class StartupSchedulerTest {
+
+    private StartupScheduler mScheduler;
+    private List<String> mRan;
+
+    @Before
+    public void setUp() {
+        mScheduler = new StartupScheduler("StartupSchedulerTest");
+        mRan = new ArrayList<>();
+    }
+
+    @Test
+    public void schedule_critical_runsImmediately() {
+        mScheduler.schedule(StartupScheduler.PHASE_CRITICAL, "critical", () -> mRan.add("a"));
+
+        assertThat(mRan).containsExactly("a");
+        assertThat(mScheduler.getEntries()).hasSize(1);
+        assertThat(mScheduler.getEntries().get(0).getPhaseName()).isEqualTo("critical");
+    }
+
+    @Test
+    public void schedule_postFirstFrame_heldUntilFirstFrame() {
+        mScheduler.schedule(StartupScheduler.PHASE_POST_FIRST_FRAME, "first",
+                () -> mRan.add("first"));
+        mScheduler.schedule(StartupScheduler.PHASE_POST_FIRST_FRAME, "second",
+                () -> mRan.add("second"));
+        assertThat(mRan).isEmpty();
+
+        mScheduler.onFirstFrameDrawn();
+
+        assertThat(mRan).containsExactly("first", "second").inOrder();
+    }
+
+    @Test
+    public void schedule_postFirstFrameAfterFirstFrame_runsImmediately() {
+        mScheduler.onFirstFrameDrawn();
+
+        mScheduler.schedule(StartupScheduler.PHASE_POST_FIRST_FRAME, "late",
+                () -> mRan.add("late"));
+
+        assertThat(mRan).containsExactly("late");
+    }
+
+    @Test
+    public void onFirstFrameDrawn_noIdleWork_publishesTrace() {
+        mScheduler.schedule(StartupScheduler.PHASE_CRITICAL, "critical", () -> mRan.add("a"));
+        mScheduler.schedule(StartupScheduler.PHASE_POST_FIRST_FRAME, "post",
+                () -> mRan.add("b"));
+
+        mScheduler.onFirstFrameDrawn();
+
+        final StartupScheduler.Trace trace = StartupScheduler.getLastTrace();
+        assertThat(trace.tag).isEqualTo("StartupSchedulerTest");
+        assertThat(trace.firstFrameMillis).isAtLeast(0L);
+        assertThat(trace.entries).hasSize(2);
+        assertThat(trace.entries.get(1).name).isEqualTo("post");
+        assertThat(trace.entries.get(1).getPhaseName()).isEqualTo("post_first_frame");
+    }
+
+    @Test
+    public void schedule_afterTracePublished_runsWithoutChangingTrace() {
+        mScheduler.schedule(StartupScheduler.PHASE_CRITICAL, "critical", () -> mRan.add("a"));
+        mScheduler.onFirstFrameDrawn();
+        final StartupScheduler.Trace trace = StartupScheduler.getLastTrace();
+
+        mScheduler.schedule(StartupScheduler.PHASE_CRITICAL, "resume", () -> mRan.add("b"));
+        mScheduler.schedule(StartupScheduler.PHASE_POST_FIRST_FRAME, "resume_post",
+                () -> mRan.add("c"));
+
+        assertThat(mRan).containsExactly("a", "b", "c").inOrder();
+        assertThat(StartupScheduler.getLastTrace()).isSameAs(trace);
+        assertThat(trace.entries).hasSize(1);
+        assertThat(mScheduler.getEntries()).isEmpty();
+    }
+
+    @Test
+    public void cancel_dropsPendingWork() {
+        mScheduler.schedule(StartupScheduler.PHASE_POST_FIRST_FRAME, "post",
+                () -> mRan.add("post"));
+
+        mScheduler.cancel();
+        mScheduler.onFirstFrameDrawn();
+
+        assertThat(mRan).isEmpty();
+    }
+}
@@ -53,6 +53,10 @@ public class XmlControllerAttributeTest {
     private static final String BAD_CLASSNAME_ERROR =
             "The following controllers set in the XML did not have valid class names:\n";
 
+    private static final String NOT_IN_FACTORY_TABLE_ERROR =
+            "Controllers added in XML need an entry in PreferenceControllerFactoryTable"
+                    + "\nThese controllers are missing:\n";
+
     Context mContext;
     SearchFeatureProvider mSearchProvider;
 
@@ -72,6 +76,7 @@ public class XmlControllerAttributeTest {
         Set<String> invalidConstructors = new HashSet<>();
         Set<String> invalidClassHierarchy = new HashSet<>();
         Set<String> badClassNameControllers = new HashSet<>();
+        Set<String> notInFactoryTable = new HashSet<>();
 
         for (int resId : xmlSet) {
             xmlControllers.addAll(getXmlControllers(resId));
@@ -95,6 +100,10 @@ public class XmlControllerAttributeTest {
             if (!isBasePreferenceController(clazz)) {
                 invalidClassHierarchy.add(controllerClassName);
             }
+
+            if (!PreferenceControllerFactory.hasGeneratedCreator(controllerClassName)) {
+                notInFactoryTable.add(controllerClassName);
+            }
         }
 
         final String invalidConstructorError = buildErrorMessage(NO_VALID_CONSTRUCTOR_ERROR,
@@ -103,10 +112,13 @@ public class XmlControllerAttributeTest {
                 invalidClassHierarchy);
         final String badClassNameError = buildErrorMessage(BAD_CLASSNAME_ERROR,
                 badClassNameControllers);
+        final String notInFactoryTableError = buildErrorMessage(NOT_IN_FACTORY_TABLE_ERROR,
+                notInFactoryTable);
 
         assertWithMessage(invalidConstructorError).that(invalidConstructors).isEmpty();
         assertWithMessage(invalidClassHierarchyError).that(invalidClassHierarchy).isEmpty();
         assertWithMessage(badClassNameError).that(badClassNameControllers).isEmpty();
+        assertWithMessage(notInFactoryTableError).that(notInFactoryTable).isEmpty();
     }
 
     private Set<Integer> getIndexableXml() {
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.settings.core.gateway;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.settings.Settings;
+import com.android.settings.applications.manageapplications.ManageApplications;
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class SettingsGatewayIndexTest {
+
+    @Test
+    public void isEntryFragment_everyEntryFragment_isIndexed() {
+        for (String fragment : SettingsGateway.ENTRY_FRAGMENTS) {
+            assertThat(SettingsGatewayIndex.isEntryFragment(fragment)).isTrue();
+        }
+    }
+
+    @Test
+    public void isEntryFragment_unknownOrNull_returnsFalse() {
+        assertThat(SettingsGatewayIndex.isEntryFragment("com.example.NotAFragment")).isFalse();
+        assertThat(SettingsGatewayIndex.isEntryFragment(null)).isFalse();
+    }
+
+    @Test
+    public void isAllowedForRestricted_matchesSettingsForRestricted() {
+        for (String className : SettingsGateway.SETTINGS_FOR_RESTRICTED) {
+            assertThat(SettingsGatewayIndex.isAllowedForRestricted(className)).isTrue();
+        }
+        assertThat(SettingsGatewayIndex.isAllowedForRestricted(
+                Settings.DevelopmentSettingsDashboardActivity.class.getName())).isFalse();
+    }
+
+    @Test
+    public void resolveDestination_legacyName_returnsManageApplications() {
+        assertThat(SettingsGatewayIndex.resolveDestination("com.android.settings.RunningServices"))
+                .isEqualTo(ManageApplications.class.getName());
+        assertThat(SettingsGatewayIndex.resolveDestination(
+                "com.android.settings.applications.StorageUse"))
+                .isEqualTo(ManageApplications.class.getName());
+    }
+
+    @Test
+    public void resolveDestination_otherName_returnsSameName() {
+        final String name = Settings.WifiSettingsActivity.class.getName();
+
+        assertThat(SettingsGatewayIndex.resolveDestination(name)).isEqualTo(name);
+    }
+}
@@ -97,6 +97,7 @@ public class DashboardFeatureProviderImplTest {
             .thenReturn(new ResolveInfo());
         mFeatureFactory = FakeFeatureFactory.setupForTest();
         mImpl = new DashboardFeatureProviderImpl(mContext);
+        mImpl.mTileSummaryExecutor = new TileSummaryExecutor();
     }
 
     @Test
@@ -439,6 +440,20 @@ public class DashboardFeatureProviderImplTest {
                 .isFalse();
     }
 
+    @Test
+    public void tileBatchAndCache_shouldUseTileSummaryExecutor() {
+        final TileSummaryExecutor executor = spy(new TileSummaryExecutor());
+        mImpl.mTileSummaryExecutor = executor;
+
+        mImpl.beginTileBatch();
+        mImpl.endTileBatch();
+        mImpl.clearTileCache();
+
+        verify(executor).beginBatch();
+        verify(executor).endBatch();
+        verify(executor).clearCache();
+    }
+
     @Test
     public void testGetExtraIntentAction_shouldReturnNull() {
         assertThat(mImpl.getExtraIntentAction()).isNull();
@@ -16,6 +16,7 @@
 package com.android.settings.dashboard;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.nullable;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -24,6 +25,7 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import android.app.Activity;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
@@ -45,7 +47,9 @@ import com.android.settingslib.drawer.TileUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
+import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.robolectric.RuntimeEnvironment;
 import org.robolectric.util.ReflectionHelpers;
@@ -114,6 +118,33 @@ public class DashboardFragmentTest {
         verify(mTestFragment.mScreen).addPreference(nullable(Preference.class));
     }
 
+    @Test
+    public void displayTilesAsPreference_shouldBindTilesInOneBatch() {
+        when(mFakeFeatureFactory.dashboardFeatureProvider
+                .getDashboardKeyForTile(nullable(Tile.class)))
+                .thenReturn("test_key");
+        mTestFragment.onCreatePreferences(new Bundle(), "rootKey");
+
+        final DashboardFeatureProvider provider = mFakeFeatureFactory.dashboardFeatureProvider;
+        final InOrder inOrder = Mockito.inOrder(provider);
+        inOrder.verify(provider).beginTileBatch();
+        inOrder.verify(provider).bindPreferenceToTile(nullable(Activity.class), anyInt(),
+                nullable(Preference.class), nullable(Tile.class), nullable(String.class),
+                anyInt());
+        inOrder.verify(provider).endTileBatch();
+    }
+
+    @Test
+    public void onCategoriesChanged_shouldClearTileCache() {
+        when(mFakeFeatureFactory.dashboardFeatureProvider
+                .getTilesForCategory(nullable(String.class)))
+                .thenReturn(null);
+
+        mTestFragment.onCategoriesChanged();
+
+        verify(mFakeFeatureFactory.dashboardFeatureProvider).clearTileCache();
+    }
+
     @Test
     public void displayTilesAsPreference_shouldNotAddTilesWithoutIntent() {
         mTestFragment.onCreatePreferences(new Bundle(), "rootKey");
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.settings.dashboard;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import androidx.preference.Preference;
+import androidx.preference.PreferenceScreen;
+
+import com.android.settings.testutils.FakeToggleController;
+import com.android.settings.testutils.FakeUnavailablePreferenceController;
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+import com.android.settingslib.core.AbstractPreferenceController;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class PreferenceStateEngineTest {
+
+    private static final String KEY = "toggle_key";
+
+    private Context mContext;
+    private List<Runnable> mWorkerTasks;
+    private PreferenceStateEngine mEngine;
+    private PreferenceScreen mScreen;
+    private Preference mPreference;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mWorkerTasks = new ArrayList<>();
+        mEngine = new PreferenceStateEngine("PreferenceStateEngineTest", mWorkerTasks::add,
+                new Handler(Looper.getMainLooper()));
+        mScreen = mock(PreferenceScreen.class);
+        mPreference = new Preference(mContext);
+        when(mScreen.findPreference(KEY)).thenReturn(mPreference);
+        when(mScreen.findPreference("key")).thenReturn(new Preference(mContext));
+    }
+
+    @Test
+    public void updatePreferenceStates_onlyAvailableControllersUpdated() {
+        final FakeToggleController available = spy(new FakeToggleController(mContext, KEY));
+        final FakeUnavailablePreferenceController unavailable =
+                spy(new FakeUnavailablePreferenceController(mContext));
+
+        mEngine.updatePreferenceStates(mScreen, Arrays.asList(available, unavailable));
+
+        verify(available).updateState(mPreference);
+        verify(unavailable, never()).updateState(any());
+        assertThat(mWorkerTasks).isEmpty();
+        assertThat(mEngine.getControllerTimings()).containsKey(available.getClass().getName());
+    }
+
+    @Test
+    public void updatePreferenceStates_plainController_checkedOnCaller() {
+        final AbstractPreferenceController controller = mock(AbstractPreferenceController.class);
+        when(controller.isAvailable()).thenReturn(true);
+        when(controller.getPreferenceKey()).thenReturn(KEY);
+
+        mEngine.updatePreferenceStates(mScreen, Collections.singletonList(controller));
+
+        verify(controller).updateState(mPreference);
+        assertThat(mWorkerTasks).isEmpty();
+    }
+
+    @Test
+    public void updatePreferenceStates_threadSafeController_updatedWhenCheckCompletes() {
+        final ThreadSafeController controller = spy(new ThreadSafeController(mContext));
+
+        mEngine.updatePreferenceStates(mScreen, Collections.singletonList(controller));
+
+        verify(controller, never()).updateState(any());
+        assertThat(mWorkerTasks).hasSize(1);
+
+        mWorkerTasks.remove(0).run();
+
+        verify(controller).updateState(mPreference);
+    }
+
+    @Test
+    public void updatePreferenceStates_checkStillRunning_notCheckedTwiceConcurrently() {
+        final ThreadSafeController controller = spy(new ThreadSafeController(mContext));
+        final List<AbstractPreferenceController> controllers =
+                Collections.singletonList(controller);
+
+        mEngine.updatePreferenceStates(mScreen, controllers);
+        mEngine.updatePreferenceStates(mScreen, controllers);
+
+        assertThat(mWorkerTasks).hasSize(1);
+
+        // The first check completes, but is out of date, so the controller is checked again.
+        mWorkerTasks.remove(0).run();
+
+        verify(controller, never()).updateState(any());
+        assertThat(mWorkerTasks).hasSize(1);
+
+        mWorkerTasks.remove(0).run();
+
+        verify(controller, times(1)).updateState(mPreference);
+        verify(controller, times(2)).getAvailabilityStatus();
+    }
+
+    @Test
+    public void cancel_checkStillRunning_controllerNotUpdated() {
+        final ThreadSafeController controller = spy(new ThreadSafeController(mContext));
+
+        mEngine.updatePreferenceStates(mScreen, Collections.singletonList(controller));
+        mEngine.cancel();
+        mWorkerTasks.remove(0).run();
+
+        verify(controller, never()).updateState(any());
+    }
+
+    @Test
+    public void cancel_thenUpdate_checksControllerAgain() {
+        final ThreadSafeController controller = spy(new ThreadSafeController(mContext));
+        final List<AbstractPreferenceController> controllers =
+                Collections.singletonList(controller);
+
+        mEngine.updatePreferenceStates(mScreen, controllers);
+        mEngine.cancel();
+        mEngine.updatePreferenceStates(mScreen, controllers);
+
+        assertThat(mWorkerTasks).hasSize(2);
+
+        mWorkerTasks.remove(0).run();
+        verify(controller, never()).updateState(any());
+
+        mWorkerTasks.remove(0).run();
+        verify(controller).updateState(mPreference);
+    }
+
+    public static class ThreadSafeController extends FakeToggleController {
+
+        public ThreadSafeController(Context context) {
+            super(context, KEY);
+        }
+
+        @Override
+        public boolean isAvailabilityThreadSafe() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.settings.dashboard;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.drawable.Icon;
+import android.os.Bundle;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+import com.android.settings.testutils.shadow.ShadowThreadUtils;
+import com.android.settings.testutils.shadow.ShadowTileUtils;
+import com.android.settingslib.drawer.Tile;
+import com.android.settingslib.drawer.TileUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+@Config(shadows = {ShadowTileUtils.class, ShadowThreadUtils.class})
+public class TileSummaryExecutorTest {
+
+    private Context mContext;
+    private TileSummaryExecutor mExecutor;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mExecutor = new TileSummaryExecutor();
+    }
+
+    @Test
+    public void loadSummary_sameTileTwice_queriesProviderOnce() {
+        final Tile tile = createTile("class");
+        final List<String> summaries = new ArrayList<>();
+
+        mExecutor.loadSummary(mContext, tile, summaries::add);
+        mExecutor.loadSummary(mContext, tile, summaries::add);
+
+        assertThat(summaries).containsExactly(
+                ShadowTileUtils.MOCK_SUMMARY, ShadowTileUtils.MOCK_SUMMARY);
+        assertThat(ShadowTileUtils.getTextQueryCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void loadSummary_differentTiles_queriesEachProvider() {
+        final List<String> summaries = new ArrayList<>();
+
+        mExecutor.loadSummary(mContext, createTile("class1"), summaries::add);
+        mExecutor.loadSummary(mContext, createTile("class2"), summaries::add);
+
+        assertThat(summaries).hasSize(2);
+        assertThat(ShadowTileUtils.getTextQueryCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void loadSummary_afterClearCache_queriesAgain() {
+        final Tile tile = createTile("class");
+
+        mExecutor.loadSummary(mContext, tile, summary -> {});
+        mExecutor.clearCache();
+        mExecutor.loadSummary(mContext, tile, summary -> {});
+
+        assertThat(ShadowTileUtils.getTextQueryCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void endBatch_loadsRequestsMadeDuringBatch() {
+        final List<String> summaries = new ArrayList<>();
+
+        mExecutor.beginBatch();
+        mExecutor.loadSummary(mContext, createTile("class1"), summaries::add);
+        mExecutor.loadSummary(mContext, createTile("class2"), summaries::add);
+
+        assertThat(summaries).isEmpty();
+        assertThat(ShadowTileUtils.getTextQueryCount()).isEqualTo(0);
+
+        mExecutor.endBatch();
+
+        assertThat(summaries).hasSize(2);
+        assertThat(ShadowTileUtils.getTextQueryCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void endBatch_duplicateRequestsDuringBatch_coalesced() {
+        final Tile tile = createTile("class");
+        final List<String> summaries = new ArrayList<>();
+
+        mExecutor.beginBatch();
+        mExecutor.loadSummary(mContext, tile, summaries::add);
+        mExecutor.loadSummary(mContext, tile, summaries::add);
+        mExecutor.endBatch();
+
+        assertThat(summaries).hasSize(2);
+        assertThat(ShadowTileUtils.getTextQueryCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void loadIcon_shouldDeliverIcon() {
+        final List<Icon> icons = new ArrayList<>();
+
+        mExecutor.loadIcon(mContext, createTile("class"), icons::add);
+
+        assertThat(icons).hasSize(1);
+    }
+
+    private Tile createTile(String className) {
+        final Tile tile = new Tile();
+        tile.intent = new Intent();
+        tile.intent.setComponent(new ComponentName(mContext.getPackageName(), className));
+        tile.metaData = new Bundle();
+        tile.metaData.putString(TileUtils.META_DATA_PREFERENCE_SUMMARY_URI,
+                "content://com.android.settings/tile_summary");
+        tile.metaData.putString(TileUtils.META_DATA_PREFERENCE_ICON_URI,
+                "content://com.android.settings/tile_icon");
+        return tile;
+    }
+}
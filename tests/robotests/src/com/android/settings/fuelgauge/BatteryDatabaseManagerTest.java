@@ -25,6 +25,7 @@ import android.text.format.DateUtils;
 import com.android.settings.fuelgauge.batterytip.AnomalyDatabaseHelper;
 import com.android.settings.fuelgauge.batterytip.AppInfo;
 import com.android.settings.fuelgauge.batterytip.BatteryDatabaseManager;
+import com.android.settings.fuelgauge.batterytip.BatteryDatabaseManager.AnomalyRecord;
 import com.android.settings.testutils.DatabaseTestUtils;
 
 import org.junit.After;
@@ -111,6 +112,23 @@ public class BatteryDatabaseManagerTest {
         assertThat(appInfos1).containsExactly(mNewAppInfo);
     }
 
+    @Test
+    public void testInsertAnomalies_insertsAllSkippingDuplicates() {
+        final List<AnomalyRecord> anomalies = new ArrayList<>();
+        anomalies.add(new AnomalyRecord(UID_NEW, PACKAGE_NAME_NEW, TYPE_NEW,
+                AnomalyDatabaseHelper.State.NEW, NOW));
+        anomalies.add(new AnomalyRecord(UID_OLD, PACKAGE_NAME_OLD, TYPE_OLD,
+                AnomalyDatabaseHelper.State.NEW, NOW));
+        anomalies.add(new AnomalyRecord(UID_OLD, PACKAGE_NAME_OLD, TYPE_OLD,
+                AnomalyDatabaseHelper.State.NEW, NOW));
+
+        assertThat(mBatteryDatabaseManager.insertAnomalies(anomalies)).isEqualTo(2);
+
+        final List<AppInfo> appInfos = mBatteryDatabaseManager.queryAllAnomalies(
+                0 /* timeMsAfter */, AnomalyDatabaseHelper.State.NEW);
+        assertThat(appInfos).containsExactly(mNewAppInfo, mOldAppInfo);
+    }
+
     @Test
     public void testUpdateAnomalies_updateSuccessfully() {
         mBatteryDatabaseManager.insertAnomaly(UID_NEW, PACKAGE_NAME_NEW, TYPE_NEW,
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.android.settings.fuelgauge;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.os.BatteryStats;
+import android.os.BatteryStats.HistoryItem;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class BatteryHistoryDataTest {
+
+    private static final long[] TIMES = {1000, 1500, 2000, 2500};
+    private static final byte[] CMDS = {HistoryItem.CMD_UPDATE, HistoryItem.CMD_UPDATE,
+            HistoryItem.CMD_UPDATE, HistoryItem.CMD_NULL};
+    private static final byte[] LEVELS = {99, 98, 97, 97};
+    private static final int[] STATES = {HistoryItem.STATE_SCREEN_ON_FLAG, 0,
+            HistoryItem.STATE_GPS_ON_FLAG, HistoryItem.STATE_CPU_RUNNING_FLAG};
+
+    @Mock
+    private BatteryStats mBatteryStats;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        BatteryHistoryData.clearCache();
+        mockHistory();
+    }
+
+    @Test
+    public void decode_storesRecordsAndSummary() {
+        final BatteryHistoryData data = BatteryHistoryData.decode(mBatteryStats);
+
+        assertThat(data.size()).isEqualTo(4);
+        assertThat(data.getNumInteresting()).isEqualTo(3);
+        assertThat(data.getHistoryStart()).isEqualTo(1000);
+        assertThat(data.getHistoryDataEnd()).isEqualTo(2000);
+        assertThat(data.getEndDataWallTime()).isEqualTo(2000);
+        assertThat(data.getAggregatedStates()).isEqualTo(
+                HistoryItem.STATE_SCREEN_ON_FLAG | HistoryItem.STATE_GPS_ON_FLAG);
+        for (int i = 0; i < TIMES.length; i++) {
+            assertThat(data.getTime(i)).isEqualTo(TIMES[i]);
+            assertThat(data.getBatteryLevel(i)).isEqualTo(LEVELS[i]);
+            assertThat(data.getStates(i)).isEqualTo(STATES[i]);
+        }
+        assertThat(data.isDeltaData(3)).isFalse();
+    }
+
+    @Test
+    public void readRecord_copiesFields() {
+        final BatteryHistoryData data = BatteryHistoryData.decode(mBatteryStats);
+        final HistoryItem rec = new HistoryItem();
+
+        data.readRecord(2, rec);
+
+        assertThat(rec.time).isEqualTo(2000);
+        assertThat(rec.batteryLevel).isEqualTo((byte) 97);
+        assertThat(rec.states).isEqualTo(HistoryItem.STATE_GPS_ON_FLAG);
+        assertThat(rec.isDeltaData()).isTrue();
+    }
+
+    @Test
+    public void get_sameStats_decodedOnce() {
+        final BatteryHistoryData data = BatteryHistoryData.get(mBatteryStats);
+
+        assertThat(BatteryHistoryData.get(mBatteryStats)).isSameAs(data);
+        verify(mBatteryStats, times(1)).startIteratingHistoryLocked();
+    }
+
+    @Test
+    public void get_historyGrown_decodedAgain() {
+        BatteryHistoryData.get(mBatteryStats);
+        when(mBatteryStats.getHistoryUsedSize()).thenReturn(100);
+
+        BatteryHistoryData.get(mBatteryStats);
+
+        verify(mBatteryStats, times(2)).startIteratingHistoryLocked();
+    }
+
+    private void mockHistory() {
+        doAnswer(invocation -> {
+            final int[] count = {0};
+            doAnswer(next -> {
+                if (count[0] == TIMES.length) {
+                    return false;
+                }
+                final HistoryItem record = next.getArgument(0);
+                record.cmd = CMDS[count[0]];
+                record.time = TIMES[count[0]];
+                record.batteryLevel = LEVELS[count[0]];
+                record.states = STATES[count[0]];
+                count[0]++;
+                return true;
+            }).when(mBatteryStats).getNextHistoryLocked(any(HistoryItem.class));
+            return true;
+        }).when(mBatteryStats).startIteratingHistoryLocked();
+    }
+}
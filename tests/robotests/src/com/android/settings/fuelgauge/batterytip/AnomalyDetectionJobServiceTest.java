@@ -25,15 +25,14 @@ import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyInt;
-import static org.mockito.Matchers.anyLong;
-import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.robolectric.RuntimeEnvironment.application;
@@ -55,6 +54,7 @@ import com.android.internal.logging.nano.MetricsProto;
 import com.android.internal.os.BatteryStatsHelper;
 import com.android.settings.R;
 import com.android.settings.fuelgauge.BatteryUtils;
+import com.android.settings.fuelgauge.batterytip.BatteryDatabaseManager.AnomalyRecord;
 import com.android.settings.testutils.FakeFeatureFactory;
 import com.android.settings.testutils.SettingsRobolectricTestRunner;
 import com.android.settings.testutils.shadow.ShadowConnectivityManager;
@@ -64,6 +64,7 @@ import com.android.settings.testutils.shadow.ShadowPowerWhitelistBackend;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.robolectric.Robolectric;
@@ -74,6 +75,7 @@ import org.robolectric.annotation.Config;
 import org.robolectric.shadows.ShadowJobScheduler;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -91,8 +93,6 @@ public class AnomalyDetectionJobServiceTest {
     @Mock
     private UserManager mUserManager;
     @Mock
-    private BatteryDatabaseManager mBatteryDatabaseManager;
-    @Mock
     private BatteryUtils mBatteryUtils;
     @Mock
     private PowerWhitelistBackend mPowerWhitelistBackend;
@@ -104,6 +104,8 @@ public class AnomalyDetectionJobServiceTest {
     private JobWorkItem mJobWorkItem;
 
     private BatteryTipPolicy mPolicy;
+    private List<AnomalyRecord> mAnomalies;
+    private AnomalyJobCache mCache;
     private Bundle mBundle;
     private AnomalyDetectionJobService mAnomalyDetectionJobService;
     private FakeFeatureFactory mFeatureFactory;
@@ -115,10 +117,13 @@ public class AnomalyDetectionJobServiceTest {
 
         mContext = RuntimeEnvironment.application;
         mPolicy = new BatteryTipPolicy(mContext);
+        mAnomalies = new ArrayList<>();
         mBundle = new Bundle();
         mBundle.putParcelable(StatsManager.EXTRA_STATS_DIMENSIONS_VALUE, mStatsDimensionsValue);
         mFeatureFactory = FakeFeatureFactory.setupForTest();
         when(mBatteryUtils.getAppLongVersionCode(any())).thenReturn(VERSION_CODE);
+        mCache = new AnomalyJobCache(mBatteryUtils, mPowerWhitelistBackend,
+                mContext.getContentResolver(), mFeatureFactory.powerUsageFeatureProvider);
 
         final ServiceController<AnomalyDetectionJobService> controller =
                 Robolectric.buildService(AnomalyDetectionJobService.class);
@@ -147,13 +152,10 @@ public class AnomalyDetectionJobServiceTest {
         doReturn(true).when(mPowerWhitelistBackend).isWhitelisted(any(String[].class));
 
         mAnomalyDetectionJobService.saveAnomalyToDatabase(mContext,
-                mUserManager, mBatteryDatabaseManager, mBatteryUtils, mPolicy,
-                mPowerWhitelistBackend, mContext.getContentResolver(),
-                mFeatureFactory.powerUsageFeatureProvider,
+                mUserManager, mAnomalies, mBatteryUtils, mPolicy, mCache,
                 mFeatureFactory.metricsFeatureProvider, mBundle);
 
-        verify(mBatteryDatabaseManager, never()).insertAnomaly(anyInt(), anyString(), anyInt(),
-                anyInt(), anyLong());
+        assertThat(mAnomalies).isEmpty();
     }
 
     @Test
@@ -168,13 +170,10 @@ public class AnomalyDetectionJobServiceTest {
         doReturn(true).when(mBatteryUtils).shouldHideAnomaly(any(), anyInt(), any());
 
         mAnomalyDetectionJobService.saveAnomalyToDatabase(mContext,
-                mUserManager, mBatteryDatabaseManager, mBatteryUtils, mPolicy,
-                mPowerWhitelistBackend, mContext.getContentResolver(),
-                mFeatureFactory.powerUsageFeatureProvider,
+                mUserManager, mAnomalies, mBatteryUtils, mPolicy, mCache,
                 mFeatureFactory.metricsFeatureProvider, mBundle);
 
-        verify(mBatteryDatabaseManager, never()).insertAnomaly(anyInt(), anyString(), anyInt(),
-                anyInt(), anyLong());
+        assertThat(mAnomalies).isEmpty();
         verify(mFeatureFactory.metricsFeatureProvider).action(mContext,
                 MetricsProto.MetricsEvent.ACTION_ANOMALY_IGNORED,
                 SYSTEM_PACKAGE,
@@ -188,13 +187,10 @@ public class AnomalyDetectionJobServiceTest {
                 mAnomalyDetectionJobService).extractUidFromStatsDimensionsValue(any());
 
         mAnomalyDetectionJobService.saveAnomalyToDatabase(mContext,
-                mUserManager, mBatteryDatabaseManager, mBatteryUtils, mPolicy,
-                mPowerWhitelistBackend, mContext.getContentResolver(),
-                mFeatureFactory.powerUsageFeatureProvider, mFeatureFactory.metricsFeatureProvider,
-                mBundle);
+                mUserManager, mAnomalies, mBatteryUtils, mPolicy, mCache,
+                mFeatureFactory.metricsFeatureProvider, mBundle);
 
-        verify(mBatteryDatabaseManager, never()).insertAnomaly(anyInt(), anyString(), anyInt(),
-                anyInt(), anyLong());
+        assertThat(mAnomalies).isEmpty();
     }
 
     @Test
@@ -203,13 +199,10 @@ public class AnomalyDetectionJobServiceTest {
                 mAnomalyDetectionJobService).extractUidFromStatsDimensionsValue(any());
 
         mAnomalyDetectionJobService.saveAnomalyToDatabase(mContext,
-                mUserManager, mBatteryDatabaseManager, mBatteryUtils, mPolicy,
-                mPowerWhitelistBackend, mContext.getContentResolver(),
-                mFeatureFactory.powerUsageFeatureProvider, mFeatureFactory.metricsFeatureProvider,
-                mBundle);
+                mUserManager, mAnomalies, mBatteryUtils, mPolicy, mCache,
+                mFeatureFactory.metricsFeatureProvider, mBundle);
 
-        verify(mBatteryDatabaseManager, never()).insertAnomaly(anyInt(), anyString(), anyInt(),
-                anyInt(), anyLong());
+        assertThat(mAnomalies).isEmpty();
     }
 
     @Test
@@ -223,13 +216,12 @@ public class AnomalyDetectionJobServiceTest {
                 mAnomalyDetectionJobService).extractUidFromStatsDimensionsValue(any());
 
         mAnomalyDetectionJobService.saveAnomalyToDatabase(mContext,
-                mUserManager, mBatteryDatabaseManager, mBatteryUtils, mPolicy,
-                mPowerWhitelistBackend, mContext.getContentResolver(),
-                mFeatureFactory.powerUsageFeatureProvider, mFeatureFactory.metricsFeatureProvider,
-                mBundle);
+                mUserManager, mAnomalies, mBatteryUtils, mPolicy, mCache,
+                mFeatureFactory.metricsFeatureProvider, mBundle);
 
-        verify(mBatteryDatabaseManager).insertAnomaly(anyInt(), anyString(), eq(6),
-                eq(AnomalyDatabaseHelper.State.AUTO_HANDLED), anyLong());
+        assertThat(mAnomalies).hasSize(1);
+        assertThat(mAnomalies.get(0).type).isEqualTo(ANOMALY_TYPE);
+        assertThat(mAnomalies.get(0).state).isEqualTo(AnomalyDatabaseHelper.State.AUTO_HANDLED);
         verify(mFeatureFactory.metricsFeatureProvider).action(mContext,
                 MetricsProto.MetricsEvent.ACTION_ANOMALY_TRIGGERED,
                 SYSTEM_PACKAGE,
@@ -248,13 +240,12 @@ public class AnomalyDetectionJobServiceTest {
                 mAnomalyDetectionJobService).extractUidFromStatsDimensionsValue(any());
 
         mAnomalyDetectionJobService.saveAnomalyToDatabase(mContext,
-                mUserManager, mBatteryDatabaseManager, mBatteryUtils, mPolicy,
-                mPowerWhitelistBackend, mContext.getContentResolver(),
-                mFeatureFactory.powerUsageFeatureProvider, mFeatureFactory.metricsFeatureProvider,
-                mBundle);
+                mUserManager, mAnomalies, mBatteryUtils, mPolicy, mCache,
+                mFeatureFactory.metricsFeatureProvider, mBundle);
 
-        verify(mBatteryDatabaseManager).insertAnomaly(anyInt(), anyString(), eq(6),
-                eq(AnomalyDatabaseHelper.State.NEW), anyLong());
+        assertThat(mAnomalies).hasSize(1);
+        assertThat(mAnomalies.get(0).type).isEqualTo(ANOMALY_TYPE);
+        assertThat(mAnomalies.get(0).state).isEqualTo(AnomalyDatabaseHelper.State.NEW);
         verify(mFeatureFactory.metricsFeatureProvider).action(mContext,
                 MetricsProto.MetricsEvent.ACTION_ANOMALY_TRIGGERED,
                 SYSTEM_PACKAGE,
@@ -262,6 +253,26 @@ public class AnomalyDetectionJobServiceTest {
                 Pair.create(MetricsProto.MetricsEvent.FIELD_APP_VERSION_CODE, VERSION_CODE));
     }
 
+    @Test
+    public void saveAnomalyToDatabase_sameAppTwice_resolvedOnce() {
+        mBundle.putStringArrayList(StatsManager.EXTRA_STATS_BROADCAST_SUBSCRIBER_COOKIES,
+                new ArrayList<>(Arrays.asList(SUBSCRIBER_COOKIES_NOT_AUTO_RESTRICTION)));
+        doReturn(SYSTEM_PACKAGE).when(mBatteryUtils).getPackageName(anyInt());
+        doReturn(Process.FIRST_APPLICATION_UID).when(
+                mAnomalyDetectionJobService).extractUidFromStatsDimensionsValue(any());
+
+        for (int i = 0; i < 2; i++) {
+            mAnomalyDetectionJobService.saveAnomalyToDatabase(mContext,
+                    mUserManager, mAnomalies, mBatteryUtils, mPolicy, mCache,
+                    mFeatureFactory.metricsFeatureProvider, mBundle);
+        }
+
+        assertThat(mAnomalies).hasSize(2);
+        verify(mBatteryUtils).getPackageName(Process.FIRST_APPLICATION_UID);
+        verify(mBatteryUtils).getAppLongVersionCode(SYSTEM_PACKAGE);
+        verify(mBatteryUtils).shouldHideAnomaly(any(), eq(Process.FIRST_APPLICATION_UID), any());
+    }
+
     @Test
     public void extractUidFromStatsDimensionsValue_extractCorrectUid() {
         // Build an integer dimensions value.
@@ -313,6 +324,25 @@ public class AnomalyDetectionJobServiceTest {
         mAnomalyDetectionJobService.completeWork(mJobParameters, mJobWorkItem);
     }
 
+    @Test
+    public void processWork_afterBatch_dequeuesAgainSoJobFinishes() {
+        final JobWorkItem item = new JobWorkItem(new Intent().putExtras(mBundle));
+        when(mJobParameters.dequeueWork()).thenReturn(item, item, null, null);
+        doNothing().when(mAnomalyDetectionJobService).saveAnomalyToDatabase(any(), any(), any(),
+                any(), any(), any(), any(), any());
+        final BatteryDatabaseManager databaseManager = mock(BatteryDatabaseManager.class);
+
+        mAnomalyDetectionJobService.processWork(mJobParameters, databaseManager, mUserManager,
+                mBatteryUtils, mPolicy, mCache, mFeatureFactory.metricsFeatureProvider);
+
+        // Only a dequeue with every item completed lets the platform finish the job.
+        final InOrder inOrder = inOrder(mJobParameters, databaseManager);
+        inOrder.verify(mJobParameters, times(3)).dequeueWork();
+        inOrder.verify(databaseManager).insertAnomalies(any());
+        inOrder.verify(mJobParameters, times(2)).completeWork(item);
+        inOrder.verify(mJobParameters).dequeueWork();
+    }
+
     @Test
     public void restartWorkAfterBeenStopped_jobStarted() {
         mAnomalyDetectionJobService.onStopJob(mJobParameters);
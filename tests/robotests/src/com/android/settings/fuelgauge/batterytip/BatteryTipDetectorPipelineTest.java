@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batterytip;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.android.settings.fuelgauge.Estimate;
+import com.android.settings.fuelgauge.batterytip.detectors.BatteryTipDetector;
+import com.android.settings.fuelgauge.batterytip.tips.BatteryTip;
+import com.android.settings.fuelgauge.batterytip.tips.LowBatteryTip;
+import com.android.settings.fuelgauge.batterytip.tips.SummaryTip;
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.List;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class BatteryTipDetectorPipelineTest {
+
+    private static final String SUMMARY = "summary";
+    private static final String LOW_BATTERY = "low_battery";
+
+    @Mock
+    private BatteryTipDetector mSummaryDetector;
+    @Mock
+    private BatteryTipDetector mLowBatteryDetector;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        BatteryTipDetectorPipeline.clearCache();
+        when(mSummaryDetector.detect()).thenReturn(new SummaryTip(BatteryTip.StateType.NEW,
+                Estimate.AVERAGE_TIME_TO_DISCHARGE_UNKNOWN));
+        when(mLowBatteryDetector.detect()).thenReturn(new LowBatteryTip(
+                BatteryTip.StateType.NEW, false /* powerSaveModeOn */, "summary"));
+    }
+
+    @Test
+    public void detect_keepsOrderOfDetectors() {
+        final List<BatteryTip> tips = new BatteryTipDetectorPipeline()
+                .add(SUMMARY, mSummaryDetector)
+                .add(LOW_BATTERY, mLowBatteryDetector)
+                .detect();
+
+        assertThat(tips).hasSize(2);
+        assertThat(tips.get(0).getType()).isEqualTo(BatteryTip.TipType.SUMMARY);
+        assertThat(tips.get(1).getType()).isEqualTo(BatteryTip.TipType.LOW_BATTERY);
+    }
+
+    @Test
+    public void detect_sameCacheKey_detectorRunOnce() {
+        new BatteryTipDetectorPipeline().add(SUMMARY, mSummaryDetector, "version1").detect();
+        final List<BatteryTip> tips = new BatteryTipDetectorPipeline()
+                .add(SUMMARY, mSummaryDetector, "version1")
+                .detect();
+
+        verify(mSummaryDetector, times(1)).detect();
+        assertThat(tips.get(0).getType()).isEqualTo(BatteryTip.TipType.SUMMARY);
+    }
+
+    @Test
+    public void detect_newCacheKey_detectorRunAgain() {
+        new BatteryTipDetectorPipeline().add(SUMMARY, mSummaryDetector, "version1").detect();
+        new BatteryTipDetectorPipeline().add(SUMMARY, mSummaryDetector, "version2").detect();
+
+        verify(mSummaryDetector, times(2)).detect();
+    }
+
+    @Test
+    public void detect_noCacheKey_detectorAlwaysRun() {
+        new BatteryTipDetectorPipeline().add(SUMMARY, mSummaryDetector).detect();
+        new BatteryTipDetectorPipeline().add(SUMMARY, mSummaryDetector).detect();
+
+        verify(mSummaryDetector, times(2)).detect();
+    }
+
+    @Test
+    public void detect_noCacheKeyMissesDeadline_waitsForDetector() {
+        new BatteryTipDetectorPipeline().add(SUMMARY, mSummaryDetector).detect();
+        when(mSummaryDetector.detect()).thenAnswer(invocation -> {
+            Thread.sleep(BatteryTipDetectorPipeline.DETECTOR_TIMEOUT_MS + 200);
+            return new LowBatteryTip(BatteryTip.StateType.NEW, false /* powerSaveModeOn */,
+                    "summary");
+        });
+
+        final List<BatteryTip> tips = new BatteryTipDetectorPipeline()
+                .add(SUMMARY, mSummaryDetector)
+                .detect();
+
+        assertThat(tips.get(0).getType()).isEqualTo(BatteryTip.TipType.LOW_BATTERY);
+    }
+
+    @Test
+    public void getDetectorLatencies_containsEveryDetector() {
+        final BatteryTipDetectorPipeline pipeline = new BatteryTipDetectorPipeline()
+                .add(SUMMARY, mSummaryDetector)
+                .add(LOW_BATTERY, mLowBatteryDetector);
+
+        pipeline.detect();
+
+        assertThat(pipeline.getDetectorLatencies().keySet())
+                .containsExactly(SUMMARY, LOW_BATTERY);
+    }
+}
@@ -18,17 +18,21 @@ package com.android.settings.fuelgauge.batterytip;
 
 import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
 
 import android.content.Context;
 import android.content.Intent;
 import android.os.PowerManager;
+import android.provider.Settings;
 
 import com.android.internal.os.BatteryStatsHelper;
 import com.android.settings.fuelgauge.BatteryInfo;
 import com.android.settings.fuelgauge.BatteryUtils;
 import com.android.settings.fuelgauge.batterytip.tips.BatteryTip;
+import com.android.settings.fuelgauge.batterytip.tips.HighUsageTip;
 import com.android.settings.testutils.SettingsRobolectricTestRunner;
 
 import org.junit.Before;
@@ -39,6 +43,8 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.robolectric.RuntimeEnvironment;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 @RunWith(SettingsRobolectricTestRunner.class)
@@ -67,6 +73,7 @@ public class BatteryTipLoaderTest {
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
+        BatteryTipDetectorPipeline.clearCache();
 
         mContext = spy(RuntimeEnvironment.application);
         doReturn(mContext).when(mContext).getApplicationContext();
@@ -86,4 +93,50 @@ public class BatteryTipLoaderTest {
             assertThat(batteryTips.get(i).getType()).isEqualTo(TIP_ORDER[i]);
         }
     }
+
+    @Test
+    public void testLoadBackground_reportsLatencyOfEveryDetector() {
+        mBatteryTipLoader.loadInBackground();
+
+        assertThat(mBatteryTipLoader.getDetectorLatencies()).hasSize(TIP_ORDER.length);
+    }
+
+    @Test
+    public void getStatsVersion_statsReset_changes() {
+        final BatteryTipPolicy policy = new BatteryTipPolicy(mContext);
+        when(mBatteryStatsHelper.getStats().getStartClockTime()).thenReturn(1000L);
+        final String version = mBatteryTipLoader.getStatsVersion(policy, true /* discharging */);
+
+        when(mBatteryStatsHelper.getStats().getStartClockTime()).thenReturn(2000L);
+
+        assertThat(mBatteryTipLoader.getStatsVersion(policy, true /* discharging */))
+                .isNotEqualTo(version);
+    }
+
+    @Test
+    public void getStatsVersion_highUsagePolicyChanges_changes() {
+        final String version = mBatteryTipLoader.getStatsVersion(
+                new BatteryTipPolicy(mContext), true /* discharging */);
+
+        Settings.Global.putString(mContext.getContentResolver(),
+                Settings.Global.BATTERY_TIP_CONSTANTS, "high_usage_app_count=5");
+
+        assertThat(mBatteryTipLoader.getStatsVersion(new BatteryTipPolicy(mContext),
+                true /* discharging */)).isNotEqualTo(version);
+    }
+
+    @Test
+    public void updateLastFullChargeTime_replacesTimeAndKeepsApps() {
+        final List<AppInfo> apps = Collections.singletonList(
+                new AppInfo.Builder().setPackageName("com.android.app").build());
+        final List<BatteryTip> tips = new ArrayList<>();
+        tips.add(new HighUsageTip(1000L, apps));
+        when(mBatteryUtils.calculateLastFullChargeTime(any(), anyLong())).thenReturn(5000L);
+
+        mBatteryTipLoader.updateLastFullChargeTime(tips);
+
+        final HighUsageTip tip = (HighUsageTip) tips.get(0);
+        assertThat(tip.getLastFullChargeTimeMs()).isEqualTo(5000L);
+        assertThat(tip.getHighUsageAppList()).isEqualTo(apps);
+    }
 }
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.location;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.content.Intent;
+import android.location.SettingInjectorService;
+import android.os.Bundle;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.Process;
+import android.os.UserHandle;
+import androidx.preference.Preference;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class SettingsInjectorTest {
+
+    private static final String TEST_PACKAGE = "com.android.test";
+
+    @Mock
+    private ActivityManager mActivityManager;
+    private Context mContext;
+    private SettingsInjector mInjector;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mContext = spy(RuntimeEnvironment.application);
+        doReturn(mActivityManager).when(mContext).getSystemService(Context.ACTIVITY_SERVICE);
+        doReturn(true).when(mActivityManager).isUserRunning(anyInt());
+        doReturn(null).when(mContext).startServiceAsUser(any(Intent.class), any(UserHandle.class));
+        mInjector = new SettingsInjector(mContext);
+    }
+
+    @After
+    public void tearDown() {
+        SettingsInjector.sLatencyHistograms.clear();
+    }
+
+    @Test
+    public void reloadStatusMessages_manySettings_loadsAtMostFourAtATime() {
+        final List<Preference> prefs = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            mInjector.addServiceSetting(mContext, prefs, getTestSetting("Service" + i));
+        }
+
+        mInjector.reloadStatusMessages();
+
+        verify(mContext, times(4)).startServiceAsUser(any(Intent.class), any(UserHandle.class));
+    }
+
+    @Test
+    public void addServiceSetting_afterStatusReported_startsWithReportedStatus() throws Exception {
+        final InjectedSetting setting = getTestSetting("Service");
+        final List<Preference> prefs = new ArrayList<>();
+        final Preference pref = mInjector.addServiceSetting(mContext, prefs, setting);
+        assertThat(pref.isEnabled()).isTrue();
+        mInjector.reloadStatusMessages();
+
+        final ArgumentCaptor<Intent> intent = ArgumentCaptor.forClass(Intent.class);
+        verify(mContext).startServiceAsUser(intent.capture(), any(UserHandle.class));
+        final Messenger messenger =
+                intent.getValue().getParcelableExtra(SettingInjectorService.MESSENGER_KEY);
+        final Bundle bundle = new Bundle();
+        bundle.putBoolean(SettingInjectorService.ENABLED_KEY, false);
+        final Message message = Message.obtain();
+        message.setData(bundle);
+        messenger.send(message);
+
+        assertThat(pref.isEnabled()).isFalse();
+        final Preference reopenedPref = new SettingsInjector(mContext)
+                .addServiceSetting(mContext, new ArrayList<>(), setting);
+        assertThat(reopenedPref.isEnabled()).isFalse();
+    }
+
+    @Test
+    public void recordLatency_countsEachLatencyInItsBucket() {
+        final InjectedSetting setting = getTestSetting("Service");
+
+        for (long latency : new long[] {50, 100, 300, 999, 1000, 5000}) {
+            SettingsInjector.recordLatency(setting, latency);
+        }
+
+        assertThat(SettingsInjector.getLatencyBucketsMillis())
+                .isEqualTo(new long[] {100, 250, 500, 1000});
+        assertThat(SettingsInjector.getLatencyHistograms().get(TEST_PACKAGE + "/Service"))
+                .isEqualTo(new int[] {1, 1, 1, 1, 2});
+    }
+
+    private InjectedSetting getTestSetting(String className) {
+        return new InjectedSetting.Builder()
+                .setPackageName(TEST_PACKAGE)
+                .setClassName(className)
+                .setTitle(className)
+                .setUserHandle(Process.myUserHandle())
+                .setSettingsActivity(className)
+                .build();
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.network;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.Telephony;
+import android.telephony.TelephonyManager;
+
+import com.android.internal.telephony.uicc.IccRecords;
+import com.android.internal.telephony.uicc.UiccController;
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class ApnListLoaderTest {
+
+    private static final int SUB_ID = 2;
+    private static final String MCC_MNC = "310260";
+    private static final String SPN = "mvno";
+    private static final Uri PREFERRED_APN_URI = Uri.parse(ApnSettings.PREFERRED_APN_URI);
+
+    @Mock
+    private TelephonyManager mTelephonyManager;
+    @Mock
+    private UiccController mUiccController;
+    @Mock
+    private IccRecords mIccRecords;
+    private Context mContext;
+    private FakeProvider mProvider;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mContext = spy(RuntimeEnvironment.application);
+        doReturn(mTelephonyManager).when(mContext).getSystemService(Context.TELEPHONY_SERVICE);
+        doReturn(MCC_MNC).when(mTelephonyManager).getSimOperator(SUB_ID);
+        doReturn(mIccRecords).when(mUiccController).getIccRecords(anyInt(), anyInt());
+        doReturn(SPN).when(mIccRecords).getServiceProviderName();
+        mProvider = new FakeProvider();
+        ShadowContentResolver.registerProviderInternal(Telephony.Carriers.CONTENT_URI.getAuthority(),
+                mProvider);
+    }
+
+    @Test
+    public void loadInBackground_onlyMnoApns_listsSelectableApnsBeforeMms() {
+        mProvider.mApns.addRow(new Object[] {"1", "mms", "mms.apn", "mms", null, null});
+        mProvider.mApns.addRow(new Object[] {"2", "internet", "internet.apn", "default", null,
+                null});
+        mProvider.mPreferredApn.addRow(new Object[] {"2"});
+
+        final ApnListLoader.ApnList apnList = createLoader().loadInBackground();
+
+        assertThat(getKeys(apnList)).containsExactly("2", "1").inOrder();
+        assertThat(apnList.apns.get(0).selectable).isTrue();
+        assertThat(apnList.apns.get(1).selectable).isFalse();
+        assertThat(apnList.selectedKey).isEqualTo("2");
+        assertThat(apnList.mvnoType).isNull();
+    }
+
+    @Test
+    public void loadInBackground_matchingMvnoApn_listsOnlyMvnoApns() {
+        mProvider.mApns.addRow(new Object[] {"1", "mno", "mno.apn", "default", null, null});
+        mProvider.mApns.addRow(new Object[] {"2", "mvno", "mvno.apn", "default", "spn", SPN});
+        mProvider.mApns.addRow(new Object[] {"3", "other", "other.apn", "default", "spn",
+                "other"});
+
+        final ApnListLoader.ApnList apnList = createLoader().loadInBackground();
+
+        assertThat(getKeys(apnList)).containsExactly("2");
+        assertThat(apnList.mvnoType).isEqualTo("spn");
+        assertThat(apnList.mvnoMatchData).isEqualTo(SPN);
+        assertThat(apnList.selectedKey).isNull();
+    }
+
+    @Test
+    public void loadInBackground_noMatchingMvnoApn_listsMnoApns() {
+        mProvider.mApns.addRow(new Object[] {"1", "mno", "mno.apn", "default", null, null});
+        mProvider.mApns.addRow(new Object[] {"3", "other", "other.apn", "default", "spn",
+                "other"});
+
+        final ApnListLoader.ApnList apnList = createLoader().loadInBackground();
+
+        assertThat(getKeys(apnList)).containsExactly("1");
+        assertThat(apnList.mvnoType).isNull();
+    }
+
+    @Test
+    public void loadInBackground_nullApnCursor_returnsNull() {
+        mProvider.mApns = null;
+
+        assertThat(createLoader().loadInBackground()).isNull();
+    }
+
+    @Test
+    public void loadInBackground_nullPreferredApnCursor_hasNoSelectedKey() {
+        mProvider.mApns.addRow(new Object[] {"1", "mno", "mno.apn", "default", null, null});
+        mProvider.mPreferredApn = null;
+
+        final ApnListLoader.ApnList apnList = createLoader().loadInBackground();
+
+        assertThat(getKeys(apnList)).containsExactly("1");
+        assertThat(apnList.selectedKey).isNull();
+    }
+
+    private ApnListLoader createLoader() {
+        return new ApnListLoader(mContext, SUB_ID, true /* hasSubscription */,
+                false /* hideImsApn */, PREFERRED_APN_URI, mUiccController);
+    }
+
+    private static List<String> getKeys(ApnListLoader.ApnList apnList) {
+        final List<String> keys = new ArrayList<>();
+        for (ApnListLoader.Apn apn : apnList.apns) {
+            keys.add(apn.key);
+        }
+        return keys;
+    }
+
+    public static class FakeProvider extends ContentProvider {
+
+        private MatrixCursor mApns = new MatrixCursor(
+                new String[] {"_id", "name", "apn", "type", "mvno_type", "mvno_match_data"});
+        private MatrixCursor mPreferredApn = new MatrixCursor(new String[] {"_id"});
+
+        @Override
+        public boolean onCreate() {
+            return false;
+        }
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                String sortOrder) {
+            return PREFERRED_APN_URI.getPath().equals(uri.getPath()) ? mPreferredApn : mApns;
+        }
+
+        @Override
+        public String getType(Uri uri) {
+            return null;
+        }
+
+        @Override
+        public Uri insert(Uri uri, ContentValues values) {
+            return null;
+        }
+
+        @Override
+        public int delete(Uri uri, String selection, String[] selectionArgs) {
+            return 0;
+        }
+
+        @Override
+        public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+            return 0;
+        }
+    }
+}
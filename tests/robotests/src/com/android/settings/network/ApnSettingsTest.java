@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.network;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+
+import android.content.Context;
+import androidx.preference.PreferenceCategory;
+import androidx.preference.PreferenceManager;
+import androidx.preference.PreferenceScreen;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class ApnSettingsTest {
+
+    private static final String KEY_APN_LIST = "apn_list";
+
+    private ApnSettings mFragment;
+    private PreferenceCategory mApnList;
+
+    @Before
+    public void setUp() {
+        final Context context = RuntimeEnvironment.application;
+        final PreferenceManager preferenceManager = new PreferenceManager(context);
+        final PreferenceScreen screen = preferenceManager.createPreferenceScreen(context);
+        mApnList = new PreferenceCategory(context);
+        mApnList.setKey(KEY_APN_LIST);
+        screen.addPreference(mApnList);
+
+        mFragment = spy(new ApnSettings());
+        doReturn(preferenceManager).when(mFragment).getPreferenceManager();
+        doReturn(mApnList).when(mFragment).findPreference(KEY_APN_LIST);
+    }
+
+    @Test
+    public void updateApnPreferences_addsOnePreferencePerApnInOrder() {
+        mFragment.updateApnPreferences(createApnList(null /* selectedKey */, "1", "2"));
+
+        assertThat(mApnList.getPreferenceCount()).isEqualTo(2);
+        assertThat(mApnList.findPreference("1").getOrder()).isEqualTo(0);
+        assertThat(mApnList.findPreference("2").getOrder()).isEqualTo(1);
+        assertThat(mApnList.findPreference("2").getTitle()).isEqualTo("name2");
+    }
+
+    @Test
+    public void updateApnPreferences_apnStillListed_reusesItsPreference() {
+        mFragment.updateApnPreferences(createApnList(null /* selectedKey */, "1", "2"));
+        final ApnPreference pref = (ApnPreference) mApnList.findPreference("2");
+
+        mFragment.updateApnPreferences(createApnList(null /* selectedKey */, "2", "3"));
+
+        assertThat(mApnList.findPreference("2")).isSameAs(pref);
+        assertThat(pref.getOrder()).isEqualTo(0);
+    }
+
+    @Test
+    public void updateApnPreferences_apnNoLongerListed_removesItsPreference() {
+        mFragment.updateApnPreferences(createApnList(null /* selectedKey */, "1", "2"));
+
+        mFragment.updateApnPreferences(createApnList(null /* selectedKey */, "2", "3"));
+
+        assertThat(mApnList.getPreferenceCount()).isEqualTo(2);
+        assertThat(mApnList.findPreference("1")).isNull();
+        assertThat(mApnList.findPreference("3")).isNotNull();
+    }
+
+    @Test
+    public void updateApnPreferences_selectedKey_checksSelectedApn() {
+        mFragment.updateApnPreferences(createApnList("2" /* selectedKey */, "1", "2"));
+
+        assertThat(((ApnPreference) mApnList.findPreference("1")).isChecked()).isFalse();
+        assertThat(((ApnPreference) mApnList.findPreference("2")).isChecked()).isTrue();
+    }
+
+    private static ApnListLoader.ApnList createApnList(String selectedKey, String... keys) {
+        final ApnListLoader.ApnList apnList = new ApnListLoader.ApnList(selectedKey);
+        for (String key : keys) {
+            apnList.apns.add(new ApnListLoader.Apn(key, "name" + key, "apn" + key,
+                    true /* selectable */));
+        }
+        return apnList;
+    }
+}
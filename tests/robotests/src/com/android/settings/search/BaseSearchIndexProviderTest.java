@@ -55,6 +55,11 @@ public class BaseSearchIndexProviderTest {
         mIndexProvider = spy(BaseSearchIndexProvider.class);
     }
 
+    @Test
+    public void isNonIndexableKeysThreadSafe_default_shouldReturnFalse() {
+        assertThat(mIndexProvider.isNonIndexableKeysThreadSafe()).isFalse();
+    }
+
     @Test
     public void getNonIndexableKeys_noPreferenceController_shouldReturnEmptyList() {
         assertThat(mIndexProvider.getNonIndexableKeys(mContext)).isEmpty();
@@ -22,6 +22,7 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.anySet;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.spy;
@@ -30,7 +31,9 @@ import static org.mockito.Mockito.verify;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
+import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
+import android.content.pm.ProviderInfo;
 import android.content.pm.ResolveInfo;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
@@ -55,6 +58,7 @@ import org.robolectric.annotation.Config;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
@@ -93,6 +97,8 @@ public class DatabaseIndexingManagerTest {
     private final String TITLE_TWO = "title two";
     private final String KEY_ONE = "key one";
     private final String KEY_TWO = "key two";
+    private final String PACKAGE_ONE = "package one";
+    private final String PACKAGE_TWO = "package two";
 
     private Context mContext;
 
@@ -148,7 +154,8 @@ public class DatabaseIndexingManagerTest {
                 "data_key_reference",
                 "user_id",
                 "payload_type",
-                "payload"
+                "payload",
+                "package"
         );
         // Prevent database schema regressions
         assertThat(columnNames).containsAllIn(expColumnNames);
@@ -160,13 +167,14 @@ public class DatabaseIndexingManagerTest {
     public void testPerformIndexing_fullIndex_getsDataFromProviders() {
         SearchIndexableRaw rawData = getFakeRaw();
         PreIndexData data = getPreIndexData(rawData);
-        doReturn(data).when(mManager).getIndexDataFromProviders(anyList(), anyBoolean());
+        doReturn(data).when(mManager)
+                .getIndexDataFromProviders(anyList(), anyBoolean(), anySet());
         doReturn(true).when(mManager)
-            .isFullIndex(any(Context.class), anyString(), anyString(), anyString());
+            .isFullIndex(any(Context.class), anyString(), anyString());
 
         mManager.performIndexing();
 
-        verify(mManager).updateDatabase(data, true /* isFullIndex */);
+        verify(mManager).updateDatabase(data, true /* isFullIndex */, Collections.emptySet());
     }
 
     @Test
@@ -175,7 +183,7 @@ public class DatabaseIndexingManagerTest {
         DatabaseIndexingManager manager =
                 spy(new DatabaseIndexingManager(mContext));
         doReturn(false).when(mManager)
-            .isFullIndex(any(Context.class), anyString(), anyString(), anyString());
+            .isFullIndex(any(Context.class), anyString(), anyString());
 
         // Insert data point which will be dropped
         insertSpecialCase("Ceci n'est pas un pipe", true, "oui oui mon ami");
@@ -192,13 +200,31 @@ public class DatabaseIndexingManagerTest {
     public void testPerformIndexing_isfullIndex() {
         SearchIndexableRaw rawData = getFakeRaw();
         PreIndexData data = getPreIndexData(rawData);
-        doReturn(data).when(mManager).getIndexDataFromProviders(anyList(), anyBoolean());
+        doReturn(data).when(mManager)
+                .getIndexDataFromProviders(anyList(), anyBoolean(), anySet());
         doReturn(true).when(mManager)
-            .isFullIndex(any(Context.class), anyString(), anyString(), anyString());
+            .isFullIndex(any(Context.class), anyString(), anyString());
 
         mManager.performIndexing();
 
-        verify(mManager).updateDatabase(data, true /* isFullIndex */);
+        verify(mManager).updateDatabase(data, true /* isFullIndex */, Collections.emptySet());
+    }
+
+    @Test
+    public void testPerformIndexing_failedProvider_notRecordedAsIndexed() {
+        FAKE_PROVIDER_LIST.add(createProvider(PACKAGE_ONE));
+        FAKE_PROVIDER_LIST.add(createProvider(PACKAGE_TWO));
+        PreIndexData data = new PreIndexData();
+        data.failedPackages.add(PACKAGE_TWO);
+        doReturn(data).when(mManager)
+                .getIndexDataFromProviders(anyList(), anyBoolean(), anySet());
+
+        mManager.performIndexing();
+
+        final Map<String, Long> versions =
+                IndexDatabaseHelper.buildProviderVersions(FAKE_PROVIDER_LIST);
+        assertThat(IndexDatabaseHelper.getChangedProviders(mContext, versions))
+                .containsExactly(PACKAGE_TWO);
     }
 
     @Test
@@ -272,6 +298,8 @@ public class DatabaseIndexingManagerTest {
         ResultPayload unmarshalledPayload = ResultPayloadUtils.unmarshall(payload,
                 ResultPayload.CREATOR);
         assertThat(unmarshalledPayload).isInstanceOf(ResultPayload.class);
+        // Package
+        assertThat(cursor.getString(21)).isEqualTo(packageName);
     }
 
     @Test
@@ -312,6 +340,18 @@ public class DatabaseIndexingManagerTest {
         assertThat(cursor.getString(2)).isEqualTo(TITLE_TWO);
     }
 
+    @Test
+    public void testUpdateDataInDatabase_disabledResultsFromUnknownPackage_stayDisabled() {
+        insertSpecialCase(TITLE_ONE, false /* enabled */, KEY_ONE);
+        Map<String, Set<String>> niks = new ArrayMap<>();
+        niks.put(PACKAGE_ONE, new HashSet<>());
+
+        mManager.updateDataInDatabase(mDb, niks);
+
+        Cursor cursor = mDb.rawQuery("SELECT * FROM prefs_index WHERE enabled = 1", null);
+        assertThat(cursor.getCount()).isEqualTo(0);
+    }
+
     @Test
     public void testEmptyNonIndexableKeys_emptyDataKeyResources_addedToDatabase() {
         insertSpecialCase(TITLE_ONE, true /* enabled */, null /* dataReferenceKey */);
@@ -324,8 +364,78 @@ public class DatabaseIndexingManagerTest {
         assertThat(cursor.getString(2)).isEqualTo(TITLE_ONE);
     }
 
+    @Test
+    public void testGetChangedProviders_upgradedProvider_onlyUpgradedProviderChanged() {
+        final Map<String, Long> versions = new ArrayMap<>();
+        versions.put(PACKAGE_ONE, 1L);
+        versions.put(PACKAGE_TWO, 1L);
+        IndexDatabaseHelper.setProvidersIndexed(mContext, versions);
+
+        versions.put(PACKAGE_TWO, 2L);
+
+        assertThat(IndexDatabaseHelper.getChangedProviders(mContext, versions))
+                .containsExactly(PACKAGE_TWO);
+    }
+
+    @Test
+    public void testGetChangedProviders_addedAndRemovedProviders_bothChanged() {
+        final Map<String, Long> versions = new ArrayMap<>();
+        versions.put(PACKAGE_ONE, 1L);
+        IndexDatabaseHelper.setProvidersIndexed(mContext, versions);
+
+        versions.clear();
+        versions.put(PACKAGE_TWO, 1L);
+
+        assertThat(IndexDatabaseHelper.getChangedProviders(mContext, versions))
+                .containsExactly(PACKAGE_ONE, PACKAGE_TWO);
+    }
+
+    @Test
+    public void testUpdateDatabase_changedProvider_onlyChangedProviderRowsReplaced() {
+        insertSpecialCase(TITLE_ONE, true /* enabled */, KEY_ONE, PACKAGE_ONE);
+        insertSpecialCase(TITLE_TWO, true /* enabled */, KEY_TWO, PACKAGE_TWO);
+
+        mManager.updateDatabase(new PreIndexData(), false /* needsReindexing */,
+                Collections.singleton(PACKAGE_TWO));
+
+        Cursor cursor = mDb.rawQuery("SELECT * FROM prefs_index", null);
+        assertThat(cursor.getCount()).isEqualTo(1);
+        cursor.moveToPosition(0);
+        assertThat(cursor.getString(2)).isEqualTo(TITLE_ONE);
+    }
+
+    @Test
+    public void testUpdateDatabase_changedProvider_onlyChangedProviderSiteMapRemoved() {
+        insertSiteMapPair("parent one", "child one", PACKAGE_ONE);
+        insertSiteMapPair("parent two", "child two", PACKAGE_TWO);
+
+        mManager.updateDatabase(new PreIndexData(), false /* needsReindexing */,
+                Collections.singleton(PACKAGE_TWO));
+
+        Cursor cursor = mDb.rawQuery("SELECT parent_class FROM site_map", null);
+        assertThat(cursor.getCount()).isEqualTo(1);
+        cursor.moveToPosition(0);
+        assertThat(cursor.getString(0)).isEqualTo("parent one");
+    }
+
     // Util functions
 
+    private ResolveInfo createProvider(String packageName) {
+        ResolveInfo info = new ResolveInfo();
+        info.providerInfo = new ProviderInfo();
+        info.providerInfo.packageName = packageName;
+        info.providerInfo.applicationInfo = new ApplicationInfo();
+        return info;
+    }
+
+    private void insertSiteMapPair(String parentClass, String childClass, String packageName) {
+        ContentValues values = new ContentValues();
+        values.put("parent_class", parentClass);
+        values.put("child_class", childClass);
+        values.put(IndexDatabaseHelper.IndexColumns.PACKAGE, packageName);
+        mDb.insert(IndexDatabaseHelper.Tables.TABLE_SITE_MAP, null, values);
+    }
+
     private SearchIndexableRaw getFakeRaw() {
         return getFakeRaw(localeStr);
     }
@@ -353,6 +463,11 @@ public class DatabaseIndexingManagerTest {
     }
 
     private void insertSpecialCase(String specialCase, boolean enabled, String key) {
+        insertSpecialCase(specialCase, enabled, key, packageName);
+    }
+
+    private void insertSpecialCase(String specialCase, boolean enabled, String key,
+            String providerPackage) {
         ContentValues values = new ContentValues();
         values.put(IndexDatabaseHelper.IndexColumns.DOCID, specialCase.hashCode());
         values.put(IndexDatabaseHelper.IndexColumns.LOCALE, localeStr);
@@ -376,6 +491,7 @@ public class DatabaseIndexingManagerTest {
         values.put(IndexDatabaseHelper.IndexColumns.USER_ID, 0);
         values.put(IndexDatabaseHelper.IndexColumns.PAYLOAD_TYPE, 0);
         values.put(IndexDatabaseHelper.IndexColumns.PAYLOAD, (String) null);
+        values.put(IndexDatabaseHelper.IndexColumns.PACKAGE, providerPackage);
 
         mDb.replaceOrThrow(IndexDatabaseHelper.Tables.TABLE_PREFS_INDEX, null, values);
     }
@@ -18,11 +18,13 @@
 package com.android.settings.search;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
 
 import android.content.Context;
 
 import com.android.settings.testutils.SettingsRobolectricTestRunner;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -42,6 +44,11 @@ public class DatabaseIndexingUtilsTest {
         mContext = RuntimeEnvironment.application;
     }
 
+    @After
+    public void tearDown() {
+        DatabaseIndexingUtils.clearSearchIndexProviders();
+    }
+
     @Test
     public void testGetPreferenceControllerUriMap_BadClassName_ReturnsNull() {
         Map map = DatabaseIndexingUtils.getPayloadKeyMap("dummy", mContext);
@@ -62,4 +69,39 @@ public class DatabaseIndexingUtilsTest {
         ResultPayload payload = map.get(null);
         assertThat(payload).isNull();
     }
+
+    @Test
+    public void testRegisteredProvider_resolvedWithoutReflection() {
+        final Indexable.SearchIndexProvider provider = mock(Indexable.SearchIndexProvider.class);
+
+        DatabaseIndexingUtils.registerSearchIndexProvider(UnreflectableIndexable.class,
+                () -> provider);
+
+        assertThat(DatabaseIndexingUtils.getIndexableClass(
+                UnreflectableIndexable.class.getName())).isEqualTo(UnreflectableIndexable.class);
+        assertThat(DatabaseIndexingUtils.getSearchIndexProvider(UnreflectableIndexable.class))
+                .isSameAs(provider);
+    }
+
+    @Test
+    public void testRegisteredProvider_resolvedOnFirstLookupOnly() {
+        final Indexable.SearchIndexProvider provider = mock(Indexable.SearchIndexProvider.class);
+        final int[] calls = new int[1];
+        DatabaseIndexingUtils.registerSearchIndexProvider(UnreflectableIndexable.class, () -> {
+            calls[0]++;
+            return provider;
+        });
+        assertThat(calls[0]).isEqualTo(0);
+
+        DatabaseIndexingUtils.getSearchIndexProvider(UnreflectableIndexable.class);
+        DatabaseIndexingUtils.getSearchIndexProvider(UnreflectableIndexable.class);
+
+        assertThat(calls[0]).isEqualTo(1);
+    }
+
+    /**
+     * Has no SEARCH_INDEX_DATA_PROVIDER field, so only a registered provider can be found.
+     */
+    private static class UnreflectableIndexable implements Indexable {
+    }
 }
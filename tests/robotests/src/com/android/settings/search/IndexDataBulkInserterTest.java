@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.android.settings.search;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.android.settings.search.indexing.IndexData;
+import com.android.settings.testutils.DatabaseTestUtils;
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class IndexDataBulkInserterTest {
+
+    private static final String PARENT_CLASS = "parent class";
+    private static final String CHILD_CLASS = "child class";
+    private static final String SCREEN_TITLE = "screen title";
+    private static final String PACKAGE_NAME = "package name";
+
+    private Context mContext;
+    private SQLiteDatabase mDb;
+    private IndexDataBulkInserter mInserter;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mDb = IndexDatabaseHelper.getInstance(mContext).getWritableDatabase();
+        mInserter = new IndexDataBulkInserter();
+    }
+
+    @After
+    public void cleanUp() {
+        DatabaseTestUtils.clearDb(mContext);
+    }
+
+    @Test
+    public void insert_writesAllColumns() {
+        mInserter.insert(mDb, Collections.singletonList(createRow("title", "key")));
+
+        final Cursor cursor = mDb.rawQuery(
+                "SELECT data_title, class_name, enabled, data_key_reference, package"
+                        + " FROM prefs_index", null);
+        assertThat(cursor.getCount()).isEqualTo(1);
+        cursor.moveToFirst();
+        assertThat(cursor.getString(0)).isEqualTo("title");
+        assertThat(cursor.getString(1)).isEqualTo(PARENT_CLASS);
+        assertThat(cursor.getInt(2)).isEqualTo(1);
+        assertThat(cursor.getString(3)).isEqualTo("key");
+        assertThat(cursor.getString(4)).isEqualTo(PACKAGE_NAME);
+        cursor.close();
+    }
+
+    @Test
+    public void insert_emptyTitle_skipped() {
+        mInserter.insert(mDb, Collections.singletonList(createRow("", "key")));
+
+        assertThat(mInserter.getRowCount()).isEqualTo(0);
+        final Cursor cursor = mDb.rawQuery("SELECT * FROM prefs_index", null);
+        assertThat(cursor.getCount()).isEqualTo(0);
+        cursor.close();
+    }
+
+    @Test
+    public void insert_duplicateSiteMapPairs_writtenOnce() {
+        final IndexData row = createRow("title", "key");
+
+        mInserter.insert(mDb, Arrays.asList(row, row));
+
+        assertThat(mInserter.getRowCount()).isEqualTo(2);
+        assertThat(mInserter.getSiteMapCount()).isEqualTo(1);
+        final Cursor cursor = mDb.rawQuery("SELECT * FROM site_map", null);
+        assertThat(cursor.getCount()).isEqualTo(1);
+        cursor.close();
+    }
+
+    private IndexData createRow(String title, String key) {
+        return new IndexData.Builder()
+                .setTitle(title)
+                .setClassName(PARENT_CLASS)
+                .setChildClassName(CHILD_CLASS)
+                .setScreenTitle(SCREEN_TITLE)
+                .setEnabled(true)
+                .setKey(key)
+                .setPackageName(PACKAGE_NAME)
+                .build(mContext);
+    }
+}
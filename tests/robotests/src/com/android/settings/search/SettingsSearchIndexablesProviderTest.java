@@ -109,4 +109,33 @@ public class SettingsSearchIndexablesProviderTest {
         cursor.moveToNext();
         assertThat(cursor.getString(0)).isEqualTo("pref_key_3");
     }
+
+    @Test
+    @Config(qualifiers = "mcc999")
+    public void testNonIndexablesColumnFetched_recordsProviderTimings() {
+        Uri rawUri = Uri.parse("content://" + BASE_AUTHORITY + "/" +
+                SearchIndexablesContract.NON_INDEXABLES_KEYS_PATH);
+
+        mProvider.query(rawUri, SearchIndexablesContract.NON_INDEXABLES_KEYS_COLUMNS, null, null,
+                null);
+
+        assertThat(mProvider.getNonIndexableKeysTimings())
+                .containsKey(FakeSettingsFragment.class.getName());
+    }
+
+    @Test
+    @Config(qualifiers = "mcc999")
+    public void testNonIndexablesColumnFetched_providersChanged_notServedFromCache() {
+        Uri rawUri = Uri.parse("content://" + BASE_AUTHORITY + "/" +
+                SearchIndexablesContract.NON_INDEXABLES_KEYS_PATH);
+        mProvider.query(rawUri, SearchIndexablesContract.NON_INDEXABLES_KEYS_COLUMNS, null, null,
+                null);
+        mFakeFeatureFactory.searchFeatureProvider.getSearchIndexableResources()
+                .getProviderValues().clear();
+
+        final Cursor cursor = mProvider.query(rawUri,
+                SearchIndexablesContract.NON_INDEXABLES_KEYS_COLUMNS, null, null, null);
+
+        assertThat(cursor.getCount()).isEqualTo(0);
+    }
 }
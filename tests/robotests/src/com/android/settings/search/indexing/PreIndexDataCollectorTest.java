@@ -21,6 +21,7 @@ import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.spy;
 
 import android.content.ContentResolver;
@@ -49,6 +50,8 @@ public class PreIndexDataCollectorTest {
 
     private static final String AUTHORITY_ONE = "authority";
     private static final String PACKAGE_ONE = "com.android.settings";
+    private static final String AUTHORITY_TWO = "authority two";
+    private static final String PACKAGE_TWO = "com.android.other";
 
     @Mock
     private ContentResolver mResolver;
@@ -113,17 +116,73 @@ public class PreIndexDataCollectorTest {
         assertThat(data.nonIndexableKeys.get(AUTHORITY_ONE)).containsAllIn(niks);
     }
 
+    @Test
+    public void testCollectIndexableData_parallel_failingProviderIsolated() {
+        mDataCollector = spy(new PreIndexDataCollector(mContext, true /* collectInParallel */));
+        final List<ResolveInfo> providerInfo = getDummyResolveInfo();
+        providerInfo.add(createResolveInfo(AUTHORITY_TWO, PACKAGE_TWO));
+        doReturn(true).when(mDataCollector).isWellKnownProvider(any(ResolveInfo.class));
+
+        List<String> niks = getFakeNonIndexables();
+        doReturn(niks).when(mDataCollector)
+            .getNonIndexablesKeysFromRemoteProvider(PACKAGE_ONE, AUTHORITY_ONE);
+        doThrow(new IllegalStateException()).when(mDataCollector)
+            .getNonIndexablesKeysFromRemoteProvider(PACKAGE_TWO, AUTHORITY_TWO);
+
+        PreIndexData data = mDataCollector.collectIndexableData(providerInfo,
+                false /* isFullIndex */);
+
+        assertThat(data.nonIndexableKeys.get(AUTHORITY_ONE)).containsAllIn(niks);
+        assertThat(data.nonIndexableKeys).doesNotContainKey(AUTHORITY_TWO);
+        assertThat(data.failedPackages).containsExactly(PACKAGE_TWO);
+    }
+
+    @Test
+    public void testCollectIndexableData_rawDataQueryFails_reportsPackageAsFailed() {
+        final List<ResolveInfo> providerInfo = getDummyResolveInfo();
+        doReturn(true).when(mDataCollector).isWellKnownProvider(any(ResolveInfo.class));
+        doReturn(getFakeResource()).when(mDataCollector).getIndexablesForXmlResourceUri(
+                any(Context.class), anyString(), any(Uri.class), any(String[].class));
+        doReturn(getFakeNonIndexables()).when(mDataCollector)
+            .getNonIndexablesKeysFromRemoteProvider(anyString(), anyString());
+        doReturn(null).when(mDataCollector).getIndexablesForRawDataUri(any(Context.class),
+                anyString(), any(Uri.class), any(String[].class));
+
+        PreIndexData data = mDataCollector.collectIndexableData(providerInfo,
+                true /* isFullIndex */);
+
+        assertThat(data.failedPackages).containsExactly(PACKAGE_ONE);
+    }
+
+    @Test
+    public void testCollectIndexableData_nonIndexablesQueryFails_reportsPackageAsFailed() {
+        final List<ResolveInfo> providerInfo = getDummyResolveInfo();
+        doReturn(true).when(mDataCollector).isWellKnownProvider(any(ResolveInfo.class));
+        doReturn(null).when(mDataCollector)
+            .getNonIndexablesKeysFromRemoteProvider(anyString(), anyString());
+
+        PreIndexData data = mDataCollector.collectIndexableData(providerInfo,
+                false /* isFullIndex */);
+
+        assertThat(data.nonIndexableKeys).doesNotContainKey(AUTHORITY_ONE);
+        assertThat(data.failedPackages).containsExactly(PACKAGE_ONE);
+    }
+
     private List<ResolveInfo> getDummyResolveInfo() {
         List<ResolveInfo> infoList = new ArrayList<>();
+        infoList.add(createResolveInfo(AUTHORITY_ONE, PACKAGE_ONE));
+
+        return infoList;
+    }
+
+    private ResolveInfo createResolveInfo(String authority, String packageName) {
         ResolveInfo info = new ResolveInfo();
         info.providerInfo = new ProviderInfo();
         info.providerInfo.exported = true;
-        info.providerInfo.authority = AUTHORITY_ONE;
-        info.providerInfo.packageName = PACKAGE_ONE;
+        info.providerInfo.authority = authority;
+        info.providerInfo.packageName = packageName;
         info.providerInfo.applicationInfo = new ApplicationInfo();
-        infoList.add(info);
-
-        return infoList;
+        return info;
     }
 
     private List<SearchIndexableResource> getFakeResource() {
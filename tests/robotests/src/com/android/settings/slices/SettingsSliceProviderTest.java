@@ -58,7 +58,6 @@ import org.robolectric.annotation.Resetter;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -98,13 +97,14 @@ public class SettingsSliceProviderTest {
             ZenModeSliceBuilder.ZEN_MODE_URI
     );
 
+    private static final int SLICE_DATA_CACHE_SIZE = 16;
+
     @Before
     public void setUp() {
         mContext = spy(RuntimeEnvironment.application);
         mProvider = spy(new SettingsSliceProvider());
         ShadowStrictMode.reset();
-        mProvider.mSliceWeakDataCache = new HashMap<>();
-        mProvider.mSliceDataCache = new HashMap<>();
+        mProvider.mSliceDataCache = new SliceDataCache(SLICE_DATA_CACHE_SIZE);
         mProvider.mSlicesDatabaseAccessor = new SlicesDatabaseAccessor(mContext);
         when(mProvider.getContext()).thenReturn(mContext);
 
@@ -137,7 +137,7 @@ public class SettingsSliceProviderTest {
         final Uri uri = SliceBuilderUtils.getUri(INTENT_PATH, false);
 
         mProvider.loadSlice(uri);
-        SliceData data = mProvider.mSliceWeakDataCache.get(uri);
+        SliceData data = mProvider.mSliceDataCache.get(uri);
 
         assertThat(data.getKey()).isEqualTo(KEY);
         assertThat(data.getTitle()).isEqualTo(TITLE);
@@ -154,14 +154,13 @@ public class SettingsSliceProviderTest {
     }
 
     @Test
-    public void testLoadSlice_doesNotCacheWithoutPin() {
+    public void testLoadSlice_doesNotPinWithoutPin() {
         insertSpecialCase(KEY);
         final Uri uri = SliceBuilderUtils.getUri(INTENT_PATH, false);
 
         mProvider.loadSlice(uri);
-        SliceData data = mProvider.mSliceDataCache.get(uri);
 
-        assertThat(data).isNull();
+        assertThat(mProvider.mSliceDataCache.isPinned(uri)).isFalse();
     }
 
     @Test
@@ -173,20 +172,60 @@ public class SettingsSliceProviderTest {
         mProvider.loadSlice(uri);
         SliceData data = mProvider.mSliceDataCache.get(uri);
 
+        assertThat(mProvider.mSliceDataCache.isPinned(uri)).isTrue();
         assertThat(data.getKey()).isEqualTo(KEY);
         assertThat(data.getTitle()).isEqualTo(TITLE);
     }
 
     @Test
-    public void testLoadSlice_cachedEntryRemovedOnBuild() {
+    public void testLoadSlice_cachedEntryKeptOnBuild() {
         SliceData data = getDummyData();
-        mProvider.mSliceWeakDataCache.put(data.getUri(), data);
+        mProvider.mSliceDataCache.put(data.getUri(), data, getIndexGeneration());
         mProvider.onBindSlice(data.getUri());
         insertSpecialCase(data.getKey());
 
-        SliceData cachedData = mProvider.mSliceWeakDataCache.get(data.getUri());
+        SliceData cachedData = mProvider.mSliceDataCache.get(data.getUri());
+
+        assertThat(cachedData).isEqualTo(data);
+        assertThat(mProvider.mSliceDataCache.getHitCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void onBindSlice_indexRewritten_dropsCachedEntry() {
+        SliceData data = getDummyData();
+        mProvider.mSliceDataCache.pin(data.getUri());
+        mProvider.mSliceDataCache.put(data.getUri(), data, getIndexGeneration());
+        SlicesDatabaseHelper.getInstance(mContext).notifySliceDataChanged();
+
+        mProvider.onBindSlice(data.getUri());
 
-        assertThat(cachedData).isNull();
+        assertThat(mProvider.mSliceDataCache.contains(data.getUri())).isFalse();
+    }
+
+    @Test
+    public void testLoadSlice_readBeforeIndexRewritten_notCached() {
+        SliceData data = getDummyData();
+        final int oldGeneration = getIndexGeneration();
+        SlicesDatabaseHelper.getInstance(mContext).notifySliceDataChanged();
+        mProvider.mSliceDataCache.setIndexGeneration(getIndexGeneration());
+
+        mProvider.mSliceDataCache.put(data.getUri(), data, oldGeneration);
+
+        assertThat(mProvider.mSliceDataCache.contains(data.getUri())).isFalse();
+    }
+
+    @Test
+    public void testLoadSlice_siblingSlicesPrefetched() {
+        insertSpecialCase(KEY);
+        insertSpecialCase("sibling_key");
+        final Uri uri = SliceBuilderUtils.getUri(INTENT_PATH, false);
+        final Uri siblingUri = SliceBuilderUtils.getUri(
+                SettingsSlicesContract.PATH_SETTING_INTENT + "/sibling_key", false);
+
+        mProvider.loadSlice(uri);
+
+        assertThat(mProvider.mSliceDataCache.get(siblingUri).getKey()).isEqualTo("sibling_key");
+        assertThat(mProvider.mSliceDataCache.consumePrefetched(siblingUri)).isTrue();
     }
 
     @Test
@@ -194,7 +233,7 @@ public class SettingsSliceProviderTest {
         ShadowThreadUtils.setIsMainThread(true);
         final StrictMode.ThreadPolicy oldThreadPolicy = StrictMode.getThreadPolicy();
         SliceData data = getDummyData();
-        mProvider.mSliceWeakDataCache.put(data.getUri(), data);
+        mProvider.mSliceDataCache.put(data.getUri(), data, getIndexGeneration());
         mProvider.onBindSlice(data.getUri());
 
         final StrictMode.ThreadPolicy newThreadPolicy = StrictMode.getThreadPolicy();
@@ -208,7 +247,7 @@ public class SettingsSliceProviderTest {
         ShadowThreadUtils.setIsMainThread(false);
 
         SliceData data = getDummyData();
-        mProvider.mSliceWeakDataCache.put(data.getUri(), data);
+        mProvider.mSliceDataCache.put(data.getUri(), data, getIndexGeneration());
         mProvider.onBindSlice(data.getUri());
 
         assertThat(ShadowStrictMode.isThreadPolicyOverridden()).isTrue();
@@ -233,15 +272,14 @@ public class SettingsSliceProviderTest {
     }
 
     @Test
-    public void testLoadSlice_cachedEntryRemovedOnUnpin() {
+    public void testLoadSlice_cachedEntryUnpinnedOnUnpin() {
         SliceData data = getDummyData();
-        mProvider.mSliceDataCache.put(data.getUri(), data);
+        mProvider.mSliceDataCache.pin(data.getUri());
+        mProvider.mSliceDataCache.put(data.getUri(), data, getIndexGeneration());
         mProvider.onSliceUnpinned(data.getUri());
         insertSpecialCase(data.getKey());
 
-        SliceData cachedData = mProvider.mSliceWeakDataCache.get(data.getUri());
-
-        assertThat(cachedData).isNull();
+        assertThat(mProvider.mSliceDataCache.isPinned(data.getUri())).isFalse();
     }
 
     @Test
@@ -456,6 +494,10 @@ public class SettingsSliceProviderTest {
         mProvider.onSlicePinned(uri);
     }
 
+    private int getIndexGeneration() {
+        return mProvider.mSlicesDatabaseAccessor.getIndexGeneration();
+    }
+
     private void insertSpecialCase(String key) {
         insertSpecialCase(key, true);
     }
@@ -173,6 +173,42 @@ public class SlicesDatabaseAccessorTest {
         assertThat(keys).containsExactly(key);
     }
 
+    @Test
+    public void getSliceKeys_indexUnchanged_servedFromSnapshot() {
+        insertSpecialCase("platform_key", true /* isPlatformSlice */);
+        assertThat(mAccessor.getSliceKeys(true /* isPlatformSlice */))
+                .containsExactly("platform_key");
+
+        insertSpecialCase("new_key", true /* isPlatformSlice */);
+
+        assertThat(mAccessor.getSliceKeys(true /* isPlatformSlice */))
+                .containsExactly("platform_key");
+    }
+
+    @Test
+    public void getSliceKeys_newAccessor_sharesSnapshot() {
+        insertSpecialCase("platform_key", true /* isPlatformSlice */);
+        mAccessor.getSliceKeys(true /* isPlatformSlice */);
+
+        insertSpecialCase("new_key", true /* isPlatformSlice */);
+        final SlicesDatabaseAccessor accessor = new SlicesDatabaseAccessor(mContext);
+
+        assertThat(accessor.getSliceKeys(true /* isPlatformSlice */))
+                .containsExactly("platform_key");
+    }
+
+    @Test
+    public void getSliceKeys_indexChanged_snapshotReloaded() {
+        insertSpecialCase("platform_key", true /* isPlatformSlice */);
+        mAccessor.getSliceKeys(true /* isPlatformSlice */);
+
+        insertSpecialCase("new_key", true /* isPlatformSlice */);
+        SlicesDatabaseHelper.getInstance(mContext).notifySliceDataChanged();
+
+        assertThat(mAccessor.getSliceKeys(true /* isPlatformSlice */))
+                .containsExactly("platform_key", "new_key");
+    }
+
     @Test
     @Config(qualifiers = "mcc999")
     public void getSliceKeys_indexesDatabase() {
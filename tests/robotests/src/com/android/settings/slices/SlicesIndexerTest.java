@@ -18,7 +18,9 @@ package com.android.settings.slices;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.spy;
 
 import android.content.ContentValues;
@@ -135,6 +137,51 @@ public class SlicesIndexerTest {
         }
     }
 
+    @Test
+    public void testInsertSliceData_reindex_onlyChangedFragmentsRewritten() {
+        final List<SliceData> sliceData = getDummyIndexableData();
+        doReturn(sliceData).when(mManager).getSliceData();
+        mManager.run();
+
+        final List<SliceData> updatedData = new ArrayList<>(sliceData);
+        updatedData.add(new SliceData.Builder()
+                .setKey("newKey")
+                .setTitle("newTitle")
+                .setScreenTitle(SCREEN_TITLE)
+                .setFragmentName("other fragment")
+                .setUri(URI)
+                .setPreferenceControllerClassName(PREF_CONTROLLER)
+                .build());
+        doReturn(updatedData).when(mManager).getSliceData();
+        // Pretend the locale changed so the index is refreshed.
+        mContext.getSharedPreferences("slices_shared_prefs", Context.MODE_PRIVATE)
+                .edit()
+                .clear()
+                .commit();
+        mManager.run();
+
+        assertThat(mManager.getLastChangedFragmentCount()).isEqualTo(1);
+        assertThat(mManager.getLastRowsWritten()).isEqualTo(1);
+        final Cursor cursor = mDb.rawQuery("SELECT * FROM slices_index", null);
+        assertThat(cursor.getCount()).isEqualTo(updatedData.size());
+        cursor.close();
+    }
+
+    @Test
+    public void testInsertSliceData_insertFails_indexStateNotRecorded() {
+        final SlicesDatabaseHelper helper = SlicesDatabaseHelper.getInstance(mContext);
+        doReturn(getDummyIndexableData()).when(mManager).getSliceData();
+        doThrow(new IllegalStateException()).when(mManager).insertSliceData(any(), any());
+
+        try {
+            mManager.run();
+        } catch (IllegalStateException expected) {
+        }
+
+        assertThat(helper.isSliceDataIndexed()).isFalse();
+        assertThat(helper.getIndexedFragmentVersions()).isEmpty();
+    }
+
     private void insertSpecialCase(String key, String title) {
         final ContentValues values = new ContentValues();
         values.put(IndexColumns.KEY, key);
@@ -26,6 +26,7 @@ import com.android.settingslib.drawer.TileUtils;
 import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.Implements;
+import org.robolectric.annotation.Resetter;
 
 import java.util.Map;
 
@@ -35,12 +36,24 @@ public class ShadowTileUtils {
     public static final int ICON_RES_ID = R.drawable.ic_settings;
     public static final String MOCK_SUMMARY = "summary";
 
+    private static int sTextQueryCount;
+
+    @Resetter
+    public static void reset() {
+        sTextQueryCount = 0;
+    }
+
     @Implementation
     public static String getTextFromUri(Context context, String uriString,
             Map<String, IContentProvider> providerMap, String key) {
+        sTextQueryCount++;
         return MOCK_SUMMARY;
     }
 
+    public static int getTextQueryCount() {
+        return sTextQueryCount;
+    }
+
     @Implementation
     public static Pair<String, Integer> getIconFromUri(Context context, String packageName,
             String uriString, Map<String, IContentProvider> providerMap) {
@@ -72,6 +72,16 @@ public class ShadowUtils {
         sIsUserAMonkey = isUserAMonkey;
     }
 
+    @Implementation
+    public static boolean isBandwidthControlEnabled() {
+        return false;
+    }
+
+    @Implementation
+    public static boolean showSimCardTile(Context context) {
+        return false;
+    }
+
     /**
      * Returns true if Monkey is running.
      */